@@ -32,14 +32,24 @@ public class GracefulHttpClient extends CloseableHttpClient {
      */
     private final long retryInterval;
 
+    /**
+     * Whether the wrapped client is closed together with this one. Shared clients are closed by their owner.
+     */
+    private final boolean closeHttpClient;
+
     public GracefulHttpClient(int maxRetries, long retryInterval) {
         this(HttpClients.createDefault(), maxRetries, retryInterval);
     }
 
     public GracefulHttpClient(CloseableHttpClient httpClient, int maxRetries, long retryInterval) {
+        this(httpClient, maxRetries, retryInterval, true);
+    }
+
+    public GracefulHttpClient(CloseableHttpClient httpClient, int maxRetries, long retryInterval, boolean closeHttpClient) {
         this.httpClient = httpClient;
         this.maxRetries = maxRetries;
         this.retryInterval = retryInterval;
+        this.closeHttpClient = closeHttpClient;
     }
 
     @Override
@@ -69,7 +79,9 @@ public class GracefulHttpClient extends CloseableHttpClient {
 
     @Override
     public void close() throws IOException {
-        httpClient.close();
+        if (closeHttpClient) {
+            httpClient.close();
+        }
     }
 
     @Override
@@ -0,0 +1,119 @@
+package org.verapdf.common;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides http clients sharing a single pool of keep-alive connections, so that subsequent requests to the same
+ * host don't have to establish a new connection (and perform a new TLS handshake) every time.
+ * <p>
+ * Clients obtained from the factory keep {@link GracefulHttpClient} retry semantics and may be closed after use
+ * as before, connections are returned to the pool in that case. The pool itself is released by {@link #close()}.
+ */
+public class PooledHttpClientFactory implements Closeable {
+
+    // connections which have been idle for this long are checked before they are leased again
+    private static final int VALIDATE_AFTER_INACTIVITY = 2 * 1000;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 30 * 1000;
+    private static final int DEFAULT_SOCKET_TIMEOUT = 2 * 60 * 1000;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * @param maxConnections         maximum number of connections in the pool
+     * @param maxConnectionsPerRoute default maximum number of connections to a single host
+     * @param idleTimeout            time in milliseconds after which idle connections are evicted from the pool
+     * @param timeToLive             time in milliseconds after which connections are not reused anymore
+     */
+    public PooledHttpClientFactory(int maxConnections, int maxConnectionsPerRoute, long idleTimeout, long timeToLive) {
+        this(maxConnections, maxConnectionsPerRoute, idleTimeout, timeToLive,
+                DEFAULT_CONNECT_TIMEOUT, DEFAULT_SOCKET_TIMEOUT, null, null);
+    }
+
+    /**
+     * @param connectTimeout      time in milliseconds to establish a connection, and to wait for a free one in the pool
+     * @param socketTimeout       maximum time in milliseconds between two packets of a response
+     * @param sslSocketFactory    factory for https connections, or null to use the default one
+     * @param credentialsProvider credentials used for all requests, or null if no credentials are required
+     */
+    public PooledHttpClientFactory(int maxConnections, int maxConnectionsPerRoute, long idleTimeout, long timeToLive,
+                                   int connectTimeout, int socketTimeout,
+                                   SSLConnectionSocketFactory sslSocketFactory, CredentialsProvider credentialsProvider) {
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory != null ? sslSocketFactory : SSLConnectionSocketFactory.getSocketFactory())
+                .build();
+        this.connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry, null, null, null,
+                timeToLive, TimeUnit.MILLISECONDS);
+        this.connectionManager.setMaxTotal(maxConnections);
+        this.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        this.connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .build();
+
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(this.connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                // failed requests are retried by GracefulHttpClient only, so requests which may have reached
+                // the server, e.g. new validation jobs, are not repeated by both clients
+                .setRetryHandler(new DefaultHttpRequestRetryHandler(0, false))
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        if (credentialsProvider != null) {
+            builder.setDefaultCredentialsProvider(credentialsProvider);
+        }
+        this.httpClient = builder.build();
+    }
+
+    /**
+     * Overrides the default maximum number of connections for the host of the given url.
+     */
+    public void setMaxConnectionsPerRoute(String url, int maxConnections) throws MalformedURLException {
+        URL parsedUrl = new URL(url);
+        // route has to be the same as the one the client plans for requests to this host
+        int port = parsedUrl.getPort() != -1 ? parsedUrl.getPort() : parsedUrl.getDefaultPort();
+        HttpHost host = new HttpHost(parsedUrl.getHost(), port, parsedUrl.getProtocol());
+        boolean secure = "https".equalsIgnoreCase(parsedUrl.getProtocol());
+        this.connectionManager.setMaxPerRoute(new HttpRoute(host, null, secure), maxConnections);
+    }
+
+    /**
+     * @return client using the shared pool, which retries failed requests like {@link GracefulHttpClient}
+     */
+    public CloseableHttpClient getHttpClient(int maxRetries, long retryInterval) {
+        return new GracefulHttpClient(this.httpClient, maxRetries, retryInterval, false);
+    }
+
+    public PoolStats getTotalStats() {
+        return this.connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.httpClient.close();
+    }
+}
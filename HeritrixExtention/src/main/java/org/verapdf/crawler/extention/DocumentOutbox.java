@@ -0,0 +1,546 @@
+package org.verapdf.crawler.extention;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.verapdf.common.PooledHttpClientFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Delivers documents to the main application in batches from a background thread, so crawling threads
+ * never wait for the main application.
+ * <p>
+ * Every document is appended to a local journal before it is queued. The journal keeps the offset of the
+ * last delivered document, so documents which have not been delivered before Heritrix is stopped are sent
+ * after its next start. Documents which don't fit the in-memory queue are left in the journal only, and
+ * are read back when the queue is drained.
+ * <p>
+ * When the crawl job is finished, the outbox delivers the rest of documents and then tells the main application
+ * that the job has no more documents, which allows to finish the job there. The journal is deleted after that.
+ */
+public class DocumentOutbox {
+
+    private static final String JOURNAL_FILE_NAME = "logius-outbox.journal";
+    private static final String ACK_FILE_NAME = "logius-outbox.ack";
+    private static final int MAX_RETRIES = 0;
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static SimpleDateFormat loggingDateFormat = new SimpleDateFormat("[yyyy-MM-dd HH:mm:ss.SSS]");
+
+    private final String batchUrl;
+    private final String deliveredUrl;
+    private final PooledHttpClientFactory httpClientFactory;
+    private final int batchSize;
+    private final long flushInterval;
+    private final long retryInterval;
+    private final int queueCapacity;
+    private final File directory;
+    private final File journalFile;
+    private final File ackFile;
+
+    private final Object lock = new Object();
+    private final Deque<Entry> queue = new ArrayDeque<>();
+    private RandomAccessFile journal;
+    // end of the last journal record which has been put into the queue
+    private long queuedOffset;
+    // end of the last journal record which has been delivered
+    private long ackOffset;
+    // true when there are records in the journal after queuedOffset, which didn't fit into the queue
+    private boolean spilled;
+    // true when no more documents are accepted and the rest of them are sent without waiting for full batches
+    private boolean finishing;
+    // true when all documents have been delivered and the main application has been told about it
+    private boolean delivered;
+    private volatile boolean running;
+    private Thread sender;
+
+    /**
+     * @param directory directory of the journal, used by this outbox only
+     */
+    public DocumentOutbox(String logiusUrl, String jobId, PooledHttpClientFactory httpClientFactory, File directory,
+                          int batchSize, long flushInterval, long retryInterval, int queueCapacity) {
+        this.batchUrl = logiusUrl + "/api/documents/batch";
+        this.deliveredUrl = logiusUrl + "/api/documents/delivered/" + jobId;
+        this.httpClientFactory = httpClientFactory;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.retryInterval = retryInterval;
+        this.queueCapacity = queueCapacity;
+        this.directory = directory;
+        this.journalFile = new File(directory, JOURNAL_FILE_NAME);
+        this.ackFile = new File(directory, ACK_FILE_NAME);
+    }
+
+    public void start() throws IOException {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Can not create outbox directory " + directory.getAbsolutePath());
+            }
+            journal = new RandomAccessFile(journalFile, "rw");
+            ackOffset = Math.min(readAckOffset(), journal.length());
+            // the last record may have been written partially if the process has been killed
+            long end = findLastRecordEnd(ackOffset);
+            if (end < journal.length()) {
+                log("Discarding incomplete record at the end of the outbox journal");
+                journal.setLength(end);
+            }
+            queue.clear();
+            queuedOffset = ackOffset;
+            spilled = journal.length() > ackOffset;
+            finishing = false;
+            delivered = false;
+            if (spilled) {
+                log("Outbox journal contains " + (journal.length() - ackOffset) + " bytes of undelivered documents");
+            }
+            running = true;
+            sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    sendDocuments();
+                }
+            }, "logius-outbox-sender");
+            sender.setDaemon(true);
+            sender.start();
+        }
+    }
+
+    /**
+     * Stops accepting documents and waits until the rest of them are delivered and the main application is told
+     * that there are no more documents. If it takes longer than the timeout, the delivery goes on in background,
+     * and documents which are not delivered before Heritrix is stopped stay in the journal.
+     *
+     * @return true if everything has been delivered in time
+     */
+    public boolean finish(long timeout) {
+        synchronized (lock) {
+            if (!running) {
+                return delivered;
+            }
+            finishInBackground();
+            long deadline = System.currentTimeMillis() + timeout;
+            try {
+                long now;
+                while (!delivered && running && (now = System.currentTimeMillis()) < deadline) {
+                    lock.wait(deadline - now);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!delivered) {
+                log("WARNING: " + getUndeliveredBytes() + " bytes of documents have not been delivered in "
+                        + timeout + " ms. Delivery goes on in background from " + journalFile.getAbsolutePath()
+                        + ", the crawl job is not finished in the main application until it is complete");
+            }
+            return delivered;
+        }
+    }
+
+    /**
+     * Stops accepting documents and delivers the rest of them in background.
+     */
+    public void finishInBackground() {
+        synchronized (lock) {
+            finishing = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the sender. Documents which have not been delivered yet stay in the journal.
+     */
+    public void stop() {
+        Thread currentSender;
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            currentSender = sender;
+            sender = null;
+            lock.notifyAll();
+        }
+        currentSender.interrupt();
+        try {
+            currentSender.join(flushInterval + retryInterval);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            long undelivered = getUndeliveredBytes();
+            if (undelivered > 0) {
+                log("WARNING: outbox has been stopped with " + undelivered + " bytes of undelivered documents in "
+                        + journalFile.getAbsolutePath() + ", they are sent after the next start of Heritrix");
+            }
+            closeJournal();
+            queue.clear();
+        }
+    }
+
+    /**
+     * Saves the document to the journal and schedules its delivery. Doesn't wait for the main application.
+     *
+     * @param document JSON representation of the document
+     */
+    public void add(String document) throws IOException {
+        byte[] record = (document.replace('\n', ' ') + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (lock) {
+            if (!running || finishing) {
+                throw new IOException("Outbox is not running");
+            }
+            long end = journal.length() + record.length;
+            journal.seek(journal.length());
+            journal.write(record);
+            if (!spilled && queue.size() < queueCapacity) {
+                queue.addLast(new Entry(document, end));
+                queuedOffset = end;
+            } else {
+                spilled = true;
+            }
+            if (queue.size() >= batchSize || spilled) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void sendDocuments() {
+        log("Outbox sender has been started");
+        while (running) {
+            try {
+                List<Entry> batch = takeBatch();
+                if (batch.isEmpty()) {
+                    if (isDrained()) {
+                        notifyDelivered();
+                        break;
+                    }
+                    continue;
+                }
+                boolean done;
+                while (!(done = send(batch)) && running) {
+                    Thread.sleep(retryInterval);
+                }
+                if (done) {
+                    acknowledge(batch.get(batch.size() - 1).end);
+                }
+            } catch (InterruptedException e) {
+                if (running) {
+                    log("Outbox sender has been interrupted unexpectedly");
+                }
+                break;
+            } catch (Throwable e) {
+                log("Fail to process outbox. Exception message: " + e.getMessage());
+                e.printStackTrace();
+                try {
+                    Thread.sleep(retryInterval);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+        log("Outbox sender has been stopped");
+    }
+
+    private boolean isDrained() {
+        synchronized (lock) {
+            return finishing && queue.isEmpty() && !spilled;
+        }
+    }
+
+    /**
+     * Tells the main application that the job has no more documents, then deletes the journal.
+     */
+    private void notifyDelivered() throws InterruptedException, IOException {
+        while (!postDelivered()) {
+            if (!running) {
+                return;
+            }
+            Thread.sleep(retryInterval);
+        }
+        synchronized (lock) {
+            delivered = true;
+            running = false;
+            sender = null;
+            closeJournal();
+            if (!journalFile.delete() || !ackFile.delete() || !directory.delete()) {
+                log("Fail to delete outbox journal " + journalFile.getAbsolutePath());
+            }
+            lock.notifyAll();
+        }
+        log("All documents have been delivered");
+    }
+
+    /**
+     * Waits until there is a full batch or the flush interval has passed since the first queued document.
+     */
+    private List<Entry> takeBatch() throws InterruptedException, IOException {
+        synchronized (lock) {
+            long deadline = 0;
+            while (running) {
+                if (queue.isEmpty() && spilled) {
+                    reloadFromJournal();
+                }
+                // the rest of documents are sent at once, and nothing is left when the queue is empty
+                if (finishing) {
+                    break;
+                }
+                // the queue can't grow while the rest of documents are in the journal only
+                if (queue.size() >= batchSize || (spilled && queue.size() >= queueCapacity)) {
+                    break;
+                }
+                long now = System.currentTimeMillis();
+                if (queue.isEmpty()) {
+                    deadline = 0;
+                    lock.wait(flushInterval);
+                    continue;
+                }
+                if (deadline == 0) {
+                    deadline = now + flushInterval;
+                }
+                if (now >= deadline) {
+                    break;
+                }
+                lock.wait(deadline - now);
+            }
+            List<Entry> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+            // entries stay in the queue until they are delivered
+            for (Entry entry : queue) {
+                if (batch.size() >= batchSize) {
+                    break;
+                }
+                batch.add(entry);
+            }
+            return batch;
+        }
+    }
+
+    /**
+     * @return true if the batch has been delivered or rejected for good, so it must not be sent again
+     */
+    private boolean send(List<Entry> batch) throws IOException {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < batch.size(); ++i) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append(batch.get(i).document);
+        }
+        body.append(']');
+        HttpPost request = new HttpPost(batchUrl);
+        request.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+        try (CloseableHttpClient httpClient = httpClientFactory.getHttpClient(MAX_RETRIES, retryInterval)) {
+            try (CloseableHttpResponse response = httpClient.execute(request)) {
+                StatusLine statusLine = response.getStatusLine();
+                int statusCode = statusLine.getStatusCode();
+                HttpEntity responseEntity = response.getEntity();
+                if (statusCode / 100 != 2) {
+                    String message = " Response " + statusCode + " " + statusLine.getReasonPhrase()
+                            + (responseEntity != null ? "\n" + IOUtils.toString(responseEntity.getContent()) : "");
+                    EntityUtils.consume(responseEntity);
+                    if (isRejected(statusCode)) {
+                        // the same batch would be rejected again and would hold back all later documents
+                        log("Batch of " + batch.size() + " documents has been rejected, skipping it." + message
+                                + "\nRejected documents: " + body);
+                        return true;
+                    }
+                    log("Fail to POST batch of " + batch.size() + " documents, retrying in " + retryInterval + " ms."
+                            + message);
+                    return false;
+                }
+                EntityUtils.consume(responseEntity);
+                log("Batch of " + batch.size() + " documents has been delivered");
+                return true;
+            }
+        } catch (IOException e) {
+            log("Fail to POST batch of " + batch.size() + " documents, retrying in " + retryInterval + " ms."
+                    + " Exception message: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean postDelivered() {
+        HttpPost request = new HttpPost(deliveredUrl);
+        try (CloseableHttpClient httpClient = httpClientFactory.getHttpClient(MAX_RETRIES, retryInterval)) {
+            try (CloseableHttpResponse response = httpClient.execute(request)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                EntityUtils.consume(response.getEntity());
+                // the job may have been removed from the main application meanwhile
+                if (statusCode / 100 == 2 || statusCode == HttpStatus.SC_NOT_FOUND) {
+                    return true;
+                }
+                if (isRejected(statusCode)) {
+                    log("Report of delivery of all documents has been rejected. Response " + statusCode);
+                    return true;
+                }
+                log("Fail to report delivery of all documents. Response " + statusCode + ", retrying in "
+                        + retryInterval + " ms");
+                return false;
+            }
+        } catch (IOException e) {
+            log("Fail to report delivery of all documents, retrying in " + retryInterval + " ms."
+                    + " Exception message: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Server errors, timeouts and throttling may pass, while other client errors are returned for the same
+     * request again.
+     */
+    private static boolean isRejected(int statusCode) {
+        return statusCode / 100 == 4 && statusCode != HttpStatus.SC_REQUEST_TIMEOUT && statusCode != SC_TOO_MANY_REQUESTS;
+    }
+
+    private void acknowledge(long end) throws IOException {
+        synchronized (lock) {
+            while (!queue.isEmpty() && queue.peekFirst().end <= end) {
+                queue.pollFirst();
+            }
+            ackOffset = end;
+            if (queue.isEmpty() && !spilled && ackOffset == journal.length()) {
+                // everything has been delivered, so the journal can start from scratch
+                journal.setLength(0);
+                ackOffset = 0;
+                queuedOffset = 0;
+            }
+            writeAckOffset(ackOffset);
+        }
+    }
+
+    /**
+     * Reads back records which didn't fit into the queue. Called with the lock held.
+     */
+    private void reloadFromJournal() throws IOException {
+        try (InputStream is = openJournal(queuedOffset)) {
+            long offset = queuedOffset;
+            String record;
+            while (queue.size() < queueCapacity && (record = readRecord(is)) != null) {
+                offset += record.getBytes(StandardCharsets.UTF_8).length + 1;
+                queue.addLast(new Entry(record, offset));
+            }
+            queuedOffset = offset;
+            spilled = offset < journal.length();
+        }
+    }
+
+    /**
+     * Called with the lock held.
+     */
+    private long getUndeliveredBytes() {
+        try {
+            return journal == null ? 0 : journal.length() - ackOffset;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Called with the lock held.
+     */
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log("Fail to close outbox journal. Exception message: " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    private long findLastRecordEnd(long from) throws IOException {
+        long end = from;
+        try (InputStream is = openJournal(from)) {
+            long offset = from;
+            int b;
+            while ((b = is.read()) >= 0) {
+                ++offset;
+                if (b == '\n') {
+                    end = offset;
+                }
+            }
+        }
+        return end;
+    }
+
+    private InputStream openJournal(long offset) throws IOException {
+        FileInputStream is = new FileInputStream(journalFile);
+        try {
+            is.getChannel().position(offset);
+        } catch (IOException e) {
+            is.close();
+            throw e;
+        }
+        return new BufferedInputStream(is);
+    }
+
+    private static String readRecord(InputStream is) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        int b;
+        while ((b = is.read()) != '\n') {
+            if (b < 0) {
+                return null;
+            }
+            record.write(b);
+        }
+        return new String(record.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private long readAckOffset() throws IOException {
+        if (!ackFile.isFile()) {
+            return 0;
+        }
+        try (InputStream is = new FileInputStream(ackFile)) {
+            String value = IOUtils.toString(is, StandardCharsets.UTF_8).trim();
+            return value.isEmpty() ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log("Fail to read outbox acknowledgement offset, all journal records will be sent again");
+            return 0;
+        }
+    }
+
+    private void writeAckOffset(long offset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(ackFile, "rw")) {
+            byte[] value = (Long.toString(offset) + "\n").getBytes(StandardCharsets.UTF_8);
+            file.setLength(0);
+            file.write(value);
+        }
+    }
+
+    private static void log(String message) {
+        System.out.println(loggingDateFormat.format(new Date()) + " org.verapdf.crawler.extension.DocumentOutbox: " + message);
+    }
+
+    private static class Entry {
+        private final String document;
+        // end of the record in the journal
+        private final long end;
+
+        private Entry(String document, long end) {
+            this.document = document;
+            this.end = end;
+        }
+    }
+}
@@ -4,35 +4,50 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpEntity;
-import org.apache.http.StatusLine;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.archive.modules.CrawlURI;
 import org.archive.modules.writer.MirrorWriterProcessor;
-import org.verapdf.common.GracefulHttpClient;
+import org.verapdf.common.PooledHttpClientFactory;
 import org.verapdf.common.RetryFailedException;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 
 public class DocumentProcessor extends MirrorWriterProcessor {
 
-    private static final int MAX_RETRIES = 120;
     private static final long RETRY_INTERVAL = 30 * 1000;
+    private static final int MAX_CONNECTIONS = 10;
+    private static final long IDLE_CONNECTION_TIMEOUT = 60 * 1000;
+    private static final long CONNECTION_TIME_TO_LIVE = 10 * 60 * 1000;
+    // keep-alive connections to the main application are shared by all processors of this Heritrix instance
+    private static final PooledHttpClientFactory httpClientFactory = new PooledHttpClientFactory(
+            MAX_CONNECTIONS, MAX_CONNECTIONS, IDLE_CONNECTION_TIMEOUT, CONNECTION_TIME_TO_LIVE);
+    private static final String DEFAULT_OUTBOX_DIRECTORY_NAME = "logius-outbox";
+    // outboxes of this Heritrix instance by job ids, including the ones still delivering after their jobs have stopped
+    private static final Map<String, DocumentOutbox> outboxes = new HashMap<>();
+    // outboxes left by jobs of the previous run of Heritrix are recovered when the first job is started
+    private static boolean outboxesRecovered = false;
     private static SimpleDateFormat loggingDateFormat = new SimpleDateFormat("[yyyy-MM-dd HH:mm:ss.SSS]");
     private static SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z");
 
     private ObjectMapper mapper;
 
+    private DocumentOutbox outbox;
+
+    private int outboxBatchSize = 100;
+
+    private long outboxFlushInterval = 5 * 1000;
+
+    private int outboxQueueCapacity = 10000;
+
+    private long outboxDrainTimeout = 5 * 60 * 1000;
+
+    private String outboxDirectory;
+
     private String jobId;
 
     private String logiusUrl;
@@ -53,6 +68,46 @@ public class DocumentProcessor extends MirrorWriterProcessor {
         this.logiusUrl = logiusUrl;
     }
 
+    public int getOutboxBatchSize() {
+        return outboxBatchSize;
+    }
+
+    public void setOutboxBatchSize(int outboxBatchSize) {
+        this.outboxBatchSize = outboxBatchSize;
+    }
+
+    public long getOutboxFlushInterval() {
+        return outboxFlushInterval;
+    }
+
+    public void setOutboxFlushInterval(long outboxFlushInterval) {
+        this.outboxFlushInterval = outboxFlushInterval;
+    }
+
+    public int getOutboxQueueCapacity() {
+        return outboxQueueCapacity;
+    }
+
+    public void setOutboxQueueCapacity(int outboxQueueCapacity) {
+        this.outboxQueueCapacity = outboxQueueCapacity;
+    }
+
+    public long getOutboxDrainTimeout() {
+        return outboxDrainTimeout;
+    }
+
+    public void setOutboxDrainTimeout(long outboxDrainTimeout) {
+        this.outboxDrainTimeout = outboxDrainTimeout;
+    }
+
+    public String getOutboxDirectory() {
+        return outboxDirectory;
+    }
+
+    public void setOutboxDirectory(String outboxDirectory) {
+        this.outboxDirectory = outboxDirectory;
+    }
+
     private Map<String, String> supportedContentTypes;
 
     public Map<String, String> getSupportedContentTypes() {
@@ -69,6 +124,85 @@ public class DocumentProcessor extends MirrorWriterProcessor {
         mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
     }
 
+    @Override
+    public void start() {
+        if (isRunning()) {
+            return;
+        }
+        super.start();
+        log("Starting document outbox");
+        // journals are kept outside of job directories, so they are delivered even if their jobs are never restarted
+        File outboxRoot = getOutboxRoot();
+        synchronized (outboxes) {
+            DocumentOutbox previous = outboxes.remove(jobId);
+            if (previous != null) {
+                // the same job has been started again, its journal is taken over by the new outbox
+                previous.stop();
+            }
+            outbox = startOutbox(outboxRoot, jobId);
+            if (!outboxesRecovered) {
+                outboxesRecovered = true;
+                recoverOutboxes(outboxRoot);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (outbox != null) {
+            log("Delivering the rest of documents");
+            if (outbox.finish(outboxDrainTimeout)) {
+                log("All documents have been delivered");
+            }
+        }
+        super.stop();
+    }
+
+    private File getOutboxRoot() {
+        if (outboxDirectory != null) {
+            return new File(outboxDirectory);
+        }
+        return new File(System.getProperty("heritrix.home", "."), DEFAULT_OUTBOX_DIRECTORY_NAME);
+    }
+
+    /**
+     * Called with the lock of outboxes held.
+     */
+    private DocumentOutbox startOutbox(File outboxRoot, String outboxJobId) {
+        DocumentOutbox res = new DocumentOutbox(logiusUrl, outboxJobId, httpClientFactory,
+                new File(outboxRoot, outboxJobId), outboxBatchSize, outboxFlushInterval, RETRY_INTERVAL,
+                outboxQueueCapacity);
+        try {
+            res.start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Fail to start document outbox", e);
+        }
+        outboxes.put(outboxJobId, res);
+        return res;
+    }
+
+    /**
+     * Delivers documents left by jobs which have been stopped before their outboxes were delivered.
+     * Called with the lock of outboxes held.
+     */
+    private void recoverOutboxes(File outboxRoot) {
+        File[] directories = outboxRoot.listFiles();
+        if (directories == null) {
+            return;
+        }
+        for (File directory : directories) {
+            String outboxJobId = directory.getName();
+            if (directory.isDirectory() && !outboxes.containsKey(outboxJobId)) {
+                log("Recovering document outbox of job " + outboxJobId);
+                try {
+                    startOutbox(outboxRoot, outboxJobId).finishInBackground();
+                } catch (IllegalStateException e) {
+                    log("Fail to recover document outbox of job " + outboxJobId + ". Exception message: " + e.getMessage());
+                }
+            }
+        }
+    }
+
     @Override
     protected boolean shouldProcess(CrawlURI crawlURI) {
         try {
@@ -138,27 +272,8 @@ public class DocumentProcessor extends MirrorWriterProcessor {
             }
 
             // Send to main application for further processing
-            log("Sending to main application for further processing");
-            log("Generating POST request");
-            HttpPost request = new HttpPost(logiusUrl + "/api/documents");
-            String documentString = mapper.writeValueAsString(document);
-            StringEntity payload = new StringEntity(documentString, ContentType.APPLICATION_JSON);
-            request.setEntity(payload);
-
-            log("Sending request");
-            try (CloseableHttpClient httpClient = new GracefulHttpClient(MAX_RETRIES, RETRY_INTERVAL)) {
-                try (CloseableHttpResponse response = httpClient.execute(request)){
-                    StatusLine statusLine = response.getStatusLine();
-                    int statusCode = statusLine.getStatusCode();
-                    log("Response obtained with status code " + statusCode);
-                    if (statusCode != 200) {
-                        HttpEntity responseEntity = response.getEntity();
-                        log("Fail to POST document " + documentString + "."
-                                + " Response " + statusCode + " " + statusLine.getReasonPhrase()
-                                + (responseEntity != null ? "\n" + IOUtils.toString(responseEntity.getContent()) : ""));
-                    }
-                }
-            }
+            log("Adding document to the outbox");
+            outbox.add(mapper.writeValueAsString(document));
         } catch (Throwable e) {
             log("Fail to process " + uri + ". Exception message: " + e.getMessage());
             e.printStackTrace();
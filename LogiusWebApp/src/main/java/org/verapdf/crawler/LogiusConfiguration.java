@@ -16,6 +16,10 @@ public class LogiusConfiguration extends Configuration {
     private BingConfiguration bingConfiguration;
     private PDFProcessorsConfiguration pdfProcessorsConfiguration;
 
+    @Valid
+    @NotNull
+    private HttpClientConfiguration httpClientConfiguration = new HttpClientConfiguration();
+
     @Valid
     @NotNull
     private DataSourceFactory database = new DataSourceFactory();
@@ -89,4 +93,14 @@ public class LogiusConfiguration extends Configuration {
     public void setPdfProcessorsConfiguration(PDFProcessorsConfiguration pdfProcessorsConfiguration) {
         this.pdfProcessorsConfiguration = pdfProcessorsConfiguration;
     }
+
+    @JsonProperty("httpClient")
+    public HttpClientConfiguration getHttpClientConfiguration() {
+        return httpClientConfiguration;
+    }
+
+    @JsonProperty("httpClient")
+    public void setHttpClientConfiguration(HttpClientConfiguration httpClientConfiguration) {
+        this.httpClientConfiguration = httpClientConfiguration;
+    }
 }
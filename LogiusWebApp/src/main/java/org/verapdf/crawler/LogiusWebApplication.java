@@ -1,5 +1,7 @@
 package org.verapdf.crawler;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheck;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import io.dropwizard.Application;
@@ -11,6 +13,7 @@ import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.verapdf.common.PooledHttpClientFactory;
 import org.verapdf.crawler.core.heritrix.HeritrixClient;
 import org.verapdf.crawler.health.HeritrixHealthCheck;
 import org.verapdf.crawler.health.VeraPDFServiceHealthCheck;
@@ -49,8 +52,11 @@ public class LogiusWebApplication extends Application<LogiusConfiguration> {
         environment.jersey().setUrlPattern("/api/*");
         environment.getObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
         try {
-            HeritrixClient client = new HeritrixClient(configuration.getHeritrixConfiguration());
+            HeritrixClient client = new HeritrixClient(configuration.getHeritrixConfiguration(),
+                    configuration.getHttpClientConfiguration());
             ResourceManager resourceManager = new ResourceManager(configuration, client, hibernate);
+            registerHttpClientMetrics(environment.metrics(), "heritrix", client.getHttpClientFactory());
+            registerHttpClientMetrics(environment.metrics(), "verapdf-service", resourceManager.getHttpClientFactory());
             for (Object resource : resourceManager.getResources()) {
                 environment.jersey().register(resource);
             }
@@ -64,4 +70,15 @@ public class LogiusWebApplication extends Application<LogiusConfiguration> {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    private static void registerHttpClientMetrics(MetricRegistry metrics, String name, PooledHttpClientFactory factory) {
+        metrics.register(MetricRegistry.name(PooledHttpClientFactory.class, name, "leased-connections"),
+                (Gauge<Integer>) () -> factory.getTotalStats().getLeased());
+        metrics.register(MetricRegistry.name(PooledHttpClientFactory.class, name, "available-connections"),
+                (Gauge<Integer>) () -> factory.getTotalStats().getAvailable());
+        metrics.register(MetricRegistry.name(PooledHttpClientFactory.class, name, "pending-connections"),
+                (Gauge<Integer>) () -> factory.getTotalStats().getPending());
+        metrics.register(MetricRegistry.name(PooledHttpClientFactory.class, name, "max-connections"),
+                (Gauge<Integer>) () -> factory.getTotalStats().getMax());
+    }
+}
@@ -5,6 +5,9 @@ import io.dropwizard.hibernate.HibernateBundle;
 import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
 import io.dropwizard.jetty.HttpConnectorFactory;
 import io.dropwizard.server.DefaultServerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.verapdf.common.PooledHttpClientFactory;
 import org.verapdf.crawler.configurations.BingConfiguration;
 import org.verapdf.crawler.configurations.PDFProcessorsConfiguration;
 import org.verapdf.crawler.configurations.ReportsConfiguration;
@@ -12,6 +15,8 @@ import org.verapdf.crawler.configurations.VeraPDFServiceConfiguration;
 import org.verapdf.crawler.core.email.SendEmail;
 import org.verapdf.crawler.core.heritrix.HeritrixClient;
 import org.verapdf.crawler.core.services.*;
+import org.verapdf.crawler.core.reports.ReportCache;
+import org.verapdf.crawler.core.reports.ReportStatistics;
 import org.verapdf.crawler.core.reports.ReportsGenerator;
 import org.verapdf.crawler.core.validation.PDFValidator;
 import org.verapdf.crawler.db.*;
@@ -25,10 +30,14 @@ import java.util.*;
 
 public class ResourceManager {
 
+    private static final Logger logger = LoggerFactory.getLogger(ResourceManager.class);
+
     private static final String NAME_VALIDATION_SERVICE = "validationService";
     private static final String NAME_MONITOR_CRAWL_JOB_STATUS_SERVICE = "monitorCrawlJobStatusService";
     private static final String NAME_HERITRIX_CLEANER_SERVICE = "heritrixCleanerService";
     private static final String NAME_ODS_CLEANER_SERVICE = "odsCleanerService";
+    private static final String NAME_ODS_REPORT_SERVICE = "odsReportService";
+    private static final String NAME_SNAPSHOT_SERVICE = "snapshotService";
     private static final String NAME_HEALTH_CHECK_MONITOR_SERVICE = "healthCheckMonitorService";
     private static final String NAME_BING_SERVICE = "bingService";
 
@@ -47,6 +56,12 @@ public class ResourceManager {
     private final ValidationErrorDAO validationErrorDAO;
     private final PdfPropertyDAO pdfPropertyDAO;
     private final NamespaceDAO namespaceDAO;
+    private final DocumentStatisticsDAO documentStatisticsDAO;
+    private final ReportStatistics reportStatistics;
+    private final ReportCache reportCache;
+
+    private final PooledHttpClientFactory httpClientFactory;
+    private final VeraPDFValidator veraPDFValidator;
 
     public ResourceManager(LogiusConfiguration config, HeritrixClient heritrixClient, HibernateBundle<LogiusConfiguration> hibernate) {
         this.config = config;
@@ -63,11 +78,22 @@ public class ResourceManager {
         validationErrorDAO = new ValidationErrorDAO(hibernate.getSessionFactory());
         pdfPropertyDAO = new PdfPropertyDAO(hibernate.getSessionFactory());
         namespaceDAO = new NamespaceDAO(hibernate.getSessionFactory());
+        documentStatisticsDAO = new DocumentStatisticsDAO(hibernate.getSessionFactory());
+        reportStatistics = new ReportStatistics(documentDAO, documentStatisticsDAO, validationErrorDAO);
+        reportCache = new ReportCache(reportsConfiguration.getResponseCacheMaxSize(),
+                reportsConfiguration.getResponseCacheExpirationMillis(), hibernate.getSessionFactory(), reportStatistics);
+        try {
+            validationErrorDAO.warmCache();
+        } catch (RuntimeException e) {
+            // the cache is filled on demand then
+            logger.warn("Can't load validation errors into the cache", e);
+        }
 
         VeraPDFServiceConfiguration veraPDFServiceConfiguration = this.config.getVeraPDFServiceConfiguration();
 
         // Initializing validators and reporters
-        VeraPDFValidator veraPDFValidator = new VeraPDFValidator(veraPDFServiceConfiguration);
+        httpClientFactory = this.config.getHttpClientConfiguration().buildFactory();
+        veraPDFValidator = new VeraPDFValidator(veraPDFServiceConfiguration, httpClientFactory);
         services.put(NAME_VALIDATION_SERVICE, new UnitOfWorkAwareProxyFactory(hibernate).create(ValidationService.class,
                 new Class[]{ResourceManager.class, PDFValidator.class},
                 new Object[]{this, veraPDFValidator}));
@@ -99,12 +125,20 @@ public class ResourceManager {
 
         // Initializing the rest of services
         services.put(NAME_ODS_CLEANER_SERVICE, new ODSCleanerService(reportsConfiguration));
+        services.put(NAME_ODS_REPORT_SERVICE, new UnitOfWorkAwareProxyFactory(hibernate).create(ODSReportService.class,
+                new Class[]{ResourceManager.class},
+                new Object[]{this}));
+        services.put(NAME_SNAPSHOT_SERVICE, new UnitOfWorkAwareProxyFactory(hibernate).create(SnapshotService.class,
+                new Class[]{ResourceManager.class},
+                new Object[]{this}));
         services.put(NAME_HEALTH_CHECK_MONITOR_SERVICE, new HealthCheckMonitorService(healthResource,
                 Arrays.asList(
                         NAME_VALIDATION_SERVICE,
                         NAME_MONITOR_CRAWL_JOB_STATUS_SERVICE,
                         NAME_HERITRIX_CLEANER_SERVICE,
                         NAME_ODS_CLEANER_SERVICE,
+                        NAME_ODS_REPORT_SERVICE,
+                        NAME_SNAPSHOT_SERVICE,
                         NAME_HEALTH_CHECK_MONITOR_SERVICE,
                         NAME_BING_SERVICE
                 )));
@@ -151,6 +185,18 @@ public class ResourceManager {
         return validationErrorDAO;
     }
 
+    public DocumentStatisticsDAO getDocumentStatisticsDAO() {
+        return documentStatisticsDAO;
+    }
+
+    public ReportStatistics getReportStatistics() {
+        return reportStatistics;
+    }
+
+    public ReportCache getReportCache() {
+        return reportCache;
+    }
+
     public PdfPropertyDAO getPdfPropertyDAO() {
         return pdfPropertyDAO;
     }
@@ -163,6 +209,14 @@ public class ResourceManager {
         return heritrixClient;
     }
 
+    public PooledHttpClientFactory getHttpClientFactory() {
+        return httpClientFactory;
+    }
+
+    public VeraPDFValidator getVeraPDFValidator() {
+        return veraPDFValidator;
+    }
+
     public AbstractService getService(String name) {
         return services.get(name);
     }
@@ -179,6 +233,18 @@ public class ResourceManager {
         return (HeritrixCleanerService) services.get(NAME_HERITRIX_CLEANER_SERVICE);
     }
 
+    public ODSReportService getODSReportService() {
+        return (ODSReportService) services.get(NAME_ODS_REPORT_SERVICE);
+    }
+
+    public ReportsConfiguration getReportsConfiguration() {
+        return this.config.getReportsConfiguration();
+    }
+
+    public VeraPDFServiceConfiguration getVeraPDFServiceConfiguration() {
+        return this.config.getVeraPDFServiceConfiguration();
+    }
+
     public PDFProcessorsConfiguration getPDFProcessorsConfiguration() {
         return this.config.getPdfProcessorsConfiguration();
     }
@@ -55,6 +55,11 @@ public class CrawlJob {
     @Column(name = "is_finished")
     private boolean finished;
 
+    // set when Heritrix has delivered all documents of the job, which may be sent after crawling has been finished
+    @JsonProperty
+    @Column(name = "documents_delivered")
+    private boolean documentsDelivered;
+
     @ManyToMany
     @JoinTable(
             name = "crawl_job_requests_crawl_jobs",
@@ -165,6 +170,14 @@ public class CrawlJob {
         this.finished = finished;
     }
 
+    public boolean isDocumentsDelivered() {
+        return documentsDelivered;
+    }
+
+    public void setDocumentsDelivered(boolean documentsDelivered) {
+        this.documentsDelivered = documentsDelivered;
+    }
+
     public List<CrawlRequest> getCrawlRequests() {
         if (crawlRequests == null) {
             crawlRequests = new ArrayList<>();
@@ -0,0 +1,49 @@
+package org.verapdf.crawler.api.document;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Result of saving a single document sent as a part of a batch.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DocumentIngestResult {
+
+    public enum Status {
+        SAVED,
+        // document with the same url has been saved before, e.g. when a batch is resent
+        DUPLICATE,
+        UNKNOWN_CRAWL_JOB,
+        INVALID
+    }
+
+    private final String url;
+    private final Status status;
+    private final String message;
+
+    @JsonCreator
+    public DocumentIngestResult(@JsonProperty("url") String url,
+                                @JsonProperty("status") Status status,
+                                @JsonProperty("message") String message) {
+        this.url = url;
+        this.status = status;
+        this.message = message;
+    }
+
+    public DocumentIngestResult(String url, Status status) {
+        this(url, status, null);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
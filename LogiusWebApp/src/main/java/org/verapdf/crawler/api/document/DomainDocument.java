@@ -1,9 +1,11 @@
 package org.verapdf.crawler.api.document;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonValue;
 import org.apache.commons.collections.CollectionUtils;
+import org.hibernate.annotations.BatchSize;
 import org.verapdf.crawler.api.crawling.CrawlJob;
 import org.verapdf.crawler.api.validation.error.ValidationError;
 
@@ -54,11 +56,24 @@ public class DomainDocument {
         NOT_OPEN
     }
 
+    // ids are allocated in blocks rather than by auto increment, so that inserts of documents can be batched
     @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "document_ids")
+    @TableGenerator(name = "document_ids", table = "id_generators", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "documents", allocationSize = 100)
+    @Column(name = "id")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long id;
+
     @Column(name = "document_url")
     @JsonProperty
     private String url;
 
+    // documents are looked up by url through the unique key on its hash, as urls are too long to be indexed
+    @Column(name = "url_hash")
+    @JsonIgnore
+    private String urlHash;
+
     @ManyToOne
     @JoinColumn(name = "crawl_job_domain")
     @JsonProperty
@@ -83,10 +98,12 @@ public class DomainDocument {
     @JsonProperty
     private BaseTestResult baseTestResult;
 
+    // collections of documents which are loaded together are initialized by one query per batch instead of one each
     @ElementCollection
+    @BatchSize(size = 100)
     @CollectionTable(
             name = "document_properties",
-            joinColumns = @JoinColumn(name = "document_url")
+            joinColumns = @JoinColumn(name = "document_id")
     )
     @MapKeyColumn(name = "property_name")
     @Column(name = "property_value")
@@ -94,14 +111,23 @@ public class DomainDocument {
     private Map<String, String> properties;
 
     @ManyToMany
+    @BatchSize(size = 100)
     @JoinTable(
             name = "documents_validation_errors",
-            joinColumns = @JoinColumn(name = "document_url"),
+            joinColumns = @JoinColumn(name = "document_id"),
             inverseJoinColumns = @JoinColumn(name = "error_id")
     )
     @JsonProperty
     private List<ValidationError> validationErrors;
 
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     public String getUrl() {
         return url;
     }
@@ -110,6 +136,14 @@ public class DomainDocument {
         this.url = url;
     }
 
+    public String getUrlHash() {
+        return urlHash;
+    }
+
+    public void setUrlHash(String urlHash) {
+        this.urlHash = urlHash;
+    }
+
     public CrawlJob getCrawlJob() {
         return crawlJob;
     }
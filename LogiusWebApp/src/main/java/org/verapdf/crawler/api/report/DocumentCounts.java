@@ -0,0 +1,69 @@
+package org.verapdf.crawler.api.report;
+
+import org.verapdf.crawler.api.document.DomainDocument;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Numbers of documents by document type and base test result, which all document counts of reports are taken from.
+ */
+public class DocumentCounts {
+
+    public static class TypeCount {
+        private final String documentType;
+        private final DomainDocument.BaseTestResult testResult;
+        private final long count;
+
+        public TypeCount(String documentType, DomainDocument.BaseTestResult testResult, Long count) {
+            this.documentType = documentType;
+            this.testResult = testResult;
+            this.count = count == null ? 0 : count;
+        }
+
+        public String getDocumentType() {
+            return documentType;
+        }
+
+        public DomainDocument.BaseTestResult getTestResult() {
+            return testResult;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private final List<TypeCount> counts = new ArrayList<>();
+
+    public DocumentCounts() {
+    }
+
+    public DocumentCounts(List<TypeCount> counts) {
+        this.counts.addAll(counts);
+    }
+
+    public void addAll(DocumentCounts other) {
+        this.counts.addAll(other.counts);
+    }
+
+    public List<TypeCount> getCounts() {
+        return Collections.unmodifiableList(counts);
+    }
+
+    /**
+     * @param testResult base test result of counted documents, or null to count documents with any result
+     */
+    public long count(DomainDocument.DocumentTypeGroup documentGroup, DomainDocument.BaseTestResult testResult) {
+        long res = 0;
+        for (TypeCount count : counts) {
+            if (documentGroup.getTypes().contains(count.documentType)
+                    && (testResult == null || Objects.equals(testResult, count.testResult))) {
+                res += count.count;
+            }
+        }
+        return res;
+    }
+}
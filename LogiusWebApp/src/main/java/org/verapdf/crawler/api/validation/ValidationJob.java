@@ -3,6 +3,7 @@ package org.verapdf.crawler.api.validation;
 import org.verapdf.crawler.api.document.DomainDocument;
 
 import javax.persistence.*;
+import java.util.Date;
 
 @Entity
 @Table(name = "pdf_validation_jobs_queue")
@@ -16,14 +17,18 @@ public class ValidationJob {
     }
 
     @Id
-    @Column(name = "document_url")
-    private String id;
+    @Column(name = "document_id")
+    private Long id;
 
-    @MapsId("document_url")
+    @MapsId
     @OneToOne(cascade = CascadeType.PERSIST, optional = false)
-	@PrimaryKeyJoinColumn(name = "document_url", referencedColumnName = "document_url")
+	@JoinColumn(name = "document_id")
     private DomainDocument document;
 
+    // url of the document, when the job is loaded without it
+    @Transient
+    private String url;
+
     @Column(name = "filepath")
     private String filePath;
 
@@ -31,29 +36,40 @@ public class ValidationJob {
     @Column(name = "validation_status")
     private Status status;
 
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+
+    @Column(name = "lease_expires")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date leaseExpires;
+
     public ValidationJob() {
     }
 
     public ValidationJob(DomainDocument document) {
         this.document = document;
-        this.id = document.getUrl();
+        this.id = document.getId();
         this.filePath = document.getFilePath();
         this.status = Status.NOT_STARTED;
     }
 
-    public ValidationJob(String id, Status status) {
-        this.id = id;
+    public ValidationJob(String url, Status status) {
+        this.url = url;
         this.status = status;
     }
 
-    public String getId() {
+    public Long getId() {
         return id;
     }
 
-    public void setId(String id) {
+    public void setId(Long id) {
         this.id = id;
     }
 
+    public String getUrl() {
+        return document != null ? document.getUrl() : url;
+    }
+
     public DomainDocument getDocument() {
         return document;
     }
@@ -77,4 +93,20 @@ public class ValidationJob {
     public void setStatus(Status status) {
         this.status = status;
     }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public Date getLeaseExpires() {
+        return leaseExpires;
+    }
+
+    public void setLeaseExpires(Date leaseExpires) {
+        this.leaseExpires = leaseExpires;
+    }
 }
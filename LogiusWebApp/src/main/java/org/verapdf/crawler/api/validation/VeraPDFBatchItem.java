@@ -0,0 +1,32 @@
+package org.verapdf.crawler.api.validation;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * File sent to veraPDF service as a part of a batch. Result of the file is reported with the same id.
+ */
+public class VeraPDFBatchItem {
+
+    @NotNull
+    private final String id;
+    @NotNull
+    private final String filename;
+
+    @JsonCreator
+    public VeraPDFBatchItem(@JsonProperty("id") String id,
+                            @JsonProperty("filename") String filename) {
+        this.id = id;
+        this.filename = filename;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+}
@@ -11,16 +11,27 @@ public class VeraPDFServiceStatus {
         ABORTED
     }
 
+    private final String jobId;
     private final ProcessorStatus processorStatus;
     private final VeraPDFValidationResult validationResult;
 
+    public VeraPDFServiceStatus(ProcessorStatus processorStatus, VeraPDFValidationResult validationResult) {
+        this(null, processorStatus, validationResult);
+    }
+
     @JsonCreator
-    public VeraPDFServiceStatus(@JsonProperty("processorStatus") ProcessorStatus processorStatus,
+    public VeraPDFServiceStatus(@JsonProperty("jobId") String jobId,
+                                @JsonProperty("processorStatus") ProcessorStatus processorStatus,
                                 @JsonProperty("validationResult") VeraPDFValidationResult validationResult) {
+        this.jobId = jobId;
         this.processorStatus = processorStatus;
         this.validationResult = validationResult;
     }
 
+    public String getJobId() {
+        return jobId;
+    }
+
     public ProcessorStatus getProcessorStatus() {
         return processorStatus;
     }
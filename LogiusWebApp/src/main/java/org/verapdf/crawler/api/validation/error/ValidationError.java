@@ -34,6 +34,10 @@ public class ValidationError {
     @JsonProperty
     private String description;
 
+    @Column(name = "description_hash")
+    @JsonIgnore
+    private String descriptionHash;
+
     public ValidationError() {
     }
 
@@ -57,6 +61,14 @@ public class ValidationError {
         this.description = description;
     }
 
+    public String getDescriptionHash() {
+        return descriptionHash;
+    }
+
+    public void setDescriptionHash(String descriptionHash) {
+        this.descriptionHash = descriptionHash;
+    }
+
     @JsonIgnore
     public String getFullDescription() {
         return this.description;
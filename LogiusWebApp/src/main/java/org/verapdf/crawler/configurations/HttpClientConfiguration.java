@@ -0,0 +1,100 @@
+package org.verapdf.crawler.configurations;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.verapdf.common.PooledHttpClientFactory;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Connection pool settings of http clients used for requests to veraPDF service and Heritrix.
+ */
+public class HttpClientConfiguration {
+
+	@Min(1)
+	private int maxConnections = 50;
+	@Min(1)
+	private int maxConnectionsPerRoute = 20;
+	@Min(1)
+	private long idleConnectionTimeoutMillis = 60 * 1000;
+	@Min(1)
+	private long connectionTimeToLiveMillis = 10 * 60 * 1000;
+	@Min(1)
+	private int connectTimeoutMillis = 30 * 1000;
+	@Min(1)
+	private int socketTimeoutMillis = 2 * 60 * 1000;
+
+	public HttpClientConfiguration() {
+	}
+
+	@JsonProperty
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	@JsonProperty
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	@JsonProperty
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	@JsonProperty
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+	}
+
+	@JsonProperty
+	public long getIdleConnectionTimeoutMillis() {
+		return idleConnectionTimeoutMillis;
+	}
+
+	@JsonProperty
+	public void setIdleConnectionTimeoutMillis(long idleConnectionTimeoutMillis) {
+		this.idleConnectionTimeoutMillis = idleConnectionTimeoutMillis;
+	}
+
+	@JsonProperty
+	public long getConnectionTimeToLiveMillis() {
+		return connectionTimeToLiveMillis;
+	}
+
+	@JsonProperty
+	public void setConnectionTimeToLiveMillis(long connectionTimeToLiveMillis) {
+		this.connectionTimeToLiveMillis = connectionTimeToLiveMillis;
+	}
+
+	@JsonProperty
+	public int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	@JsonProperty
+	public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	@JsonProperty
+	public int getSocketTimeoutMillis() {
+		return socketTimeoutMillis;
+	}
+
+	@JsonProperty
+	public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+		this.socketTimeoutMillis = socketTimeoutMillis;
+	}
+
+	public PooledHttpClientFactory buildFactory() {
+		return buildFactory(null, null);
+	}
+
+	public PooledHttpClientFactory buildFactory(SSLConnectionSocketFactory sslSocketFactory, CredentialsProvider credentialsProvider) {
+		return new PooledHttpClientFactory(maxConnections, maxConnectionsPerRoute,
+				idleConnectionTimeoutMillis, connectionTimeToLiveMillis, connectTimeoutMillis, socketTimeoutMillis,
+				sslSocketFactory, credentialsProvider);
+	}
+}
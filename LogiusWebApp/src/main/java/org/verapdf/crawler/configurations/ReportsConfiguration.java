@@ -3,6 +3,8 @@ package org.verapdf.crawler.configurations;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.hibernate.validator.constraints.NotEmpty;
 
+import javax.validation.constraints.Min;
+
 /**
  * @author Maksim Bezrukov
  */
@@ -14,6 +16,21 @@ public class ReportsConfiguration {
 	private String notificationEmails;
 	@NotEmpty
 	private String odsTempFolder;
+	// 0 disables caching of report responses
+	@Min(0)
+	private int responseCacheMaxSize = 1000;
+	@Min(1)
+	private long responseCacheExpirationMillis = 10 * 60 * 1000;
+	// how long a request waits for the ods report before it is told to retry later
+	@Min(0)
+	private long odsGenerationWaitMillis = 30 * 1000;
+	// number of documents read from the database at once by exports
+	@Min(1)
+	private int exportChunkSize = 5000;
+	@NotEmpty
+	private String snapshotFolder;
+	@Min(1)
+	private long snapshotIntervalMillis = 24 * 60 * 60 * 1000;
 
 	public ReportsConfiguration() {
 	}
@@ -47,4 +64,64 @@ public class ReportsConfiguration {
 	public void setOdsTempFolder(String odsTempFolder) {
 		this.odsTempFolder = odsTempFolder;
 	}
+
+	@JsonProperty
+	public int getResponseCacheMaxSize() {
+		return responseCacheMaxSize;
+	}
+
+	@JsonProperty
+	public void setResponseCacheMaxSize(int responseCacheMaxSize) {
+		this.responseCacheMaxSize = responseCacheMaxSize;
+	}
+
+	@JsonProperty
+	public long getResponseCacheExpirationMillis() {
+		return responseCacheExpirationMillis;
+	}
+
+	@JsonProperty
+	public void setResponseCacheExpirationMillis(long responseCacheExpirationMillis) {
+		this.responseCacheExpirationMillis = responseCacheExpirationMillis;
+	}
+
+	@JsonProperty
+	public long getOdsGenerationWaitMillis() {
+		return odsGenerationWaitMillis;
+	}
+
+	@JsonProperty
+	public void setOdsGenerationWaitMillis(long odsGenerationWaitMillis) {
+		this.odsGenerationWaitMillis = odsGenerationWaitMillis;
+	}
+
+	@JsonProperty
+	public int getExportChunkSize() {
+		return exportChunkSize;
+	}
+
+	@JsonProperty
+	public void setExportChunkSize(int exportChunkSize) {
+		this.exportChunkSize = exportChunkSize;
+	}
+
+	@JsonProperty
+	public String getSnapshotFolder() {
+		return snapshotFolder;
+	}
+
+	@JsonProperty
+	public void setSnapshotFolder(String snapshotFolder) {
+		this.snapshotFolder = snapshotFolder;
+	}
+
+	@JsonProperty
+	public long getSnapshotIntervalMillis() {
+		return snapshotIntervalMillis;
+	}
+
+	@JsonProperty
+	public void setSnapshotIntervalMillis(long snapshotIntervalMillis) {
+		this.snapshotIntervalMillis = snapshotIntervalMillis;
+	}
 }
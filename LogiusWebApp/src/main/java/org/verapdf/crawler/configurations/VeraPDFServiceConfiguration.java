@@ -3,6 +3,8 @@ package org.verapdf.crawler.configurations;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.hibernate.validator.constraints.NotEmpty;
 
+import javax.validation.constraints.Min;
+
 /**
  * @author Maksim Bezrukov
  */
@@ -11,6 +13,12 @@ public class VeraPDFServiceConfiguration {
 	@NotEmpty
 	private String url;
 
+	@Min(1)
+	private int validationWorkers = 1;
+
+	@Min(1)
+	private int validationBatchSize = 1;
+
 	public VeraPDFServiceConfiguration() {
 	}
 
@@ -23,4 +31,24 @@ public class VeraPDFServiceConfiguration {
 	public void setUrl(String url) {
 		this.url = url;
 	}
+
+	@JsonProperty
+	public int getValidationWorkers() {
+		return validationWorkers;
+	}
+
+	@JsonProperty
+	public void setValidationWorkers(int validationWorkers) {
+		this.validationWorkers = validationWorkers;
+	}
+
+	@JsonProperty
+	public int getValidationBatchSize() {
+		return validationBatchSize;
+	}
+
+	@JsonProperty
+	public void setValidationBatchSize(int validationBatchSize) {
+		this.validationBatchSize = validationBatchSize;
+	}
 }
@@ -10,21 +10,20 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.client.StandardHttpRequestRetryHandler;
 import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
 import org.jopendocument.util.StringInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.verapdf.common.GracefulHttpClient;
+import org.verapdf.common.PooledHttpClientFactory;
 import org.verapdf.crawler.api.monitoring.HeritrixCrawlJobStatus;
 import org.verapdf.crawler.configurations.HeritrixConfiguration;
+import org.verapdf.crawler.configurations.HttpClientConfiguration;
 import org.w3c.dom.*;
 import org.xml.sax.SAXException;
 
@@ -63,10 +62,9 @@ public class HeritrixClient {
     private final String baseJobUrl;
     private final String logiusAppUrl;
     private final String jobsFolderPath;
-    private final CredentialsProvider credsProvider;
-    private final SSLConnectionSocketFactory sslConnectionSocketFactory;
+    private final PooledHttpClientFactory httpClientFactory;
 
-    public HeritrixClient(HeritrixConfiguration config) throws KeyStoreException, NoSuchAlgorithmException, KeyManagementException, MalformedURLException {
+    public HeritrixClient(HeritrixConfiguration config, HttpClientConfiguration httpClientConfig) throws KeyStoreException, NoSuchAlgorithmException, KeyManagementException, MalformedURLException {
         String baseUrl = config.getUrl();
         this.engineUrl = baseUrl + "engine";
         this.baseJobUrl = this.engineUrl + "/job/";
@@ -75,16 +73,23 @@ public class HeritrixClient {
         // Configure credential provider
         URL domain = new URL(baseUrl);
         HttpHost targetHost = new HttpHost(domain.getHost(), domain.getPort(), "https");
-        this.credsProvider = new BasicCredentialsProvider();
-        this.credsProvider.setCredentials(
+        CredentialsProvider credsProvider = new BasicCredentialsProvider();
+        credsProvider.setCredentials(
                 new AuthScope(targetHost.getHostName(), targetHost.getPort()),
                 new UsernamePasswordCredentials(config.getLogin(), config.getPassword()));
-        this.sslConnectionSocketFactory = new SSLConnectionSocketFactory(SSLContexts.custom()
+        // Configure http client to ignore certificate issues
+        SSLConnectionSocketFactory sslConnectionSocketFactory = new SSLConnectionSocketFactory(SSLContexts.custom()
                 .loadTrustMaterial(null, (x509Certificates, s) -> true)
                 .build(), (s, sslSession) -> true);
+        // Heritrix has its own pool, as its connections use specific SSL settings and credentials
+        this.httpClientFactory = httpClientConfig.buildFactory(sslConnectionSocketFactory, credsProvider);
         this.configTemplatePath = config.getConfigTemplatePath();
     }
 
+    public PooledHttpClientFactory getHttpClientFactory() {
+        return httpClientFactory;
+    }
+
     public String getEngineUrl() {
         return engineUrl;
     }
@@ -93,6 +98,8 @@ public class HeritrixClient {
         HttpGet get = new HttpGet(this.engineUrl);
         try (CloseableHttpClient httpClient = buildHttpClient(GET_MAX_CONNECTION_RETRIES, GET_CONNECTION_INTERVAL)) {
             try (CloseableHttpResponse response = httpClient.execute(get)) {
+                // consumed response leaves the connection in the pool for the next request
+                EntityUtils.consume(response.getEntity());
                 return response.getStatusLine().getStatusCode() == 200;
             }
         }
@@ -260,8 +267,9 @@ public class HeritrixClient {
         HttpPost post = new HttpPost(path);
         post.setEntity(new StringEntity(entity));
         try (CloseableHttpClient httpClient = buildHttpClient(POST_MAX_CONNECTION_RETRIES, POST_CONNECTION_INTERVAL)) {
-            CloseableHttpResponse response = httpClient.execute(post);
-            response.close();
+            try (CloseableHttpResponse response = httpClient.execute(post)) {
+                EntityUtils.consume(response.getEntity());
+            }
         }
     }
 
@@ -334,8 +342,9 @@ public class HeritrixClient {
         FileEntity entity = new FileEntity(configFile);
         put.setEntity(entity);
         try (CloseableHttpClient httpClient = buildHttpClient(POST_MAX_CONNECTION_RETRIES, POST_CONNECTION_INTERVAL)) {
-            CloseableHttpResponse response = httpClient.execute(put);
-            response.close();
+            try (CloseableHttpResponse response = httpClient.execute(put)) {
+                EntityUtils.consume(response.getEntity());
+            }
         }
     }
 
@@ -356,11 +365,7 @@ public class HeritrixClient {
 //    }
 
     private CloseableHttpClient buildHttpClient(int maxRetries, long retryInterval) {
-        // Configure http client to ignore certificate issues
-        CloseableHttpClient httpClient = HttpClients.custom()
-                .setSSLSocketFactory(sslConnectionSocketFactory).setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE).setDefaultCredentialsProvider(this.credsProvider)
-                .setRetryHandler(new StandardHttpRequestRetryHandler(3, true)).build();
-        return new GracefulHttpClient(httpClient, maxRetries, retryInterval);
+        return httpClientFactory.getHttpClient(maxRetries, retryInterval);
     }
 
     private static String buildSurt(String url) {
@@ -0,0 +1,350 @@
+package org.verapdf.crawler.core.reports;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.jackson.Jackson;
+import org.verapdf.crawler.db.DocumentDAO;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a snapshot of documents of a domain in a compressed columnar format for offline analysis.
+ * <p>
+ * Snapshot is a zip file with deflated entries. Rows are split into row groups, and every column of every table of
+ * a row group is a separate entry {@code row-groups/<group>/<table>/<column>}, so a reader decompresses only columns
+ * it needs. The {@code manifest.json} entry is written last and lists tables with their columns and all column
+ * chunks with their entries, numbers of rows and encodings. Values are encoded with unsigned LEB128 varints:
+ * <ul>
+ * <li>{@code delta} (int64 and timestamp columns): 0 for null, otherwise zigzag encoded difference with the previous
+ * non-null value of the chunk plus 1;</li>
+ * <li>{@code dictionary} (string columns): number of distinct values, then every value as its byte length and UTF-8
+ * bytes, then 0 for null or index of the value in the dictionary plus 1 for every row;</li>
+ * <li>{@code plain} (string columns with mostly distinct values): 0 for null, otherwise byte length plus 1 and
+ * UTF-8 bytes for every row.</li>
+ * </ul>
+ * Timestamps are milliseconds since the epoch. Memory is bounded by the size of a row group.
+ */
+public class ColumnarSnapshotWriter implements DocumentDAO.SnapshotHandler {
+
+	public static final String FORMAT_NAME = "logius-columnar-snapshot";
+	public static final int FORMAT_VERSION = 1;
+
+	private static final String MANIFEST_ENTRY_NAME = "manifest.json";
+	private static final String ROW_GROUPS_FOLDER = "row-groups/";
+	private static final String INT64 = "int64";
+	private static final String STRING = "string";
+	private static final String TIMESTAMP = "timestamp-millis";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final ObjectMapper objectMapper = Jackson.newObjectMapper();
+
+	private final ZipOutputStream zip;
+	private final Map<String, Object> manifest = new LinkedHashMap<>();
+	private final List<Map<String, Object>> columnChunks = new ArrayList<>();
+	private final int rowGroupSize;
+	private int rowGroup = 0;
+
+	private final Table documents = new Table("documents",
+			new LongColumn("id", INT64), new StringColumn("url"), new StringColumn("type"),
+			new StringColumn("status"), new LongColumn("last_modified", TIMESTAMP));
+	private final Table properties = new Table("document_properties",
+			new LongColumn("document_id", INT64), new StringColumn("name"), new StringColumn("value"));
+	private final Table errorLinks = new Table("error_links",
+			new LongColumn("document_id", INT64), new LongColumn("error_id", INT64));
+	private final Table errors = new Table("errors",
+			new LongColumn("id", INT64), new StringColumn("type"), new StringColumn("specification"),
+			new StringColumn("clause"), new StringColumn("test_number"), new StringColumn("description"));
+	private final List<Table> tables = Arrays.asList(documents, properties, errorLinks, errors);
+
+	/**
+	 * @param rowGroupSize number of errors after which they are written as a row group, documents are split into row
+	 *                     groups by calls of {@link #finishRowGroup()}
+	 */
+	public ColumnarSnapshotWriter(OutputStream out, String domain, String dataVersion, Date created, int rowGroupSize) {
+		this.zip = new ZipOutputStream(out);
+		this.rowGroupSize = rowGroupSize;
+		manifest.put("format", FORMAT_NAME);
+		manifest.put("formatVersion", FORMAT_VERSION);
+		manifest.put("domain", domain);
+		manifest.put("dataVersion", dataVersion);
+		manifest.put("created", created.getTime());
+		Map<String, Object> schema = new LinkedHashMap<>();
+		for (Table table : tables) {
+			List<Map<String, Object>> columns = new ArrayList<>();
+			for (Column column : table.columns) {
+				Map<String, Object> description = new LinkedHashMap<>();
+				description.put("name", column.name);
+				description.put("type", column.type);
+				columns.add(description);
+			}
+			schema.put(table.name, columns);
+		}
+		manifest.put("tables", schema);
+	}
+
+	@Override
+	public void document(long id, String url, String type, String status, Date lastModified) {
+		documents.column(0).add(id);
+		documents.column(1).add(url);
+		documents.column(2).add(type);
+		documents.column(3).add(status);
+		documents.column(4).add(lastModified != null ? lastModified.getTime() : null);
+		documents.rows++;
+	}
+
+	@Override
+	public void property(long documentId, String name, String value) {
+		properties.column(0).add(documentId);
+		properties.column(1).add(name);
+		properties.column(2).add(value);
+		properties.rows++;
+	}
+
+	@Override
+	public void errorLink(long documentId, int errorId) {
+		errorLinks.column(0).add(documentId);
+		errorLinks.column(1).add((long) errorId);
+		errorLinks.rows++;
+	}
+
+	@Override
+	public void error(int id, String type, String specification, String clause, String testNumber, String description) throws IOException {
+		errors.column(0).add((long) id);
+		errors.column(1).add(type);
+		errors.column(2).add(specification);
+		errors.column(3).add(clause);
+		errors.column(4).add(testNumber);
+		errors.column(5).add(description);
+		errors.rows++;
+		if (errors.rows >= rowGroupSize) {
+			finishRowGroup();
+		}
+	}
+
+	/**
+	 * Writes buffered rows of all tables as a row group.
+	 */
+	public void finishRowGroup() throws IOException {
+		boolean empty = true;
+		for (Table table : tables) {
+			if (table.rows == 0) {
+				continue;
+			}
+			empty = false;
+			for (Column column : table.columns) {
+				String entryName = ROW_GROUPS_FOLDER + rowGroup + "/" + table.name + "/" + column.name;
+				zip.putNextEntry(new ZipEntry(entryName));
+				OutputStream out = new BufferedOutputStream(new NonClosingOutputStream(zip), BUFFER_SIZE);
+				String encoding = column.write(out);
+				out.close();
+				zip.closeEntry();
+
+				Map<String, Object> chunk = new LinkedHashMap<>();
+				chunk.put("rowGroup", rowGroup);
+				chunk.put("table", table.name);
+				chunk.put("column", column.name);
+				chunk.put("entry", entryName);
+				chunk.put("rows", table.rows);
+				chunk.put("encoding", encoding);
+				columnChunks.add(chunk);
+				column.clear();
+			}
+			table.rows = 0;
+		}
+		if (!empty) {
+			rowGroup++;
+		}
+	}
+
+	/**
+	 * Writes the rest of rows and the manifest. The output stream is not closed.
+	 */
+	public void finish() throws IOException {
+		finishRowGroup();
+		manifest.put("rowGroups", rowGroup);
+		manifest.put("columnChunks", columnChunks);
+		zip.putNextEntry(new ZipEntry(MANIFEST_ENTRY_NAME));
+		zip.write(objectMapper.writeValueAsBytes(manifest));
+		zip.closeEntry();
+		zip.finish();
+		zip.flush();
+	}
+
+	private static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static void writeBytes(OutputStream out, byte[] bytes, int lengthShift) throws IOException {
+		writeVarint(out, bytes.length + lengthShift);
+		out.write(bytes);
+	}
+
+	private static class Table {
+		private final String name;
+		private final Column[] columns;
+		private int rows = 0;
+
+		private Table(String name, Column... columns) {
+			this.name = name;
+			this.columns = columns;
+		}
+
+		private Column column(int index) {
+			return columns[index];
+		}
+	}
+
+	private static abstract class Column {
+		private final String name;
+		private final String type;
+
+		private Column(String name, String type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		void add(Long value) {
+			throw new UnsupportedOperationException("Column " + name + " is not of integer type");
+		}
+
+		void add(String value) {
+			throw new UnsupportedOperationException("Column " + name + " is not of string type");
+		}
+
+		/**
+		 * @return name of the encoding of the written values
+		 */
+		abstract String write(OutputStream out) throws IOException;
+
+		abstract void clear();
+	}
+
+	private static class LongColumn extends Column {
+		private long[] values = new long[1024];
+		private final BitSet nulls = new BitSet();
+		private int size = 0;
+
+		private LongColumn(String name, String type) {
+			super(name, type);
+		}
+
+		@Override
+		void add(Long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			if (value == null) {
+				nulls.set(size);
+			} else {
+				values[size] = value;
+			}
+			size++;
+		}
+
+		@Override
+		String write(OutputStream out) throws IOException {
+			long previous = 0;
+			for (int index = 0; index < size; index++) {
+				if (nulls.get(index)) {
+					writeVarint(out, 0);
+					continue;
+				}
+				long delta = values[index] - previous;
+				writeVarint(out, ((delta << 1) ^ (delta >> 63)) + 1);
+				previous = values[index];
+			}
+			return "delta";
+		}
+
+		@Override
+		void clear() {
+			size = 0;
+			nulls.clear();
+		}
+	}
+
+	private static class StringColumn extends Column {
+		private final List<String> values = new ArrayList<>();
+
+		private StringColumn(String name) {
+			super(name, STRING);
+		}
+
+		@Override
+		void add(String value) {
+			values.add(value);
+		}
+
+		@Override
+		String write(OutputStream out) throws IOException {
+			Map<String, Integer> dictionary = new HashMap<>();
+			List<String> dictionaryValues = new ArrayList<>();
+			for (String value : values) {
+				if (value != null && !dictionary.containsKey(value)) {
+					dictionary.put(value, dictionary.size());
+					dictionaryValues.add(value);
+				}
+			}
+			// urls and other unique values gain nothing from a dictionary
+			if (dictionary.size() * 2 > values.size()) {
+				for (String value : values) {
+					if (value == null) {
+						writeVarint(out, 0);
+					} else {
+						writeBytes(out, value.getBytes(StandardCharsets.UTF_8), 1);
+					}
+				}
+				return "plain";
+			}
+			writeVarint(out, dictionaryValues.size());
+			for (String value : dictionaryValues) {
+				writeBytes(out, value.getBytes(StandardCharsets.UTF_8), 0);
+			}
+			for (String value : values) {
+				writeVarint(out, value == null ? 0 : dictionary.get(value) + 1);
+			}
+			return "dictionary";
+		}
+
+		@Override
+		void clear() {
+			values.clear();
+		}
+	}
+
+	/**
+	 * Zip entry is closed by the zip stream itself, while buffers of columns would close the whole stream.
+	 */
+	private static class NonClosingOutputStream extends FilterOutputStream {
+		private NonClosingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package org.verapdf.crawler.core.reports;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.verapdf.crawler.api.document.DomainDocument;
+import org.verapdf.crawler.api.validation.error.ValidationError;
+import org.verapdf.crawler.db.DocumentDAO;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Export of all documents of a domain with their properties and validation errors.
+ * <p>
+ * Documents are read in chunks of ids. Every chunk is streamed from the database in its own short stateless session
+ * and is written only after the session is closed, so a slow client doesn't hold a database connection, and memory
+ * is bounded by the chunk size whatever the number of documents.
+ */
+public class DocumentsExport {
+
+	private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final JsonFactory jsonFactory = new JsonFactory();
+
+	public enum Format {
+		NDJSON("application/x-ndjson", "ndjson"),
+		CSV("text/csv", "csv");
+
+		private final String mediaType;
+		private final String extension;
+
+		Format(String mediaType, String extension) {
+			this.mediaType = mediaType;
+			this.extension = extension;
+		}
+
+		public String getMediaType() {
+			return mediaType;
+		}
+
+		public String getExtension() {
+			return extension;
+		}
+
+		/**
+		 * @return format with the given extension, or null if there is no such format
+		 */
+		public static Format fromExtension(String extension) {
+			for (Format format : values()) {
+				if (format.extension.equalsIgnoreCase(extension)) {
+					return format;
+				}
+			}
+			return null;
+		}
+	}
+
+	private final DocumentDAO documentDAO;
+	private final String domain;
+	private final Date startDate;
+	private final List<String> propertyNames;
+	private final Format format;
+	private final int chunkSize;
+
+	public DocumentsExport(DocumentDAO documentDAO, String domain, Date startDate, List<String> propertyNames,
+						   Format format, int chunkSize) {
+		this.documentDAO = documentDAO;
+		this.domain = domain;
+		this.startDate = startDate;
+		this.propertyNames = propertyNames;
+		this.format = format;
+		this.chunkSize = chunkSize;
+	}
+
+	public void write(OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+		DateFormat dateFormat = createDateFormat();
+		if (format == Format.CSV) {
+			writeCSVHeader(writer);
+		}
+		List<DomainDocument> chunk = new ArrayList<>(chunkSize);
+		// errors are few and repeat across chunks, so they are resolved once per export
+		Map<Integer, ValidationError> errors = new HashMap<>();
+		Long chunkStart = null;
+		Long chunkEnd;
+		do {
+			chunkEnd = documentDAO.getChunkEnd(domain, startDate, chunkStart, chunkSize);
+			documentDAO.scrollDocuments(domain, null, null, startDate, chunkStart, chunkEnd, propertyNames, errors,
+					chunk::add);
+			for (DomainDocument document : chunk) {
+				if (format == Format.CSV) {
+					writeCSVRow(writer, document, dateFormat);
+				} else {
+					writeNDJSONLine(writer, document, dateFormat);
+				}
+			}
+			chunk.clear();
+			writer.flush();
+			chunkStart = chunkEnd;
+		} while (chunkEnd != null);
+	}
+
+	/**
+	 * Date format of exported documents, the same as of documents serialized by Jackson.
+	 */
+	public static DateFormat createDateFormat() {
+		DateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return dateFormat;
+	}
+
+	public static void writeJSON(JsonGenerator generator, DomainDocument document, DateFormat dateFormat) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("id", document.getId());
+		generator.writeStringField("url", document.getUrl());
+		generator.writeStringField("contentType", document.getContentType());
+		generator.writeStringField("lastModified",
+				document.getLastModified() != null ? dateFormat.format(document.getLastModified()) : null);
+		if (document.getBaseTestResult() != null) {
+			generator.writeBooleanField("compliant", document.getBaseTestResult() == DomainDocument.BaseTestResult.OPEN);
+		} else {
+			generator.writeNullField("compliant");
+		}
+		generator.writeObjectFieldStart("properties");
+		for (Map.Entry<String, String> property : document.getProperties().entrySet()) {
+			generator.writeStringField(property.getKey(), property.getValue());
+		}
+		generator.writeEndObject();
+		generator.writeArrayFieldStart("errors");
+		for (ValidationError error : document.getValidationErrors()) {
+			generator.writeString(error.getDescription());
+		}
+		generator.writeEndArray();
+		generator.writeEndObject();
+	}
+
+	private static void writeNDJSONLine(Writer writer, DomainDocument document, DateFormat dateFormat) throws IOException {
+		JsonGenerator generator = jsonFactory.createGenerator(writer);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		writeJSON(generator, document, dateFormat);
+		generator.close();
+		writer.write('\n');
+	}
+
+	private void writeCSVHeader(Writer writer) throws IOException {
+		List<String> header = new ArrayList<>();
+		header.add("id");
+		header.add("url");
+		header.add("contentType");
+		header.add("lastModified");
+		header.add("compliant");
+		header.addAll(propertyNames);
+		header.add("errors");
+		writeCSVLine(writer, header);
+	}
+
+	private void writeCSVRow(Writer writer, DomainDocument document, DateFormat dateFormat) throws IOException {
+		List<String> row = new ArrayList<>(propertyNames.size() + 6);
+		row.add(String.valueOf(document.getId()));
+		row.add(document.getUrl());
+		row.add(document.getContentType());
+		row.add(document.getLastModified() != null ? dateFormat.format(document.getLastModified()) : null);
+		row.add(document.getBaseTestResult() != null
+				? String.valueOf(document.getBaseTestResult() == DomainDocument.BaseTestResult.OPEN) : null);
+		for (String propertyName : propertyNames) {
+			row.add(document.getProperties().get(propertyName));
+		}
+		// errors are kept in one cell, a line per error
+		StringBuilder errors = new StringBuilder();
+		for (ValidationError error : document.getValidationErrors()) {
+			if (errors.length() > 0) {
+				errors.append('\n');
+			}
+			errors.append(error.getDescription());
+		}
+		row.add(errors.toString());
+		writeCSVLine(writer, row);
+	}
+
+	private static void writeCSVLine(Writer writer, List<String> values) throws IOException {
+		for (int index = 0; index < values.size(); index++) {
+			if (index > 0) {
+				writer.write(',');
+			}
+			String value = values.get(index);
+			if (value == null) {
+				continue;
+			}
+			if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+				writer.write('"');
+				writer.write(value.replace("\"", "\"\""));
+				writer.write('"');
+			} else {
+				writer.write(value);
+			}
+		}
+		writer.write("\r\n");
+	}
+}
@@ -0,0 +1,149 @@
+package org.verapdf.crawler.core.reports;
+
+import org.verapdf.crawler.api.document.DomainDocument;
+import org.verapdf.crawler.api.report.PdfPropertyStatistics;
+import org.verapdf.crawler.api.validation.error.ValidationError;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rows of ODS tables as XML events, so rows are sent to the output as soon as they are written.
+ */
+class ODSTableWriter {
+
+	private static final String OFFICE_NS = "urn:oasis:names:tc:opendocument:xmlns:office:1.0";
+	private static final String TABLE_NS = "urn:oasis:names:tc:opendocument:xmlns:table:1.0";
+	private static final String TEXT_NS = "urn:oasis:names:tc:opendocument:xmlns:text:1.0";
+
+	private static final QName TABLE = new QName(TABLE_NS, "table", "table");
+	private static final QName TABLE_ROW = new QName(TABLE_NS, "table-row", "table");
+	private static final QName TABLE_CELL = new QName(TABLE_NS, "table-cell", "table");
+	private static final QName COVERED_TABLE_CELL = new QName(TABLE_NS, "covered-table-cell", "table");
+	private static final QName NUMBER_ROWS_SPANNED = new QName(TABLE_NS, "number-rows-spanned", "table");
+	private static final QName NUMBER_COLUMNS_SPANNED = new QName(TABLE_NS, "number-columns-spanned", "table");
+	private static final QName NUMBER_COLUMNS_REPEATED = new QName(TABLE_NS, "number-columns-repeated", "table");
+	private static final QName VALUE_TYPE = new QName(OFFICE_NS, "value-type", "office");
+	private static final QName PARAGRAPH = new QName(TEXT_NS, "p", "text");
+
+	// url, flavour, version and producer cells span all rows of errors of the document
+	private static final int NON_PDFA12_DOCUMENT_PROPERTIES_COUNT = 4;
+
+	private final XMLEventFactory events = XMLEventFactory.newInstance();
+	private final XMLEventWriter writer;
+	// rows of the current table, which has to contain at least one row
+	private int rowsCount;
+
+	ODSTableWriter(XMLEventWriter writer) {
+		this.writer = writer;
+	}
+
+	static boolean isTable(StartElement element) {
+		return TABLE.equals(element.getName());
+	}
+
+	static boolean isTableRow(StartElement element) {
+		return TABLE_ROW.equals(element.getName());
+	}
+
+	static boolean hasValue(StartElement element) {
+		return TABLE_CELL.equals(element.getName()) && element.getAttributeByName(VALUE_TYPE) != null;
+	}
+
+	void add(XMLEvent event) throws XMLStreamException {
+		if (event.isStartElement()) {
+			if (isTable(event.asStartElement())) {
+				this.rowsCount = 0;
+			} else if (isTableRow(event.asStartElement())) {
+				++this.rowsCount;
+			}
+		} else if (event.isEndElement() && TABLE.equals(event.asEndElement().getName()) && this.rowsCount == 0) {
+			writeRow((String) null);
+		}
+		this.writer.add(event);
+	}
+
+	void flush() throws XMLStreamException {
+		this.writer.flush();
+	}
+
+	private void writeRow(String... values) throws XMLStreamException {
+		this.writer.add(this.events.createStartElement(TABLE_ROW, null, null));
+		for (String value : values) {
+			writeCell(value, 1);
+		}
+		this.writer.add(this.events.createEndElement(TABLE_ROW, null));
+		++this.rowsCount;
+	}
+
+	void writeUrlRow(DomainDocument document) throws IOException {
+		try {
+			writeRow(document.getUrl());
+		} catch (XMLStreamException e) {
+			throw new IOException("Can't write ods row", e);
+		}
+	}
+
+	/**
+	 * Writes a row for every validation error of the document, with the document url and properties in the first one.
+	 */
+	void writeNonPDFA12Document(DomainDocument document) throws IOException {
+		Map<String, String> properties = document.getProperties() != null ? document.getProperties() : Collections.emptyMap();
+		List<String> errors = new ArrayList<>();
+		if (document.getValidationErrors() != null) {
+			for (ValidationError error : document.getValidationErrors()) {
+				errors.add(error.getFullDescription());
+			}
+		}
+		int documentRowsCount = Math.max(errors.size(), 1);
+		try {
+			this.writer.add(this.events.createStartElement(TABLE_ROW, null, null));
+			writeCell(document.getUrl(), documentRowsCount);
+			writeCell(properties.get(PdfPropertyStatistics.FLAVOUR_PROPERTY_NAME), documentRowsCount);
+			writeCell(properties.get(PdfPropertyStatistics.VERSION_PROPERTY_NAME), documentRowsCount);
+			writeCell(properties.get(PdfPropertyStatistics.PRODUCER_PROPERTY_NAME), documentRowsCount);
+			writeCell(errors.isEmpty() ? null : errors.get(0), 1);
+			this.writer.add(this.events.createEndElement(TABLE_ROW, null));
+			this.rowsCount += documentRowsCount;
+			for (int i = 1; i < errors.size(); ++i) {
+				this.writer.add(this.events.createStartElement(TABLE_ROW, null, null));
+				this.writer.add(this.events.createStartElement(COVERED_TABLE_CELL, Collections.singletonList(
+						this.events.createAttribute(NUMBER_COLUMNS_REPEATED, String.valueOf(NON_PDFA12_DOCUMENT_PROPERTIES_COUNT))).iterator(), null));
+				this.writer.add(this.events.createEndElement(COVERED_TABLE_CELL, null));
+				writeCell(errors.get(i), 1);
+				this.writer.add(this.events.createEndElement(TABLE_ROW, null));
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Can't write ods row", e);
+		}
+	}
+
+	private void writeCell(String value, int rowsSpanned) throws XMLStreamException {
+		List<javax.xml.stream.events.Attribute> attributes = new ArrayList<>();
+		if (rowsSpanned > 1) {
+			attributes.add(this.events.createAttribute(NUMBER_ROWS_SPANNED, String.valueOf(rowsSpanned)));
+			attributes.add(this.events.createAttribute(NUMBER_COLUMNS_SPANNED, "1"));
+		}
+		if (value != null) {
+			attributes.add(this.events.createAttribute(VALUE_TYPE, "string"));
+		}
+		this.writer.add(this.events.createStartElement(TABLE_CELL, attributes.iterator(), null));
+		if (value != null) {
+			for (String line : value.split("\n", -1)) {
+				this.writer.add(this.events.createStartElement(PARAGRAPH, null, null));
+				this.writer.add(this.events.createCharacters(line));
+				this.writer.add(this.events.createEndElement(PARAGRAPH, null));
+			}
+		}
+		this.writer.add(this.events.createEndElement(TABLE_CELL, null));
+	}
+}
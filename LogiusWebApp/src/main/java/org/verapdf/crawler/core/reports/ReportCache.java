@@ -0,0 +1,201 @@
+package org.verapdf.crawler.core.reports;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.jackson.Jackson;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.context.internal.ManagedSessionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.verapdf.crawler.tools.HashUtils;
+
+import javax.transaction.Synchronization;
+import javax.ws.rs.core.EntityTag;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Cache of report responses by endpoint, domain, start date and filters.
+ * <p>
+ * Reports of a domain change only when its documents are saved or validated, so all entries of the domain are
+ * invalidated then. Entries are also evicted when the cache is full, least recently used first, and after the
+ * expiration time. Every entry has an entity tag computed from its JSON representation, so clients can revalidate
+ * responses without transferring them again.
+ */
+public class ReportCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReportCache.class);
+
+	private static final ObjectMapper objectMapper = Jackson.newObjectMapper();
+
+	private final int maxSize;
+	private final long expirationTime;
+	private final SessionFactory sessionFactory;
+	private final ReportStatistics reportStatistics;
+
+	private final LinkedHashMap<Key, Entry> entries;
+	// incremented on every invalidation of the domain, so reports loaded before it are not cached
+	private final Map<String, Long> domainVersions = new HashMap<>();
+
+	public ReportCache(int maxSize, long expirationTime, SessionFactory sessionFactory, ReportStatistics reportStatistics) {
+		this.maxSize = maxSize;
+		this.expirationTime = expirationTime;
+		this.sessionFactory = sessionFactory;
+		this.reportStatistics = reportStatistics;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > ReportCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns cached report or loads it with the given loader, which is called in the unit of work of the caller.
+	 *
+	 * @param filters additional request parameters which the report depends on
+	 */
+	public <T> CachedReport<T> get(String endpoint, String domain, Date startDate, Supplier<T> loader, Object... filters) {
+		Key key = new Key(endpoint, domain, startDate, filters);
+		long version;
+		synchronized (this) {
+			Entry entry = this.entries.get(key);
+			if (entry != null && entry.expires > System.currentTimeMillis()) {
+				@SuppressWarnings("unchecked")
+				CachedReport<T> report = (CachedReport<T>) entry.report;
+				return report;
+			}
+			version = getVersion(domain);
+		}
+		T value = loader.get();
+		CachedReport<T> report = new CachedReport<>(value, computeEntityTag(value));
+		synchronized (this) {
+			if (this.maxSize > 0 && version == getVersion(domain)) {
+				this.entries.put(key, new Entry(report, System.currentTimeMillis() + this.expirationTime));
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * Drops all reports of the domain. If called in a transaction, the reports are dropped once more after it is
+	 * completed, so reports loaded before the changes are committed don't stay in the cache.
+	 */
+	public void invalidate(String domain) {
+		doInvalidate(domain);
+		if (!ManagedSessionContext.hasBind(this.sessionFactory)) {
+			return;
+		}
+		Transaction transaction = this.sessionFactory.getCurrentSession().getTransaction();
+		if (transaction == null || !transaction.isActive()) {
+			return;
+		}
+		transaction.registerSynchronization(new Synchronization() {
+			@Override
+			public void beforeCompletion() {
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				doInvalidate(domain);
+			}
+		});
+	}
+
+	private void doInvalidate(String domain) {
+		synchronized (this) {
+			this.domainVersions.put(domain, getVersion(domain) + 1);
+			Iterator<Key> keys = this.entries.keySet().iterator();
+			while (keys.hasNext()) {
+				if (Objects.equals(keys.next().domain, domain)) {
+					keys.remove();
+				}
+			}
+		}
+		this.reportStatistics.invalidate(domain);
+	}
+
+	private long getVersion(String domain) {
+		Long version = this.domainVersions.get(domain);
+		return version == null ? 0 : version;
+	}
+
+	private static EntityTag computeEntityTag(Object value) {
+		try {
+			return new EntityTag(HashUtils.sha1Hex(objectMapper.writeValueAsBytes(value)));
+		} catch (JsonProcessingException e) {
+			logger.warn("Can't compute entity tag of report", e);
+			return null;
+		}
+	}
+
+	public static class CachedReport<T> {
+		private final T value;
+		private final EntityTag entityTag;
+
+		private CachedReport(T value, EntityTag entityTag) {
+			this.value = value;
+			this.entityTag = entityTag;
+		}
+
+		public T getValue() {
+			return value;
+		}
+
+		/**
+		 * @return tag of the report content, or null if it can't be computed
+		 */
+		public EntityTag getEntityTag() {
+			return entityTag;
+		}
+	}
+
+	private static class Entry {
+		private final CachedReport<?> report;
+		private final long expires;
+
+		private Entry(CachedReport<?> report, long expires) {
+			this.report = report;
+			this.expires = expires;
+		}
+	}
+
+	private static class Key {
+		private final String endpoint;
+		private final String domain;
+		private final Long startDate;
+		private final Object[] filters;
+
+		private Key(String endpoint, String domain, Date startDate, Object[] filters) {
+			this.endpoint = endpoint;
+			this.domain = domain;
+			this.startDate = startDate == null ? null : startDate.getTime();
+			this.filters = filters;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			Key key = (Key) o;
+			return endpoint.equals(key.endpoint) && Objects.equals(domain, key.domain)
+					&& Objects.equals(startDate, key.startDate) && Arrays.equals(filters, key.filters);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(endpoint, domain, startDate, Arrays.hashCode(filters));
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package org.verapdf.crawler.core.reports;
+
+import org.verapdf.crawler.api.document.DomainDocument;
+import org.verapdf.crawler.api.report.DocumentCounts;
+import org.verapdf.crawler.api.report.ErrorStatistics;
+import org.verapdf.crawler.api.report.PdfPropertyStatistics;
+import org.verapdf.crawler.api.validation.error.ValidationError;
+import org.verapdf.crawler.db.DocumentDAO;
+import org.verapdf.crawler.db.DocumentStatisticsDAO;
+import org.verapdf.crawler.db.ValidationErrorDAO;
+import org.verapdf.crawler.tools.HashUtils;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Report statistics, which are summed from monthly rollups of {@link DocumentStatisticsDAO}.
+ * <p>
+ * Rollups are used for whole months only. If the start date is in the middle of a month, the documents of that
+ * month since the start date are counted in the documents table, which is bounded by one month of documents.
+ * Must be used inside a unit of work.
+ */
+public class ReportStatistics {
+
+	private static final long COUNTS_MEMOIZATION_TIME = 10 * 1000;
+	private static final int MAX_MEMOIZED_COUNTS = 1000;
+
+	private final DocumentDAO documentDAO;
+	private final DocumentStatisticsDAO statisticsDAO;
+	private final ValidationErrorDAO validationErrorDAO;
+	private final Map<String, MemoizedCounts> documentCounts = new ConcurrentHashMap<>();
+
+	public ReportStatistics(DocumentDAO documentDAO, DocumentStatisticsDAO statisticsDAO, ValidationErrorDAO validationErrorDAO) {
+		this.documentDAO = documentDAO;
+		this.statisticsDAO = statisticsDAO;
+		this.validationErrorDAO = validationErrorDAO;
+	}
+
+	/**
+	 * Document counts are requested by every report several times in a row, so they are memoized for a short time
+	 * per domain and start date.
+	 */
+	public DocumentCounts getDocumentCounts(String domain, Date startDate) {
+		String key = domain + '\u0000' + (startDate == null ? "" : startDate.getTime());
+		long now = System.currentTimeMillis();
+		MemoizedCounts memoized = this.documentCounts.get(key);
+		if (memoized != null && memoized.expires > now) {
+			return memoized.counts;
+		}
+		MonthRange range = new MonthRange(startDate);
+		DocumentCounts counts = this.statisticsDAO.getDocumentCounts(domain, range.firstFullMonth);
+		if (range.hasPartialMonth()) {
+			counts.addAll(this.documentDAO.getDocumentCounts(domain, startDate, range.firstFullMonthStart));
+		}
+		if (this.documentCounts.size() >= MAX_MEMOIZED_COUNTS) {
+			this.documentCounts.values().removeIf(value -> value.expires <= now);
+		}
+		if (this.documentCounts.size() < MAX_MEMOIZED_COUNTS) {
+			this.documentCounts.put(key, new MemoizedCounts(counts, now + COUNTS_MEMOIZATION_TIME));
+		}
+		return counts;
+	}
+
+	/**
+	 * Version of the domain data, which changes with the rollups and also with the documents themselves: a domain
+	 * crawled again may have the same counts, but its documents are recreated with new ids.
+	 */
+	public String getDataVersion(String domain) {
+		String dataVersion = this.statisticsDAO.getDataVersion(domain);
+		String fingerprint = this.documentDAO.getDocumentsFingerprint(domain);
+		return HashUtils.sha1Hex(dataVersion + '\n' + fingerprint);
+	}
+
+	/**
+	 * Forgets memoized counts of the domain after its documents have been changed.
+	 */
+	public void invalidate(String domain) {
+		String prefix = domain + '\u0000';
+		this.documentCounts.keySet().removeIf(key -> key.startsWith(prefix));
+	}
+
+	public List<PdfPropertyStatistics.ValueCount> getPropertyStatistics(String domain, String propertyName, Date startDate) {
+		return getPropertyStatistics(domain, propertyName, startDate, null);
+	}
+
+	/**
+	 * @return number of documents by property value, in order of decreasing count
+	 */
+	public List<PdfPropertyStatistics.ValueCount> getPropertyStatistics(String domain, String propertyName, Date startDate, Integer limit) {
+		MonthRange range = new MonthRange(startDate);
+		Map<String, Long> counts = this.statisticsDAO.getPropertyStatistics(domain, propertyName, range.firstFullMonth);
+		if (range.hasPartialMonth()) {
+			for (PdfPropertyStatistics.ValueCount count : this.documentDAO.getPropertyStatistics(
+					domain, propertyName, startDate, range.firstFullMonthStart, false, null)) {
+				counts.merge(count.getValue(), count.getCount(), Long::sum);
+			}
+		}
+		List<PdfPropertyStatistics.ValueCount> res = new ArrayList<>();
+		for (Map.Entry<String, Long> count : counts.entrySet()) {
+			res.add(new PdfPropertyStatistics.ValueCount(count.getKey(), count.getValue()));
+		}
+		res.sort((first, second) -> Long.compare(second.getCount(), first.getCount()));
+		return limit != null && res.size() > limit ? new ArrayList<>(res.subList(0, limit)) : res;
+	}
+
+	/**
+	 * @return errors by number of documents, in order of decreasing count
+	 */
+	public List<ErrorStatistics.ErrorCount> getErrorsStatistics(String domain, Date startDate, String flavour,
+																 String version, String producer, int limit) {
+		MonthRange range = new MonthRange(startDate);
+		Map<Integer, Long> counts = this.statisticsDAO.getErrorsStatistics(domain, range.firstFullMonth, flavour, version, producer);
+		Map<Integer, ValidationError> errors = new LinkedHashMap<>();
+		if (range.hasPartialMonth()) {
+			for (ErrorStatistics.ErrorCount count : this.documentDAO.getErrorsStatistics(
+					domain, startDate, range.firstFullMonthStart, flavour, version, producer, null)) {
+				counts.merge(count.getError().getId(), count.getCount(), Long::sum);
+				errors.put(count.getError().getId(), count.getError());
+			}
+		}
+		List<Map.Entry<Integer, Long>> sortedCounts = new ArrayList<>(counts.entrySet());
+		sortedCounts.sort((first, second) -> Long.compare(second.getValue(), first.getValue()));
+		List<ErrorStatistics.ErrorCount> res = new ArrayList<>();
+		for (Map.Entry<Integer, Long> count : sortedCounts.subList(0, Math.min(limit, sortedCounts.size()))) {
+			ValidationError error = errors.get(count.getKey());
+			if (error == null) {
+				error = this.validationErrorDAO.getById(count.getKey());
+			}
+			res.add(new ErrorStatistics.ErrorCount(error, count.getValue()));
+		}
+		return res;
+	}
+
+	private static class MemoizedCounts {
+		private final DocumentCounts counts;
+		private final long expires;
+
+		private MemoizedCounts(DocumentCounts counts, long expires) {
+			this.counts = counts;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * Splits the period since the start date into whole months covered by rollups and the rest of the first month.
+	 */
+	private static class MonthRange {
+		// null when there is no start date, so all months are counted
+		private final Integer firstFullMonth;
+		private final Date firstFullMonthStart;
+		private final boolean partialMonth;
+
+		private MonthRange(Date startDate) {
+			if (startDate == null) {
+				this.firstFullMonth = null;
+				this.firstFullMonthStart = null;
+				this.partialMonth = false;
+				return;
+			}
+			Calendar monthStart = Calendar.getInstance();
+			monthStart.setTime(startDate);
+			monthStart.set(Calendar.DAY_OF_MONTH, 1);
+			monthStart.set(Calendar.HOUR_OF_DAY, 0);
+			monthStart.set(Calendar.MINUTE, 0);
+			monthStart.set(Calendar.SECOND, 0);
+			monthStart.set(Calendar.MILLISECOND, 0);
+			this.partialMonth = monthStart.getTime().before(startDate);
+			if (this.partialMonth) {
+				monthStart.add(Calendar.MONTH, 1);
+			}
+			this.firstFullMonthStart = monthStart.getTime();
+			this.firstFullMonth = DocumentStatisticsDAO.getMonth(this.firstFullMonthStart);
+		}
+
+		private boolean hasPartialMonth() {
+			return this.partialMonth;
+		}
+	}
+}
@@ -1,23 +1,49 @@
 package org.verapdf.crawler.core.reports;
 
-import org.jopendocument.dom.spreadsheet.MutableCell;
 import org.jopendocument.dom.spreadsheet.Sheet;
 import org.jopendocument.dom.spreadsheet.SpreadSheet;
-import org.verapdf.crawler.api.document.DomainDocument;
-import org.verapdf.crawler.api.validation.error.ValidationError;
 import org.verapdf.crawler.configurations.ReportsConfiguration;
+import org.verapdf.crawler.db.DocumentDAO;
 
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 /**
+ * ODS report is based on the template. Summary sheet is filled in memory, and document sheets are streamed into
+ * the output: while content of the filled template is copied, rows of documents are written at the end of their
+ * sheets as documents are read from the database.
+ *
  * @author Maksim Bezrukov
  */
 public class ReportsGenerator {
 
+	private static final String CONTENT_ENTRY_NAME = "content.xml";
+	private static final String MIMETYPE_ENTRY_NAME = "mimetype";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int NON_PDFA12_DOCUMENTS_SHEET = 1;
+	private static final int MICROSOFT_OFFICE_DOCUMENTS_SHEET = 2;
+	private static final int OPEN_OFFICE_XML_DOCUMENTS_SHEET = 3;
+
 	private static ReportsConfiguration config = null;
 
 	private ReportsGenerator() {
@@ -27,23 +53,26 @@ public class ReportsGenerator {
 		config = reportsConfiguration;
 	}
 
-	public static File generateODSReport(String domain,
-										 Date documentsSince,
-										 long compliantPDFA12DocumentsCount,
-										 long odfDocumentsCount,
-										 long nonPDFA12DocumentsCount,
-										 long microsoftOfficeDocumentsCount,
-										 long openOfficeXMLDocumentsCount,
-										 List<DomainDocument> nonPDFA12Documents,
-										 List<String> microsoftOfficeDocuments,
-										 List<String> openOfficeXMLDocuments) throws IOException {
+	/**
+	 * Source of documents of a sheet, which passes them to the handler one by one.
+	 */
+	public interface DocumentSource {
+		void forEach(DocumentDAO.DocumentHandler handler) throws IOException;
+	}
+
+	public static void writeODSReport(OutputStream out,
+									  Date documentsSince,
+									  long compliantPDFA12DocumentsCount,
+									  long odfDocumentsCount,
+									  long nonPDFA12DocumentsCount,
+									  long microsoftOfficeDocumentsCount,
+									  long openOfficeXMLDocumentsCount,
+									  DocumentSource nonPDFA12Documents,
+									  DocumentSource microsoftOfficeDocuments,
+									  DocumentSource openOfficeXMLDocuments) throws IOException {
 		if (config == null) {
 			throw new IllegalStateException("Initialization fail. Configuration has not been set");
 		}
-		File tempFolder = new File(config.getOdsTempFolder());
-		if (!tempFolder.isDirectory() && (tempFolder.exists() || !tempFolder.mkdirs())) {
-			throw new IllegalStateException("Initialization fail on obtaining ods temp folder");
-		}
 
 		File template = new File(config.getOdsTemplatePath());
 		SpreadSheet spreadSheet = SpreadSheet.createFromFile(template);
@@ -54,81 +83,128 @@ public class ReportsGenerator {
 				microsoftOfficeDocumentsCount,
 				openOfficeXMLDocumentsCount,
 				spreadSheet);
-		fillNonPDFA12Documents(nonPDFA12Documents, spreadSheet);
-		fillSimpleSheet(microsoftOfficeDocuments, 2, spreadSheet);
-		fillSimpleSheet(openOfficeXMLDocuments, 3, spreadSheet);
-
-		File tempODSReport = new File(tempFolder, "logiusODSReport-" + domain + "-" + System.currentTimeMillis() + ".ods");
-		spreadSheet.saveAs(tempODSReport);
-		return tempODSReport;
-	}
+		ByteArrayOutputStream filledTemplate = new ByteArrayOutputStream();
+		spreadSheet.getPackage().save(filledTemplate);
 
-	private static void fillSimpleSheet(List<String> documentsList,
-										int sheetNumber, SpreadSheet spreadSheet) {
-		Sheet sheet = spreadSheet.getSheet(sheetNumber);
-		sheet.ensureColumnCount(1);
-		sheet.ensureRowCount(documentsList.size());
-		int i = 0;
-		for (String document : documentsList) {
-			sheet.setValueAt(document, 0, i++);
+		ZipOutputStream zip = new ZipOutputStream(out);
+		try (ZipInputStream templateZip = new ZipInputStream(new ByteArrayInputStream(filledTemplate.toByteArray()))) {
+			ZipEntry templateEntry;
+			while ((templateEntry = templateZip.getNextEntry()) != null) {
+				String name = templateEntry.getName();
+				if (MIMETYPE_ENTRY_NAME.equals(name)) {
+					// must be the first entry and not compressed
+					byte[] mimetype = readEntry(templateZip);
+					CRC32 crc = new CRC32();
+					crc.update(mimetype);
+					ZipEntry entry = new ZipEntry(name);
+					entry.setMethod(ZipEntry.STORED);
+					entry.setSize(mimetype.length);
+					entry.setCrc(crc.getValue());
+					zip.putNextEntry(entry);
+					zip.write(mimetype);
+				} else {
+					zip.putNextEntry(new ZipEntry(name));
+					if (CONTENT_ENTRY_NAME.equals(name)) {
+						// template content is small, documents are added while it is copied
+						writeContent(new ByteArrayInputStream(readEntry(templateZip)),
+								new BufferedOutputStream(new NonClosingOutputStream(zip), BUFFER_SIZE),
+								nonPDFA12Documents, microsoftOfficeDocuments, openOfficeXMLDocuments);
+					} else {
+						copy(templateZip, zip);
+					}
+				}
+				zip.closeEntry();
+			}
 		}
+		zip.finish();
+		zip.flush();
 	}
 
-	private static void fillNonPDFA12Documents(List<DomainDocument> documentsList, SpreadSheet spreadSheet) {
-		Sheet sheet = spreadSheet.getSheet(1);
-		sheet.ensureColumnCount(5);
-		sheet.ensureRowCount(getNonPDFA12DocumentsRowCount(documentsList));
-		int i = 1;
-		for (DomainDocument document : documentsList) {
-			sheet.setValueAt(document.getUrl(), 0, i);
-			Map<String, String> properties = document.getProperties();
-			if (properties != null) {
-				setProperty("flavour", 1, i, properties, sheet);
-				setProperty("pdfVersion", 2, i, properties, sheet);
-				setProperty("producer", 3, i, properties, sheet);
-			}
-			List<ValidationError> validationErrors = document.getValidationErrors();
-			if (validationErrors != null && !validationErrors.isEmpty()) {
-				int j = i;
-				for (ValidationError error : validationErrors) {
-					sheet.setValueAt(error.getFullDescription(), 4, j++);
-				}
-				if (j - i > 1) {
-					for (int l = 0; l < 4; ++l) {
-						MutableCell<SpreadSheet> cell = sheet.getCellAt(l, i);
-						cell.merge(1, j - i);
+	private static void writeContent(InputStream templateContent, OutputStream out,
+									 DocumentSource nonPDFA12Documents,
+									 DocumentSource microsoftOfficeDocuments,
+									 DocumentSource openOfficeXMLDocuments) throws IOException {
+		try {
+			XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(templateContent);
+			ODSTableWriter writer = new ODSTableWriter(XMLOutputFactory.newInstance().createXMLEventWriter(out, "UTF-8"));
+			int sheetIndex = -1;
+			int depth = 0;
+			int sheetDepth = -1;
+			while (reader.hasNext()) {
+				XMLEvent event = reader.nextEvent();
+				if (event.isStartElement()) {
+					++depth;
+					if (sheetDepth < 0 && ODSTableWriter.isTable(event.asStartElement())) {
+						++sheetIndex;
+						sheetDepth = depth;
+					} else if (depth == sheetDepth + 1 && sheetIndex >= NON_PDFA12_DOCUMENTS_SHEET
+							&& ODSTableWriter.isTableRow(event.asStartElement())) {
+						// placeholder rows of document sheets are replaced by documents
+						copyRowIfNotEmpty(event.asStartElement(), reader, writer);
+						--depth;
+						continue;
 					}
+				} else if (event.isEndElement()) {
+					if (depth == sheetDepth) {
+						switch (sheetIndex) {
+							case NON_PDFA12_DOCUMENTS_SHEET:
+								nonPDFA12Documents.forEach(writer::writeNonPDFA12Document);
+								break;
+							case MICROSOFT_OFFICE_DOCUMENTS_SHEET:
+								microsoftOfficeDocuments.forEach(writer::writeUrlRow);
+								break;
+							case OPEN_OFFICE_XML_DOCUMENTS_SHEET:
+								openOfficeXMLDocuments.forEach(writer::writeUrlRow);
+								break;
+						}
+						sheetDepth = -1;
+					}
+					--depth;
 				}
-				i = j;
-			} else {
-				++i;
+				writer.add(event);
 			}
+			writer.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException("Can't write ods report content", e);
 		}
 	}
 
-	private static void setProperty(String propertyName, int columnIndex, int rowIndex,
-									Map<String, String> properties, Sheet sheet) {
-		String property = properties.get(propertyName);
-		if (property != null) {
-			sheet.setValueAt(property, columnIndex, rowIndex);
+	private static void copyRowIfNotEmpty(StartElement rowStart, XMLEventReader reader, ODSTableWriter writer) throws XMLStreamException {
+		List<XMLEvent> row = new ArrayList<>();
+		row.add(rowStart);
+		boolean empty = true;
+		int depth = 1;
+		while (depth > 0) {
+			XMLEvent event = reader.nextEvent();
+			if (event.isStartElement()) {
+				++depth;
+				if (ODSTableWriter.hasValue(event.asStartElement())) {
+					empty = false;
+				}
+			} else if (event.isEndElement()) {
+				--depth;
+			}
+			row.add(event);
+		}
+		if (!empty) {
+			for (XMLEvent event : row) {
+				writer.add(event);
+			}
 		}
 	}
 
-	private static int getNonPDFA12DocumentsRowCount(List<DomainDocument> documentList) {
-		if (documentList == null || documentList.isEmpty()) {
-			return 0;
-		}
-		int res = documentList.size();
-		for (DomainDocument document : documentList) {
-			List<ValidationError> validationErrors = document.getValidationErrors();
-			if (validationErrors != null) {
-				int errorsCount = validationErrors.size();
-				if (errorsCount > 1) {
-					res += errorsCount;
-				}
-			}
+	private static byte[] readEntry(InputStream is) throws IOException {
+		ByteArrayOutputStream res = new ByteArrayOutputStream();
+		copy(is, res);
+		return res.toByteArray();
+	}
+
+	private static void copy(InputStream is, OutputStream os) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = is.read(buffer)) >= 0) {
+			os.write(buffer, 0, read);
 		}
-		return res;
 	}
 
 	private static void fillSummary(Date documentsSince,
@@ -154,4 +230,23 @@ public class ReportsGenerator {
 		sheet.setValueAt(openOfficeXMLDocuments, 1, 7);
 		sheet.setValueAt(nonPDFA12Documents + microsoftOfficeDocuments + openOfficeXMLDocuments, 1, 8);
 	}
+
+	/**
+	 * Zip entry is closed by the zip stream itself, while XML writer would close the whole stream.
+	 */
+	private static class NonClosingOutputStream extends FilterOutputStream {
+		private NonClosingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
 }
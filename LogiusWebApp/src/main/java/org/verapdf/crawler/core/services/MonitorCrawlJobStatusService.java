@@ -16,6 +16,8 @@ import org.verapdf.crawler.tools.AbstractService;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Maksim Bezrukov
@@ -26,8 +28,12 @@ public class MonitorCrawlJobStatusService extends AbstractService {
 
 	private static final long SLEEP_DURATION = 60*1000;
     private static final int BATCH_SIZE = 20;
+	// Heritrix drains the outbox for outboxDrainTimeout (5 minutes by default) after crawling, plus a margin
+	private static final long DOCUMENTS_DELIVERY_TIMEOUT = 15 * 60 * 1000;
 
 	private final ResourceManager resourceManager;
+	// deadlines of documents delivery by Heritrix job ids, 0 after the deadline has passed
+	private final Map<String, Long> deliveryDeadlines = new ConcurrentHashMap<>();
 
 	public MonitorCrawlJobStatusService(ResourceManager resourceManager) {
 		super("MonitorCrawlJobStatusService", SLEEP_DURATION);
@@ -74,6 +80,11 @@ public class MonitorCrawlJobStatusService extends AbstractService {
 				if (!isCrawlingFinished) {
 					return false;
 				}
+				// the last documents may still be on their way from Heritrix after crawling has been finished
+				if (!job.isDocumentsDelivered() && !isDeliveryTimedOut(job)) {
+					logger.info("Waiting for Heritrix to deliver the rest of documents of " + job.getDomain());
+					return false;
+				}
 			} else if (service == CrawlJob.CrawlService.BING) {
 				CrawlJob currentJob = resourceManager.getBingService().getCurrentJob();
 				if (currentJob != null && currentJob.getDomain().equals(job.getDomain())) {
@@ -91,10 +102,13 @@ public class MonitorCrawlJobStatusService extends AbstractService {
             job.setFinished(true);
             job.setStatus(CrawlJob.Status.FINISHED);
             job.setFinishTime(new Date());
+            deliveryDeadlines.remove(job.getHeritrixJobId());
             if (service == CrawlJob.CrawlService.BING) {
             	resourceManager.getBingService().deleteTempFolder(job);
 			}
             logger.info("Crawling complete for " + job.getDomain());
+            // report of the whole domain is prepared in advance, as it is downloaded after the job is finished
+            resourceManager.getODSReportService().requestReport(job.getDomain(), null);
             return true;
         } catch (Exception e) {
             logger.error("Fail to check status of job for " + job.getDomain(), e);
@@ -102,6 +116,26 @@ public class MonitorCrawlJobStatusService extends AbstractService {
         }
     }
 
+	/**
+	 * Heritrix may stop without delivering the outbox, e.g. if the drain has timed out or the outbox has been lost,
+	 * so the job is finished without the rest of documents after a deadline instead of waiting forever.
+	 */
+	private boolean isDeliveryTimedOut(CrawlJob job) {
+		long now = System.currentTimeMillis();
+		String heritrixJobId = job.getHeritrixJobId();
+		long deadline = deliveryDeadlines.computeIfAbsent(heritrixJobId, id -> now + DOCUMENTS_DELIVERY_TIMEOUT);
+		if (deadline == 0) {
+			return true;
+		}
+		if (now < deadline) {
+			return false;
+		}
+		deliveryDeadlines.put(heritrixJobId, 0L);
+		logger.warn("Heritrix hasn't reported delivery of documents of " + job.getDomain() + " in "
+				+ DOCUMENTS_DELIVERY_TIMEOUT / 60000 + " minutes after crawling, finishing the job without the rest of documents");
+		return true;
+	}
+
 	private void checkCrawlRequests() {
 		List<CrawlRequest> crawlRequests = resourceManager.getCrawlRequestDAO().findActiveRequestsWithoutActiveJobs();
 		for (CrawlRequest request : crawlRequests) {
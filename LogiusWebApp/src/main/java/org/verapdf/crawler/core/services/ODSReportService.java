@@ -0,0 +1,233 @@
+package org.verapdf.crawler.core.services;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.verapdf.crawler.ResourceManager;
+import org.verapdf.crawler.api.document.DomainDocument;
+import org.verapdf.crawler.api.report.DocumentCounts;
+import org.verapdf.crawler.core.reports.ReportsGenerator;
+import org.verapdf.crawler.db.DocumentDAO;
+import org.verapdf.crawler.tools.AbstractService;
+import org.verapdf.crawler.tools.HashUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Generates ODS reports in background and keeps them as files in the ods temp folder.
+ * <p>
+ * Report file is named by the hash of its domain and start date and by the data version of the domain, so a report
+ * is generated only once until documents of the domain change, and then the file of the previous version is
+ * replaced. Reports are requested when crawl jobs are finished and when they are downloaded. Like other ods files,
+ * reports are removed by {@link ODSCleanerService} after a week, and they are generated again on the next request.
+ */
+public class ODSReportService extends AbstractService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ODSReportService.class);
+
+	private static final long SLEEP_DURATION = 60*1000;
+	private static final String REPORT_FILE_PREFIX = "report-";
+	private static final String REPORT_FILE_EXTENSION = ".ods";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final ResourceManager resourceManager;
+	private final BlockingQueue<ReportKey> queue = new LinkedBlockingQueue<>();
+	private final Map<ReportKey, CompletableFuture<File>> pendingReports = new ConcurrentHashMap<>();
+
+	public ODSReportService(ResourceManager resourceManager) {
+		super("ODSReportService", SLEEP_DURATION);
+		this.resourceManager = resourceManager;
+	}
+
+	@Override
+	protected void onStart() {
+		File folder = getReportsFolder();
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			logger.error("Can't create ods reports folder " + folder.getAbsolutePath());
+		}
+	}
+
+	@Override
+	protected boolean onRepeat() throws InterruptedException {
+		ReportKey key = queue.poll(SLEEP_DURATION, TimeUnit.MILLISECONDS);
+		if (key == null) {
+			return false;
+		}
+		CompletableFuture<File> report = pendingReports.get(key);
+		try {
+			File file = generateReport(key);
+			pendingReports.remove(key);
+			report.complete(file);
+		} catch (IOException | RuntimeException e) {
+			logger.error("Fail to generate ods report for " + key.domain, e);
+			pendingReports.remove(key);
+			report.completeExceptionally(e);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the report of the current data version, waiting for it to be generated up to the given time.
+	 *
+	 * @return report file, or null if it is still being generated
+	 */
+	public File getReport(String domain, Date startDate, long waitMillis) throws IOException, InterruptedException {
+		ReportKey key = new ReportKey(domain, startDate);
+		File file = getReportFile(key, getDataVersion(domain));
+		if (file.isFile()) {
+			return file;
+		}
+		try {
+			return requestReport(domain, startDate).get(waitMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			return null;
+		} catch (ExecutionException e) {
+			throw new IOException("Fail to generate ods report", e.getCause());
+		}
+	}
+
+	/**
+	 * Schedules generation of the report, unless it is already scheduled. Report is not generated again if the
+	 * file of the current data version exists.
+	 */
+	public CompletableFuture<File> requestReport(String domain, Date startDate) {
+		ReportKey key = new ReportKey(domain, startDate);
+		CompletableFuture<File> report = new CompletableFuture<>();
+		CompletableFuture<File> pending = pendingReports.putIfAbsent(key, report);
+		if (pending != null) {
+			return pending;
+		}
+		queue.add(key);
+		return report;
+	}
+
+	@SuppressWarnings("WeakerAccess")
+	@UnitOfWork
+	public String getDataVersion(String domain) {
+		return resourceManager.getReportStatistics().getDataVersion(domain);
+	}
+
+	@SuppressWarnings("WeakerAccess")
+	@UnitOfWork
+	public ReportData getReportData(String domain, Date startDate) {
+		String dataVersion = resourceManager.getReportStatistics().getDataVersion(domain);
+		DocumentCounts counts = resourceManager.getReportStatistics().getDocumentCounts(domain, startDate);
+		return new ReportData(dataVersion, counts);
+	}
+
+	private File generateReport(ReportKey key) throws IOException {
+		// counts and version are read in one transaction, documents are read later in their own one
+		ReportData data = getReportData(key.domain, key.startDate);
+		File file = getReportFile(key, data.dataVersion);
+		if (file.isFile()) {
+			return file;
+		}
+		long start = System.currentTimeMillis();
+		File folder = getReportsFolder();
+		File tempFile = File.createTempFile(REPORT_FILE_PREFIX, ".tmp", folder);
+		try {
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE)) {
+				writeReport(out, key, data.counts);
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempFile.toPath());
+		}
+		removePreviousVersions(key, file);
+		logger.info("ODS report for " + key.domain + " generated in " + (System.currentTimeMillis() - start) + " ms");
+		return file;
+	}
+
+	private void writeReport(OutputStream out, ReportKey key, DocumentCounts counts) throws IOException {
+		DocumentDAO documentDAO = resourceManager.getDocumentDAO();
+		String domain = key.domain;
+		Date startDate = key.startDate;
+		ReportsGenerator.writeODSReport(out, startDate,
+				counts.count(DomainDocument.DocumentTypeGroup.PDF, DomainDocument.BaseTestResult.OPEN),
+				counts.count(DomainDocument.DocumentTypeGroup.OPEN_OFFICE, null),
+				counts.count(DomainDocument.DocumentTypeGroup.PDF, DomainDocument.BaseTestResult.NOT_OPEN),
+				counts.count(DomainDocument.DocumentTypeGroup.MS_OFFICE, null),
+				counts.count(DomainDocument.DocumentTypeGroup.OO_XML_OFFICE, null),
+				handler -> documentDAO.scrollDocuments(domain, DomainDocument.DocumentTypeGroup.PDF.getTypes(),
+						DomainDocument.BaseTestResult.NOT_OPEN, startDate, handler),
+				handler -> documentDAO.scrollDocuments(domain, DomainDocument.DocumentTypeGroup.MS_OFFICE.getTypes(),
+						null, startDate, handler),
+				handler -> documentDAO.scrollDocuments(domain, DomainDocument.DocumentTypeGroup.OO_XML_OFFICE.getTypes(),
+						null, startDate, handler));
+	}
+
+	private void removePreviousVersions(ReportKey key, File current) {
+		String prefix = REPORT_FILE_PREFIX + key.hash + "-";
+		File[] files = getReportsFolder().listFiles((dir, name) -> name.startsWith(prefix));
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (!file.equals(current) && !file.delete()) {
+				logger.warn("Can't remove previous ods report " + file.getAbsolutePath());
+			}
+		}
+	}
+
+	private File getReportFile(ReportKey key, String dataVersion) {
+		return new File(getReportsFolder(), REPORT_FILE_PREFIX + key.hash + "-" + dataVersion + REPORT_FILE_EXTENSION);
+	}
+
+	private File getReportsFolder() {
+		return new File(resourceManager.getReportsConfiguration().getOdsTempFolder());
+	}
+
+	public static class ReportData {
+		private final String dataVersion;
+		private final DocumentCounts counts;
+
+		private ReportData(String dataVersion, DocumentCounts counts) {
+			this.dataVersion = dataVersion;
+			this.counts = counts;
+		}
+	}
+
+	private static class ReportKey {
+		private final String domain;
+		private final Date startDate;
+		private final String hash;
+
+		private ReportKey(String domain, Date startDate) {
+			this.domain = domain;
+			this.startDate = startDate;
+			this.hash = HashUtils.sha1Hex(domain + '\u0000' + (startDate == null ? "" : startDate.getTime()));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			return hash.equals(((ReportKey) o).hash) && Objects.equals(domain, ((ReportKey) o).domain);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash.hashCode();
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package org.verapdf.crawler.core.services;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.verapdf.crawler.ResourceManager;
+import org.verapdf.crawler.configurations.ReportsConfiguration;
+import org.verapdf.crawler.core.reports.ColumnarSnapshotWriter;
+import org.verapdf.crawler.db.DocumentDAO;
+import org.verapdf.crawler.tools.AbstractService;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Periodically writes columnar snapshots of documents of every domain for offline analysis, see
+ * {@link ColumnarSnapshotWriter}.
+ * <p>
+ * Snapshots of a domain are kept in its own folder and are named by the date and by the version of the domain
+ * data, which is computed from report rollups and from the number and the latest ids and dates of documents. A
+ * domain is written again only when its version has changed since its last snapshot, and the newer snapshot of
+ * the same date replaces the older one.
+ */
+public class SnapshotService extends AbstractService {
+
+	private static final Logger logger = LoggerFactory.getLogger(SnapshotService.class);
+
+	private static final int DOMAINS_PAGE_SIZE = 100;
+	private static final String SNAPSHOT_FILE_EXTENSION = ".snapshot.zip";
+	private static final String SNAPSHOT_DATE_FORMAT = "yyyy-MM-dd";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final ResourceManager resourceManager;
+	private final ReportsConfiguration config;
+
+	public SnapshotService(ResourceManager resourceManager) {
+		super("SnapshotService", resourceManager.getReportsConfiguration().getSnapshotIntervalMillis());
+		this.resourceManager = resourceManager;
+		this.config = resourceManager.getReportsConfiguration();
+	}
+
+	@Override
+	protected void onStart() {
+		File folder = new File(config.getSnapshotFolder());
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			logger.error("Can't create snapshots folder " + folder.getAbsolutePath());
+		}
+	}
+
+	@Override
+	protected boolean onRepeat() {
+		long start = System.currentTimeMillis();
+		int written = 0;
+		String afterDomain = null;
+		List<String> domains;
+		do {
+			domains = getDomains(afterDomain);
+			for (String domain : domains) {
+				try {
+					if (writeSnapshot(domain)) {
+						written++;
+					}
+				} catch (IOException | RuntimeException e) {
+					logger.error("Fail to write snapshot of " + domain, e);
+				}
+				afterDomain = domain;
+			}
+		} while (domains.size() == DOMAINS_PAGE_SIZE);
+		logger.info(written + " snapshots written in " + (System.currentTimeMillis() - start) + " ms");
+		return true;
+	}
+
+	@SuppressWarnings("WeakerAccess")
+	@UnitOfWork
+	public List<String> getDomains(String afterDomain) {
+		return resourceManager.getCrawlJobDAO().findDomains(afterDomain, DOMAINS_PAGE_SIZE);
+	}
+
+	@SuppressWarnings("WeakerAccess")
+	@UnitOfWork
+	public String getSnapshotVersion(String domain) {
+		return resourceManager.getReportStatistics().getDataVersion(domain);
+	}
+
+	/**
+	 * @return true if the snapshot has been written, false if the domain hasn't changed since its last snapshot
+	 */
+	private boolean writeSnapshot(String domain) throws IOException {
+		String version = getSnapshotVersion(domain);
+		File folder = getDomainFolder(domain);
+		String versionSuffix = "-" + version + SNAPSHOT_FILE_EXTENSION;
+		File[] existing = folder.listFiles((dir, name) -> name.endsWith(versionSuffix));
+		if (existing != null && existing.length > 0) {
+			return false;
+		}
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Can't create snapshots folder " + folder.getAbsolutePath());
+		}
+
+		long start = System.currentTimeMillis();
+		Date now = new Date();
+		DateFormat dateFormat = new SimpleDateFormat(SNAPSHOT_DATE_FORMAT);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		String date = dateFormat.format(now);
+		File file = new File(folder, date + versionSuffix);
+		File tempFile = File.createTempFile("snapshot-", ".tmp", folder);
+		try {
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE)) {
+				writeSnapshot(out, domain, version, now);
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempFile.toPath());
+		}
+		removeEarlierVersions(folder, date, file);
+		logger.info("Snapshot of " + domain + " written in " + (System.currentTimeMillis() - start) + " ms");
+		return true;
+	}
+
+	private void writeSnapshot(OutputStream out, String domain, String version, Date created) throws IOException {
+		DocumentDAO documentDAO = resourceManager.getDocumentDAO();
+		int chunkSize = config.getExportChunkSize();
+		ColumnarSnapshotWriter writer = new ColumnarSnapshotWriter(out, domain, version, created, chunkSize);
+		// every chunk of documents is read in its own short session and becomes a row group
+		Long chunkStart = null;
+		Long chunkEnd;
+		do {
+			chunkEnd = documentDAO.getChunkEnd(domain, null, chunkStart, chunkSize);
+			documentDAO.scrollSnapshot(domain, chunkStart, chunkEnd, writer);
+			writer.finishRowGroup();
+			chunkStart = chunkEnd;
+		} while (chunkEnd != null);
+		documentDAO.scrollSnapshotErrors(domain, writer);
+		writer.finish();
+	}
+
+	private static void removeEarlierVersions(File folder, String date, File current) {
+		File[] files = folder.listFiles((dir, name) -> name.startsWith(date + "-") && name.endsWith(SNAPSHOT_FILE_EXTENSION));
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (!file.equals(current) && !file.delete()) {
+				logger.warn("Can't remove earlier snapshot " + file.getAbsolutePath());
+			}
+		}
+	}
+
+	private File getDomainFolder(String domain) throws UnsupportedEncodingException {
+		return new File(config.getSnapshotFolder(), URLEncoder.encode(domain, "UTF-8"));
+	}
+}
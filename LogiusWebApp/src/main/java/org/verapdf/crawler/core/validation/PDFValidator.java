@@ -4,11 +4,22 @@ import org.verapdf.crawler.api.validation.ValidationJob;
 import org.verapdf.crawler.api.validation.VeraPDFValidationResult;
 
 import java.io.IOException;
+import java.util.List;
 
 public interface PDFValidator {
-    void startValidation(ValidationJob job) throws IOException, ValidationDeadlockException;
+    void startValidation(ValidationJob job) throws IOException, ValidationDeadlockException, InterruptedException;
 
     VeraPDFValidationResult getValidationResult(ValidationJob job) throws IOException, ValidationDeadlockException, InterruptedException;
 
-    void terminateValidation() throws IOException;
+    void terminateValidation(ValidationJob job) throws IOException;
+
+    /**
+     * Validates all given jobs in a single request and passes the result of every job to the handler as soon as it is ready.
+     * Jobs which have not been passed to the handler by the time this method returns have not been validated.
+     */
+    void validateBatch(List<ValidationJob> jobs, BatchResultHandler handler) throws IOException, ValidationDeadlockException;
+
+    interface BatchResultHandler {
+        void resultReady(ValidationJob job, VeraPDFValidationResult result);
+    }
 }
@@ -12,16 +12,16 @@ import org.verapdf.crawler.api.validation.ValidationJob;
 import org.verapdf.crawler.api.validation.VeraPDFValidationResult;
 import org.verapdf.crawler.api.validation.error.ValidationError;
 import org.verapdf.crawler.configurations.PDFProcessorsConfiguration;
+import org.verapdf.crawler.db.ValidationJobDAO;
 import org.verapdf.crawler.tools.AbstractService;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.*;
 
 public class ValidationService extends AbstractService {
 
@@ -31,16 +31,27 @@ public class ValidationService extends AbstractService {
 	private static final String PROPERTY_NAME_MOD_DATE_INFO_DICT = "modDateInfoDict";
 
 	private static final long SLEEP_DURATION = 60*1000;
+	// leases are prolonged every SLEEP_DURATION, so they expire only if this instance is gone
+	private static final long LEASE_DURATION = 10*60*1000;
 
 	private List<PDFProcessorAdapter> pdfProcessors;
     private final ResourceManager resourceManager;
     private final PDFValidator validator;
-    private ValidationJob currentJob;
+    private final int workersCount;
+    private final int batchSize;
+    private final List<ValidationWorker> workers = new ArrayList<>();
+    private final Object claimLock = new Object();
+    private final Deque<ValidationJob> claimedJobs = new ArrayDeque<>();
+    private final String leaseOwner;
+    private volatile int generation = 0;
 
     public ValidationService(ResourceManager resourceManager, PDFValidator validator) {
         super("ValidationService", SLEEP_DURATION);
     	this.resourceManager = resourceManager;
         this.validator = validator;
+        this.workersCount = resourceManager.getVeraPDFServiceConfiguration().getValidationWorkers();
+        this.batchSize = resourceManager.getVeraPDFServiceConfiguration().getValidationBatchSize();
+        this.leaseOwner = evaluateLeaseOwner();
         this.pdfProcessors = new ArrayList<>();
 		PDFProcessorsConfiguration pdfProcessorsConfiguration = resourceManager.getPDFProcessorsConfiguration();
 		if (pdfProcessorsConfiguration != null) {
@@ -51,98 +62,153 @@ public class ValidationService extends AbstractService {
 		}
     }
 
-	public ValidationJob getCurrentJob() {
-		return currentJob;
+	/**
+	 * Aborts validation of all documents of the given domain which are being validated at the moment.
+	 */
+	public void abortJobs(String domain) {
+		synchronized (claimLock) {
+			claimedJobs.removeIf(job -> domain.equals(job.getDocument().getCrawlJob().getDomain()));
+		}
+		synchronized (workers) {
+			for (ValidationWorker worker : workers) {
+				worker.abortJob(domain);
+			}
+		}
 	}
 
-	private void setCurrentJob(ValidationJob currentJob) {
-    	synchronized (ValidationService.class) {
-			this.currentJob = currentJob;
+	@Override
+	protected void onStart() {
+		// jobs left in progress by the previous run can't be resumed, as it is not known which worker has started them
+		synchronized (claimLock) {
+			claimedJobs.clear();
+		}
+		releaseLeases();
+		synchronized (workers) {
+			int currentGeneration = ++generation;
+			workers.clear();
+			for (int i = 0; i < workersCount; ++i) {
+				ValidationWorker worker = new ValidationWorker(currentGeneration);
+				workers.add(worker);
+				new Thread(worker, "Thread-" + getServiceName() + "-worker-" + i).start();
+			}
 		}
 	}
 
-    public void abortCurrentJob() {
-		try {
-			logger.info("Aborting current job");
-			currentJob.setStatus(ValidationJob.Status.ABORTED);
-			validator.terminateValidation();
-		} catch (IOException e) {
-			logger.error("Can't terminate current job", e);
+	@Override
+	protected boolean onRepeat() throws Throwable {
+		synchronized (workers) {
+			for (ValidationWorker worker : workers) {
+				if (worker.failure != null) {
+					throw worker.failure;
+				}
+			}
 		}
+		maintainLeases();
+		return true;
 	}
 
-	@Override
-	protected void onStart() throws InterruptedException, ValidationDeadlockException {
-		setCurrentJob(retrieveCurrentJob());
-		if (currentJob != null) {
-			try {
-				processStartedJob();
-			} catch (IOException e) {
-				saveErrorResult(e);
+	private List<ValidationJob> claimNextJobs() {
+		if (batchSize > 1) {
+			// the whole batch is sent to veraPDF service by the worker in a single request
+			return claimJobs(batchSize);
+		}
+		// jobs are claimed in batches, one for each worker, and handed out to the workers one by one
+		synchronized (claimLock) {
+			if (claimedJobs.isEmpty()) {
+				claimedJobs.addAll(claimJobs(workersCount));
 			}
+			ValidationJob job = claimedJobs.poll();
+			return job == null ? Collections.emptyList() : Collections.singletonList(job);
 		}
 	}
 
-	@Override
-	protected boolean onRepeat() throws ValidationDeadlockException, InterruptedException {
-		setCurrentJob(retrieveNextJob());
-		if (currentJob != null) {
-			logger.info("Validating " + currentJob.getId());
-			try {
-				validator.startValidation(currentJob);
-				processStartedJob();
-			} catch (IOException e) {
-				saveErrorResult(e);
+	private void processStartedJob(ValidationJob job) throws IOException, ValidationDeadlockException, InterruptedException {
+        processResult(job, validator.getValidationResult(job));
+    }
+
+	private void processBatch(List<ValidationJob> jobs) throws ValidationDeadlockException {
+		Set<ValidationJob> unprocessedJobs = new HashSet<>(jobs);
+		try {
+			validator.validateBatch(jobs, (job, result) -> {
+				unprocessedJobs.remove(job);
+				processResult(job, result);
+			});
+		} catch (IOException e) {
+			for (ValidationJob job : unprocessedJobs) {
+				saveErrorResult(job, e);
 			}
-			return false;
+			return;
+		}
+		for (ValidationJob job : unprocessedJobs) {
+			saveResult(job, new VeraPDFValidationResult("Validation result has not been received"));
 		}
-		return true;
 	}
 
-	private void processStartedJob() throws IOException, ValidationDeadlockException, InterruptedException {
-        VeraPDFValidationResult result = validator.getValidationResult(currentJob);
+	private void processResult(ValidationJob job, VeraPDFValidationResult result) {
         // additional processors logic
         for (PDFProcessorAdapter pdfProcessor : this.pdfProcessors) {
-			Map<String, String> properties = pdfProcessor.evaluateProperties(currentJob);
+			Map<String, String> properties = pdfProcessor.evaluateProperties(job);
 			for (Map.Entry<String, String> property : properties.entrySet()) {
 				result.addProperty(property.getKey(), property.getValue());
 			}
 		}
-        saveResult(result);
+        saveResult(job, result);
     }
 
-    private void saveErrorResult(Throwable e) {
+    private void saveErrorResult(ValidationJob job, Throwable e) {
         VeraPDFValidationResult result = new VeraPDFValidationResult(e.getMessage());
-        saveResult(result);
+        saveResult(job, result);
     }
 
     @SuppressWarnings("WeakerAccess") // @UnitOfWork works only with public methods
     @UnitOfWork
-    public ValidationJob retrieveNextJob() {
-		logger.debug("Getting next job");
-        ValidationJob job = resourceManager.getValidationJobDAO().next();
-        if (job != null) {
-            job.setStatus(ValidationJob.Status.IN_PROGRESS);
-        }
-        return job;
+    public List<ValidationJob> claimJobs(int limit) {
+		logger.debug("Claiming next jobs");
+        Date leaseExpires = new Date(System.currentTimeMillis() + LEASE_DURATION);
+        return resourceManager.getValidationJobDAO().claim(leaseOwner, limit, leaseExpires);
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    @UnitOfWork
+    public void releaseLeases() {
+		int released = resourceManager.getValidationJobDAO().releaseLeases(leaseOwner);
+		if (released > 0) {
+			logger.info("Returned " + released + " started jobs to the queue");
+		}
     }
 
     @SuppressWarnings("WeakerAccess")
     @UnitOfWork
-    public ValidationJob retrieveCurrentJob() {
-		logger.debug("Getting current job");
-        return resourceManager.getValidationJobDAO().current();
+    public void maintainLeases() {
+		ValidationJobDAO validationJobDAO = resourceManager.getValidationJobDAO();
+		Date now = new Date();
+		validationJobDAO.extendLeases(leaseOwner, new Date(now.getTime() + LEASE_DURATION));
+		int released = validationJobDAO.releaseExpiredLeases(now);
+		if (released > 0) {
+			logger.info("Returned " + released + " jobs with expired leases to the queue");
+		}
     }
 
+    private static String evaluateLeaseOwner() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			logger.warn("Can't obtain host name, using random lease owner", e);
+			return UUID.randomUUID().toString();
+		}
+	}
+
     @SuppressWarnings("WeakerAccess")
     @UnitOfWork
-    public void saveResult(VeraPDFValidationResult result) {
+    public void saveResult(ValidationJob job, VeraPDFValidationResult result) {
 		boolean shouldCleanDB = false;
     	try {
-            if (!currentJob.getStatus().equals(ValidationJob.Status.ABORTED)) {
+            if (!job.getStatus().equals(ValidationJob.Status.ABORTED)) {
             	shouldCleanDB = true;
 				logger.debug("Saving validation job results");
-                DomainDocument document = currentJob.getDocument();
+                DomainDocument document = job.getDocument();
+                // report statistics are moved from the stored state of the document to the validated one
+                resourceManager.getDocumentStatisticsDAO().subtractStoredDocument(document.getId());
                 document.setBaseTestResult(result.getTestResult());
 
                 // Save errors where needed
@@ -172,11 +238,13 @@ public class ValidationService extends AbstractService {
 
                 // And update document (note that document was detached from hibernate context, thus we need to save explicitly)
 				resourceManager.getDocumentDAO().save(document);
+				resourceManager.getDocumentStatisticsDAO().addDocuments(Collections.singletonList(document));
+				resourceManager.getReportCache().invalidate(document.getCrawlJob().getDomain());
             } else {
             	logger.debug("Validation job was aborted, don't save any results");
 			}
         } finally {
-            cleanJob(currentJob, shouldCleanDB);
+            cleanJob(job, shouldCleanDB);
         }
     }
 
@@ -214,4 +282,76 @@ public class ValidationService extends AbstractService {
 			resourceManager.getValidationJobDAO().remove(job);
 		}
     }
-}
\ No newline at end of file
+
+	private class ValidationWorker implements Runnable {
+
+		private final int workerGeneration;
+		// domains of the jobs the worker is validating at the moment
+		private final Map<ValidationJob, String> currentJobs = new HashMap<>();
+		private volatile Throwable failure;
+
+		private ValidationWorker(int workerGeneration) {
+			this.workerGeneration = workerGeneration;
+		}
+
+		private boolean isActive() {
+			return isRunning() && generation == workerGeneration;
+		}
+
+		private synchronized void setCurrentJobs(List<ValidationJob> jobs) {
+			this.currentJobs.clear();
+			for (ValidationJob job : jobs) {
+				this.currentJobs.put(job, job.getDocument().getCrawlJob().getDomain());
+			}
+		}
+
+		private synchronized void abortJob(String domain) {
+			for (Map.Entry<ValidationJob, String> entry : currentJobs.entrySet()) {
+				if (domain.equals(entry.getValue())) {
+					ValidationJob currentJob = entry.getKey();
+					try {
+						logger.info("Aborting validation of " + currentJob.getUrl());
+						currentJob.setStatus(ValidationJob.Status.ABORTED);
+						validator.terminateValidation(currentJob);
+					} catch (IOException e) {
+						logger.error("Can't terminate validation of " + currentJob.getUrl(), e);
+					}
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (isActive()) {
+					List<ValidationJob> jobs = claimNextJobs();
+					if (jobs.isEmpty()) {
+						Thread.sleep(SLEEP_DURATION);
+						continue;
+					}
+					setCurrentJobs(jobs);
+					try {
+						if (batchSize > 1) {
+							logger.info("Validating batch of " + jobs.size() + " jobs");
+							processBatch(jobs);
+						} else {
+							ValidationJob job = jobs.get(0);
+							logger.info("Validating " + job.getUrl());
+							try {
+								validator.startValidation(job);
+								processStartedJob(job);
+							} catch (IOException e) {
+								saveErrorResult(job, e);
+							}
+						}
+					} finally {
+						setCurrentJobs(Collections.emptyList());
+					}
+				}
+			} catch (Throwable e) {
+				logger.error("Fatal error in validation worker", e);
+				this.failure = e;
+			}
+		}
+	}
+}
@@ -6,18 +6,35 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.verapdf.common.GracefulHttpClient;
+import org.verapdf.common.PooledHttpClientFactory;
 import org.verapdf.crawler.api.validation.ValidationJob;
+import org.verapdf.crawler.api.validation.VeraPDFBatchItem;
 import org.verapdf.crawler.api.validation.VeraPDFServiceStatus;
 import org.verapdf.crawler.api.validation.VeraPDFValidationResult;
 import org.verapdf.crawler.configurations.VeraPDFServiceConfiguration;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class VeraPDFValidator implements PDFValidator {
 
@@ -26,35 +43,56 @@ public class VeraPDFValidator implements PDFValidator {
     private static final long CONNECTION_INTERVAL = 60 * 1000;
     private static final int MAX_CONNECTION_RETRIES = 5;
     private static final long GET_VALIDATION_RESULT_TIMEOUT = 5 * 60 * 1000;      // 5 min
-    private static final long GET_VALIDATION_RESULT_CHECK_INTERVAL = 5 * 1000;    // 5 sec
+    // results are pushed by veraPDF service, so status is polled only in case the notification has been lost
+    private static final long GET_VALIDATION_RESULT_CHECK_INTERVAL = 30 * 1000;   // 30 sec
     private static final int MAX_VALIDATION_RETRIES = 3;
+    // veraPDF process may take up to 30 minutes, so all slots can be occupied for that long
+    private static final long FREE_SLOT_TIMEOUT = 35 * 60 * 1000;                 // 35 min
+    private static final long FREE_SLOT_CHECK_INTERVAL = 10 * 1000;               // 10 sec
+    // small documents may be finished before the response to their validation request is read
+    private static final long EARLY_RESULT_LIFETIME = 60 * 1000;                  // 1 min
 
     private final String verapdfUrl;
     private final ObjectMapper mapper;
+    private final PooledHttpClientFactory httpClientFactory;
+    // ids of veraPDF service jobs by validation job ids
+    private final Map<Long, String> serviceJobIds = new ConcurrentHashMap<>();
+    // results pushed by veraPDF service by its job ids
+    private final Map<String, CompletableFuture<VeraPDFServiceStatus>> pushedResults = new ConcurrentHashMap<>();
+    // results pushed before their jobs have been registered, in order of arrival; guarded by itself
+    private final Map<String, EarlyResult> earlyResults = new LinkedHashMap<>();
 
-    public VeraPDFValidator(VeraPDFServiceConfiguration configuration) {
+    public VeraPDFValidator(VeraPDFServiceConfiguration configuration, PooledHttpClientFactory httpClientFactory) {
         this.verapdfUrl = configuration.getUrl();
         this.mapper = new ObjectMapper();
+        this.httpClientFactory = httpClientFactory;
     }
 
     @Override
-    public void startValidation(ValidationJob job) throws IOException, ValidationDeadlockException {
+    public void startValidation(ValidationJob job) throws IOException, ValidationDeadlockException, InterruptedException {
         String localFilename = job.getFilePath();
         logger.info("Sending file " + localFilename + " to validator");
-        sendValidationRequest(localFilename);
+        sendValidationRequest(job);
     }
 
     public VeraPDFValidationResult getValidationResult(ValidationJob job) throws IOException, ValidationDeadlockException, InterruptedException {
+        if (job == null) {
+            return new VeraPDFValidationResult("Validation can't be performed for empty validation job");
+        }
         try {
             int validationRetries = 0;
-            if (job == null) {
-                return new VeraPDFValidationResult("Validation can't be performed for empty validation job");
-            }
-            String filename = job.getFilePath();
 
             long endTime = System.currentTimeMillis() + GET_VALIDATION_RESULT_TIMEOUT;
             while (System.currentTimeMillis() < endTime) {
-                VeraPDFServiceStatus status = getValidationStatus();
+                String serviceJobId = serviceJobIds.get(job.getId());
+                if (serviceJobId == null) {
+                    logger.info("Validation is aborted");
+                    return new VeraPDFValidationResult("Validation was aborted");
+                }
+                VeraPDFServiceStatus status = waitForPushedResult(serviceJobId);
+                if (status == null) {
+                    status = getValidationStatus(serviceJobId);
+                }
 
                 switch (status.getProcessorStatus()) {
                     case FINISHED:
@@ -63,7 +101,6 @@ public class VeraPDFValidator implements PDFValidator {
 
                     case ACTIVE:
                         logger.info("Validation is in progress");
-                        Thread.sleep(GET_VALIDATION_RESULT_CHECK_INTERVAL);
                         break;
 
                     case ABORTED:
@@ -75,14 +112,15 @@ public class VeraPDFValidator implements PDFValidator {
                         if (++validationRetries == MAX_VALIDATION_RETRIES) {
                             throw new ValidationDeadlockException(ValidationDeadlockException.VALIDATOR_STATE_IDLE);
                         }
-                        sendValidationRequest(filename);
+                        pushedResults.remove(serviceJobId);
+                        sendValidationRequest(job);
                         endTime = System.currentTimeMillis() + GET_VALIDATION_RESULT_TIMEOUT; // Reset timeout cycle
                 }
             }
             return new VeraPDFValidationResult("Document was not validated in time (" + GET_VALIDATION_RESULT_TIMEOUT + " minutes)");
         } finally {
             // Cleanup validation service, if there is nothing to cleanup VeraPDF service will just ignore this.
-            terminateValidation();
+            terminateValidation(job);
         }
     }
 
@@ -97,36 +135,153 @@ public class VeraPDFValidator implements PDFValidator {
         logger.info("Validation settings have been sent");
     }*/
 
-    private void sendValidationRequest(String filename) throws IOException, ValidationDeadlockException {
-        HttpPost request = new HttpPost(verapdfUrl);
-        request.setEntity(new StringEntity(filename));
+    private void sendValidationRequest(ValidationJob job) throws IOException, ValidationDeadlockException, InterruptedException {
+        long endTime = System.currentTimeMillis() + FREE_SLOT_TIMEOUT;
+        while (true) {
+            HttpPost request = new HttpPost(verapdfUrl + "/jobs");
+            request.setEntity(new StringEntity(job.getFilePath()));
 
-        try (CloseableHttpClient httpClient = new GracefulHttpClient(MAX_CONNECTION_RETRIES, CONNECTION_INTERVAL)) {
-            try (CloseableHttpResponse response = httpClient.execute(request)) {
-                switch (response.getStatusLine().getStatusCode()) {
-                    case HttpStatus.SC_ACCEPTED:
-                        logger.info("Validation request have been sent");
-                        return;
-                    case HttpStatus.SC_LOCKED:
-                        logger.warn("Another validation job is already in progress.");
-                        throw new ValidationDeadlockException(ValidationDeadlockException.VALIDATOR_STATE_LOCKED);
+            try (CloseableHttpClient httpClient = httpClientFactory.getHttpClient(MAX_CONNECTION_RETRIES, CONNECTION_INTERVAL)) {
+                try (CloseableHttpResponse response = httpClient.execute(request)) {
+                    switch (response.getStatusLine().getStatusCode()) {
+                        case HttpStatus.SC_ACCEPTED:
+                            VeraPDFServiceStatus status = mapper.readValue(response.getEntity().getContent(), VeraPDFServiceStatus.class);
+                            registerServiceJob(status.getJobId());
+                            serviceJobIds.put(job.getId(), status.getJobId());
+                            logger.info("Validation request have been sent");
+                            return;
+                        case HttpStatus.SC_LOCKED:
+                            EntityUtils.consume(response.getEntity());
+                            if (System.currentTimeMillis() >= endTime) {
+                                logger.warn("All validation slots are occupied for too long.");
+                                throw new ValidationDeadlockException(ValidationDeadlockException.VALIDATOR_STATE_LOCKED);
+                            }
+                            logger.info("All validation slots are occupied, waiting for a free one");
+                            break;
 
-                    default:
-                        logger.error("Unexpected response " + response.getStatusLine().getStatusCode() + ": "
-                                + EntityUtils.toString(response.getEntity()));
-                        throw new ValidationDeadlockException(ValidationDeadlockException.VALIDATOR_STATE_UNKNOWN);
+                        default:
+                            logger.error("Unexpected response " + response.getStatusLine().getStatusCode() + ": "
+                                    + EntityUtils.toString(response.getEntity()));
+                            throw new ValidationDeadlockException(ValidationDeadlockException.VALIDATOR_STATE_UNKNOWN);
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Fail to post file to VeraPDFValidationService", e);
+                throw e;
+            }
+            Thread.sleep(FREE_SLOT_CHECK_INTERVAL);
+        }
+    }
+
+    private void registerServiceJob(String serviceJobId) {
+        CompletableFuture<VeraPDFServiceStatus> result = new CompletableFuture<>();
+        synchronized (earlyResults) {
+            pushedResults.put(serviceJobId, result);
+            EarlyResult earlyResult = earlyResults.remove(serviceJobId);
+            if (earlyResult != null) {
+                result.complete(earlyResult.status);
+            }
+        }
+    }
+
+    /**
+     * Accepts the result pushed by veraPDF service and wakes up the worker waiting for it.
+     */
+    public void validationFinished(VeraPDFServiceStatus status) {
+        if (status.getJobId() == null) {
+            return;
+        }
+        synchronized (earlyResults) {
+            CompletableFuture<VeraPDFServiceStatus> result = pushedResults.get(status.getJobId());
+            if (result != null) {
+                result.complete(status);
+                return;
+            }
+            // the job may not be registered yet, otherwise it is a late notification of an already terminated job
+            // or a job started by somebody else, which is forgotten after a while
+            long now = System.currentTimeMillis();
+            Iterator<EarlyResult> iterator = earlyResults.values().iterator();
+            while (iterator.hasNext() && now - iterator.next().receiveTime > EARLY_RESULT_LIFETIME) {
+                iterator.remove();
+            }
+            earlyResults.put(status.getJobId(), new EarlyResult(status, now));
+        }
+    }
+
+    @Override
+    public void validateBatch(List<ValidationJob> jobs, BatchResultHandler handler) throws IOException, ValidationDeadlockException {
+        Map<String, ValidationJob> jobsByItemId = new HashMap<>();
+        List<VeraPDFBatchItem> items = new ArrayList<>();
+        for (ValidationJob job : jobs) {
+            // ids of batch items are used as veraPDF service job ids, so the job can be terminated as a single one
+            String itemId = UUID.randomUUID().toString();
+            jobsByItemId.put(itemId, job);
+            items.add(new VeraPDFBatchItem(itemId, job.getFilePath()));
+            serviceJobIds.put(job.getId(), itemId);
+        }
+        logger.info("Sending batch of " + items.size() + " files to validator");
+        HttpPost request = new HttpPost(verapdfUrl + "/batch");
+        request.setEntity(new StringEntity(mapper.writeValueAsString(items), ContentType.APPLICATION_JSON));
+        try (CloseableHttpClient httpClient = httpClientFactory.getHttpClient(MAX_CONNECTION_RETRIES, CONNECTION_INTERVAL)) {
+            try (CloseableHttpResponse response = httpClient.execute(request)) {
+                if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                    logger.error("Unexpected response " + response.getStatusLine().getStatusCode() + ": "
+                            + EntityUtils.toString(response.getEntity()));
+                    throw new ValidationDeadlockException(ValidationDeadlockException.VALIDATOR_STATE_UNKNOWN);
+                }
+                // results come as separate JSON lines in the order in which files are finished
+                BufferedReader reader = new BufferedReader(new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8));
+                String line;
+                while (!jobsByItemId.isEmpty() && (line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    VeraPDFServiceStatus status = mapper.readValue(line, VeraPDFServiceStatus.class);
+                    ValidationJob job = jobsByItemId.remove(status.getJobId());
+                    if (job == null) {
+                        continue;
+                    }
+                    serviceJobIds.remove(job.getId());
+                    if (status.getProcessorStatus() == VeraPDFServiceStatus.ProcessorStatus.FINISHED) {
+                        handler.resultReady(job, status.getValidationResult());
+                    } else {
+                        handler.resultReady(job, new VeraPDFValidationResult("Validation was aborted"));
+                    }
                 }
+                EntityUtils.consume(response.getEntity());
             }
         } catch (IOException e) {
-            logger.error("Fail to post file to VeraPDFValidationService", e);
+            logger.error("Failed to validate batch", e);
             throw e;
+        } finally {
+            for (ValidationJob job : jobsByItemId.values()) {
+                serviceJobIds.remove(job.getId());
+            }
+        }
+    }
+
+    private VeraPDFServiceStatus waitForPushedResult(String serviceJobId) throws InterruptedException {
+        CompletableFuture<VeraPDFServiceStatus> result = pushedResults.get(serviceJobId);
+        if (result == null) {
+            Thread.sleep(GET_VALIDATION_RESULT_CHECK_INTERVAL);
+            return null;
+        }
+        try {
+            return result.get(GET_VALIDATION_RESULT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
         }
     }
 
-    private VeraPDFServiceStatus getValidationStatus() throws IOException {
-        HttpGet request = new HttpGet(verapdfUrl);
-        try (CloseableHttpClient httpClient = new GracefulHttpClient(MAX_CONNECTION_RETRIES, CONNECTION_INTERVAL)) {
+    private VeraPDFServiceStatus getValidationStatus(String serviceJobId) throws IOException {
+        HttpGet request = new HttpGet(verapdfUrl + "/jobs/" + serviceJobId);
+        try (CloseableHttpClient httpClient = httpClientFactory.getHttpClient(MAX_CONNECTION_RETRIES, CONNECTION_INTERVAL)) {
             try (CloseableHttpResponse response = httpClient.execute(request)) {
+                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                    // the job has been lost by veraPDF service, e.g. because of its restart
+                    EntityUtils.consume(response.getEntity());
+                    return new VeraPDFServiceStatus(serviceJobId, VeraPDFServiceStatus.ProcessorStatus.IDLE, null);
+                }
                 return mapper.readValue(response.getEntity().getContent(), VeraPDFServiceStatus.class);
             }
         } catch (IOException e) {
@@ -135,9 +290,18 @@ public class VeraPDFValidator implements PDFValidator {
         }
     }
 
-    public void terminateValidation() throws IOException {
-        HttpDelete request = new HttpDelete(verapdfUrl);
-        try (CloseableHttpClient httpClient = new GracefulHttpClient(MAX_CONNECTION_RETRIES, CONNECTION_INTERVAL)) {
+    public void terminateValidation(ValidationJob job) throws IOException {
+        String serviceJobId = serviceJobIds.remove(job.getId());
+        if (serviceJobId == null) {
+            return;
+        }
+        CompletableFuture<VeraPDFServiceStatus> result = pushedResults.remove(serviceJobId);
+        if (result != null) {
+            // wake up the worker if it is still waiting
+            result.complete(new VeraPDFServiceStatus(serviceJobId, VeraPDFServiceStatus.ProcessorStatus.ABORTED, null));
+        }
+        HttpDelete request = new HttpDelete(verapdfUrl + "/jobs/" + serviceJobId);
+        try (CloseableHttpClient httpClient = httpClientFactory.getHttpClient(MAX_CONNECTION_RETRIES, CONNECTION_INTERVAL)) {
             try (CloseableHttpResponse response = httpClient.execute(request)) {
                 EntityUtils.consume(response.getEntity());
             }
@@ -146,4 +310,14 @@ public class VeraPDFValidator implements PDFValidator {
             throw e;
         }
     }
-}
\ No newline at end of file
+
+    private static class EarlyResult {
+        private final VeraPDFServiceStatus status;
+        private final long receiveTime;
+
+        private EarlyResult(VeraPDFServiceStatus status, long receiveTime) {
+            this.status = status;
+            this.receiveTime = receiveTime;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
 
@@ -34,6 +35,16 @@ public class CrawlJobDAO extends AbstractDAO<CrawlJob> {
         return uniqueResult(criteriaQuery);
     }
 
+    public List<CrawlJob> getByHeritrixJobIds(Collection<String> heritrixJobIds) {
+        CriteriaBuilder builder = currentSession().getCriteriaBuilder();
+        CriteriaQuery<CrawlJob> criteriaQuery = builder.createQuery(CrawlJob.class);
+        Root<CrawlJob> crawlJob = criteriaQuery.from(CrawlJob.class);
+
+        criteriaQuery.where(crawlJob.get(CrawlJob_.heritrixJobId).in(heritrixJobIds));
+
+        return list(criteriaQuery);
+    }
+
     public CrawlJob save(CrawlJob crawlJob) {
         return persist(crawlJob);
     }
@@ -125,6 +136,23 @@ public class CrawlJobDAO extends AbstractDAO<CrawlJob> {
         return currentSession().createQuery(criteriaQuery).setMaxResults(limit).list();
     }
 
+    /**
+     * @param afterDomain last domain of the previous page, or null for the first page
+     * @return domains of all crawl jobs in alphabetical order
+     */
+    public List<String> findDomains(String afterDomain, int limit) {
+        CriteriaBuilder builder = currentSession().getCriteriaBuilder();
+        CriteriaQuery<String> criteriaQuery = builder.createQuery(String.class);
+        Root<CrawlJob> job = criteriaQuery.from(CrawlJob.class);
+        criteriaQuery.select(job.get(CrawlJob_.domain));
+        if (afterDomain != null) {
+            criteriaQuery.where(builder.greaterThan(job.get(CrawlJob_.domain), afterDomain));
+        }
+        criteriaQuery.orderBy(builder.asc(job.get(CrawlJob_.domain)));
+
+        return currentSession().createQuery(criteriaQuery).setMaxResults(limit).list();
+    }
+
     public void remove(CrawlJob crawlJob) {
         currentSession().delete(crawlJob);
         currentSession().flush();
@@ -1,31 +1,74 @@
 package org.verapdf.crawler.db;
 
 import io.dropwizard.hibernate.AbstractDAO;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.NativeQuery;
 import org.hibernate.query.Query;
 import org.verapdf.crawler.api.crawling.CrawlJob_;
 import org.verapdf.crawler.api.document.DomainDocument;
 import org.verapdf.crawler.api.document.DomainDocument_;
+import org.verapdf.crawler.api.report.DocumentCounts;
 import org.verapdf.crawler.api.report.ErrorStatistics;
 import org.verapdf.crawler.api.report.PDFWamErrorStatistics;
 import org.verapdf.crawler.api.report.PdfPropertyStatistics;
+import org.verapdf.crawler.api.validation.error.RuleViolationError;
 import org.verapdf.crawler.api.validation.error.ValidationError;
 import org.verapdf.crawler.core.validation.PDFWamProcessor;
+import org.verapdf.crawler.tools.HashUtils;
 
 import javax.persistence.criteria.*;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class DocumentDAO extends AbstractDAO<DomainDocument> {
 
     private static final int PROPERTY_VALUE_LENGTH = 255;
 
+    private static final String RULE_VIOLATION_TYPE = "RULE_VIOLATION";
+
     public static final String NONE = "None"; // used to indicate that some property should be missing, since null means absence of the filter
 
+    private static final List<String> REPORT_PROPERTIES = Arrays.asList(
+            PdfPropertyStatistics.FLAVOUR_PROPERTY_NAME,
+            PdfPropertyStatistics.VERSION_PROPERTY_NAME,
+            PdfPropertyStatistics.PRODUCER_PROPERTY_NAME
+    );
+
+    private final SessionFactory sessionFactory;
+
     public DocumentDAO(SessionFactory sessionFactory) {
         super(sessionFactory);
+        this.sessionFactory = sessionFactory;
+    }
+
+    public interface DocumentHandler {
+        void handle(DomainDocument document) throws IOException;
+    }
+
+    /**
+     * Receives rows of the tables of documents in the order of document ids.
+     */
+    public interface SnapshotHandler {
+        void document(long id, String url, String type, String status, Date lastModified) throws IOException;
+
+        void property(long documentId, String name, String value) throws IOException;
+
+        void errorLink(long documentId, int errorId) throws IOException;
+
+        void error(int id, String type, String specification, String clause, String testNumber, String description) throws IOException;
     }
 
     @SuppressWarnings("UnusedReturnValue")
@@ -39,9 +82,49 @@ public class DocumentDAO extends AbstractDAO<DomainDocument> {
                 }
             }
         }
+        document.setUrlHash(hashUrl(document.getUrl()));
         return persist(document);
     }
 
+    /**
+     * @return urls from the given ones which belong to saved documents
+     */
+    public Set<String> getExistingUrls(Collection<String> urls) {
+        List<String> hashes = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            hashes.add(hashUrl(url));
+        }
+        CriteriaBuilder builder = currentSession().getCriteriaBuilder();
+        CriteriaQuery<String> criteriaQuery = builder.createQuery(String.class);
+        Root<DomainDocument> document = criteriaQuery.from(DomainDocument.class);
+        criteriaQuery.select(document.get(DomainDocument_.url));
+        criteriaQuery.where(document.get(DomainDocument_.urlHash).in(hashes));
+        return new HashSet<>(currentSession().createQuery(criteriaQuery).getResultList());
+    }
+
+    /**
+     * @return hex SHA-1 of UTF-8 bytes of the url, the same as SHA1() of MySQL for utf8mb4 strings
+     */
+    public static String hashUrl(String url) {
+        return HashUtils.sha1Hex(String.valueOf(url));
+    }
+
+    /**
+     * @return number of statements which Hibernate sends to the database in one JDBC batch
+     */
+    public int getJdbcBatchSize() {
+        SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) currentSession().getSessionFactory();
+        return sessionFactory.getSessionFactoryOptions().getJdbcBatchSize();
+    }
+
+    /**
+     * Sends pending inserts to the database and detaches saved entities, so the session doesn't grow during bulk inserts.
+     */
+    public void flushAndClear() {
+        currentSession().flush();
+        currentSession().clear();
+    }
+
     public Long count(String domain, List<String> documentTypes, DomainDocument.BaseTestResult testResult, Date startDate) {
         CriteriaBuilder builder = currentSession().getCriteriaBuilder();
         CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
@@ -62,51 +145,372 @@ public class DocumentDAO extends AbstractDAO<DomainDocument> {
         return currentSession().createQuery(criteriaQuery).getSingleResult();
     }
 
-    public List<DomainDocument> getDocuments(String domain, List<String> documentTypes, DomainDocument.BaseTestResult testResult, Date startDate, Integer limit) {
+    /**
+     * Counts documents of the domain by type and base test result in one grouped query.
+     *
+     * @param endDate documents modified since this date are not counted, may be null
+     */
+    public DocumentCounts getDocumentCounts(String domain, Date startDate, Date endDate) {
         CriteriaBuilder builder = currentSession().getCriteriaBuilder();
-        CriteriaQuery<DomainDocument> criteriaQuery = builder.createQuery(DomainDocument.class);
+        CriteriaQuery<DocumentCounts.TypeCount> criteriaQuery = builder.createQuery(DocumentCounts.TypeCount.class);
         Root<DomainDocument> document = criteriaQuery.from(DomainDocument.class);
+        criteriaQuery.select(builder.construct(
+                DocumentCounts.TypeCount.class,
+                document.get(DomainDocument_.contentType),
+                document.get(DomainDocument_.baseTestResult),
+                builder.count(document)
+        ));
 
         List<Predicate> restrictions = new ArrayList<>();
         restrictions.add(builder.equal(document.get(DomainDocument_.crawlJob).get(CrawlJob_.domain), domain));
-        restrictions.add(document.get(DomainDocument_.contentType).in(documentTypes));
-        if (testResult != null) {
-            restrictions.add(builder.equal(document.get(DomainDocument_.baseTestResult), testResult));
-        }
         if (startDate != null) {
             restrictions.add(builder.greaterThanOrEqualTo(document.get(DomainDocument_.lastModified), startDate));
         }
+        if (endDate != null) {
+            restrictions.add(builder.lessThan(document.get(DomainDocument_.lastModified), endDate));
+        }
         criteriaQuery.where(builder.and(restrictions.toArray(new Predicate[restrictions.size()])));
 
-        Query<DomainDocument> query = currentSession().createQuery(criteriaQuery);
-        if (limit != null) {
-            query.setMaxResults(limit);
-        }
-        return query.list();
+        criteriaQuery.groupBy(document.get(DomainDocument_.contentType), document.get(DomainDocument_.baseTestResult));
+
+        return new DocumentCounts(currentSession().createQuery(criteriaQuery).list());
     }
 
-    public List<String> getDocumentsUrls(String domain, List<String> documentTypes, DomainDocument.BaseTestResult testResult, Date startDate, Integer limit) {
+    private List<Long> getDocumentsIds(String domain, List<String> documentTypes, DomainDocument.BaseTestResult testResult,
+                                       Date startDate, Long afterId, int limit) {
         CriteriaBuilder builder = currentSession().getCriteriaBuilder();
-        CriteriaQuery<String> criteriaQuery = builder.createQuery(String.class);
+        CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
         Root<DomainDocument> document = criteriaQuery.from(DomainDocument.class);
-        criteriaQuery.select(document.get(DomainDocument_.url));
+        criteriaQuery.select(document.get(DomainDocument_.id));
 
         List<Predicate> restrictions = new ArrayList<>();
         restrictions.add(builder.equal(document.get(DomainDocument_.crawlJob).get(CrawlJob_.domain), domain));
-        restrictions.add(document.get(DomainDocument_.contentType).in(documentTypes));
+        if (documentTypes != null) {
+            restrictions.add(document.get(DomainDocument_.contentType).in(documentTypes));
+        }
         if (testResult != null) {
             restrictions.add(builder.equal(document.get(DomainDocument_.baseTestResult), testResult));
         }
         if (startDate != null) {
             restrictions.add(builder.greaterThanOrEqualTo(document.get(DomainDocument_.lastModified), startDate));
         }
+        if (afterId != null) {
+            restrictions.add(builder.greaterThan(document.get(DomainDocument_.id), afterId));
+        }
         criteriaQuery.where(builder.and(restrictions.toArray(new Predicate[restrictions.size()])));
+        criteriaQuery.orderBy(builder.asc(document.get(DomainDocument_.id)));
 
-        Query<String> query = currentSession().createQuery(criteriaQuery);
-        if (limit != null) {
-            query.setMaxResults(limit);
+        return currentSession().createQuery(criteriaQuery).setMaxResults(limit).list();
+    }
+
+    /**
+     * Pages are taken by id ranges rather than by offsets: the next page starts after the last id of the previous
+     * one, so every page is read by the primary key index however far it is.
+     *
+     * @param afterId id of the last document of the previous page, or null for the first page
+     * @return id of the last document of the page, or null if the page is the last one
+     */
+    public Long getPageEnd(String domain, List<String> documentTypes, DomainDocument.BaseTestResult testResult,
+                           Date startDate, Long afterId, int limit) {
+        List<Long> ids = getDocumentsIds(domain, documentTypes, testResult, startDate, afterId, limit);
+        return ids.size() < limit ? null : ids.get(ids.size() - 1);
+    }
+
+    /**
+     * Splits documents of the domain into chunks of ids for {@link #scrollDocuments}. It is read in its own stateless
+     * session, so it can be called outside of a unit of work.
+     *
+     * @param afterId id of the last document of the previous chunk, or null for the first chunk
+     * @return id of the last document of the chunk, or null if the chunk is the last one
+     */
+    public Long getChunkEnd(String domain, Date startDate, Long afterId, int chunkSize) {
+        StringBuilder sql = new StringBuilder("SELECT id FROM documents WHERE crawl_job_domain = :domain");
+        if (startDate != null) {
+            sql.append(" AND last_modified >= :startDate");
+        }
+        if (afterId != null) {
+            sql.append(" AND id > :afterId");
+        }
+        sql.append(" ORDER BY id");
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            NativeQuery<?> query = session.createNativeQuery(sql.toString())
+                    .setParameter("domain", domain);
+            if (startDate != null) {
+                query.setParameter("startDate", startDate);
+            }
+            if (afterId != null) {
+                query.setParameter("afterId", afterId);
+            }
+            List<?> ids = query.setFirstResult(chunkSize - 1).setMaxResults(1).list();
+            return ids.isEmpty() ? null : ((Number) ids.get(0)).longValue();
+        }
+    }
+
+    /**
+     * Passes documents of the report to the handler in order of urls, as the report lists them.
+     */
+    public void scrollDocuments(String domain, List<String> documentTypes, DomainDocument.BaseTestResult testResult,
+                                Date startDate, DocumentHandler handler) throws IOException {
+        scrollDocuments(domain, documentTypes, testResult, startDate, null, null, REPORT_PROPERTIES, new HashMap<>(),
+                true, handler);
+    }
+
+    /**
+     * Passes documents to the handler one by one, with the given properties and validation errors, in order of ids.
+     * Rows are streamed from the database in a separate stateless session, so any number of documents is processed
+     * in constant memory, and it can be called outside of a unit of work, e.g. while a response is written.
+     *
+     * @param documentTypes types of documents, or null for documents of all types
+     * @param afterId       documents up to this id are skipped, may be null
+     * @param untilId       documents after this id are skipped, may be null
+     */
+    public void scrollDocuments(String domain, List<String> documentTypes, DomainDocument.BaseTestResult testResult,
+                                Date startDate, Long afterId, Long untilId, List<String> propertyNames,
+                                DocumentHandler handler) throws IOException {
+        scrollDocuments(domain, documentTypes, testResult, startDate, afterId, untilId, propertyNames, new HashMap<>(),
+                handler);
+    }
+
+    /**
+     * Same as above, for callers which scroll documents chunk by chunk.
+     *
+     * @param errors errors by ids, which are shared by documents of all chunks; errors met in the chunk are added
+     */
+    public void scrollDocuments(String domain, List<String> documentTypes, DomainDocument.BaseTestResult testResult,
+                                Date startDate, Long afterId, Long untilId, List<String> propertyNames,
+                                Map<Integer, ValidationError> errors, DocumentHandler handler) throws IOException {
+        scrollDocuments(domain, documentTypes, testResult, startDate, afterId, untilId, propertyNames, errors, false,
+                handler);
+    }
+
+    private void scrollDocuments(String domain, List<String> documentTypes, DomainDocument.BaseTestResult testResult,
+                                 Date startDate, Long afterId, Long untilId, List<String> propertyNames,
+                                 Map<Integer, ValidationError> errors, boolean orderByUrl,
+                                 DocumentHandler handler) throws IOException {
+        // every property is joined separately, so there is one row per document and error, which carries the error
+        StringBuilder sql = new StringBuilder("SELECT d.id, d.document_url, d.document_type, d.document_status, d.last_modified");
+        for (int index = 0; index < propertyNames.size(); index++) {
+            // columns of the result must have distinct names
+            sql.append(", p").append(index).append(".property_value AS property").append(index);
+        }
+        sql.append(", v.id AS validation_error_id, v.type AS validation_error_type, v.specification, v.clause,")
+                .append(" v.test_number, v.description FROM documents d");
+        for (int index = 0; index < propertyNames.size(); index++) {
+            sql.append(" LEFT JOIN document_properties p").append(index)
+                    .append(" ON p").append(index).append(".document_id = d.id AND p").append(index)
+                    .append(".property_name = :property").append(index);
+        }
+        sql.append(" LEFT JOIN documents_validation_errors e ON e.document_id = d.id")
+                .append(" LEFT JOIN validation_errors v ON v.id = e.error_id WHERE d.crawl_job_domain = :domain");
+        if (documentTypes != null) {
+            sql.append(" AND d.document_type IN (:types)");
+        }
+        if (testResult != null) {
+            sql.append(" AND d.document_status = :status");
+        }
+        if (startDate != null) {
+            sql.append(" AND d.last_modified >= :startDate");
+        }
+        if (afterId != null) {
+            sql.append(" AND d.id > :afterId");
+        }
+        if (untilId != null) {
+            sql.append(" AND d.id <= :untilId");
+        }
+        // rows of a document stay together in both orders, since urls are unique
+        sql.append(orderByUrl ? " ORDER BY d.document_url, d.id, e.error_id" : " ORDER BY d.id, e.error_id");
+
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                NativeQuery<?> query = session.createNativeQuery(sql.toString())
+                        .setParameter("domain", domain);
+                for (int index = 0; index < propertyNames.size(); index++) {
+                    query.setParameter("property" + index, propertyNames.get(index));
+                }
+                if (documentTypes != null) {
+                    query.setParameterList("types", documentTypes);
+                }
+                if (testResult != null) {
+                    query.setParameter("status", testResult.name());
+                }
+                if (startDate != null) {
+                    query.setParameter("startDate", startDate);
+                }
+                if (afterId != null) {
+                    query.setParameter("afterId", afterId);
+                }
+                if (untilId != null) {
+                    query.setParameter("untilId", untilId);
+                }
+                // makes MySQL driver stream rows instead of reading the whole result
+                query.setFetchSize(Integer.MIN_VALUE);
+                query.setReadOnly(true);
+
+                try (ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY)) {
+                    DomainDocument document = null;
+                    while (results.next()) {
+                        Object[] row = results.get();
+                        Long id = ((Number) row[0]).longValue();
+                        if (document == null || !document.getId().equals(id)) {
+                            if (document != null) {
+                                handler.handle(document);
+                            }
+                            document = new DomainDocument();
+                            document.setId(id);
+                            document.setUrl((String) row[1]);
+                            document.setContentType((String) row[2]);
+                            if (row[3] != null) {
+                                document.setBaseTestResult(DomainDocument.BaseTestResult.valueOf((String) row[3]));
+                            }
+                            document.setLastModified((Date) row[4]);
+                            Map<String, String> properties = new HashMap<>();
+                            for (int index = 0; index < propertyNames.size(); index++) {
+                                putProperty(properties, propertyNames.get(index), row[5 + index]);
+                            }
+                            document.setProperties(properties);
+                            document.setValidationErrors(new ArrayList<>());
+                        }
+                        int errorOffset = 5 + propertyNames.size();
+                        if (row[errorOffset] != null) {
+                            Integer errorId = ((Number) row[errorOffset]).intValue();
+                            // documents with the same error share one instance
+                            ValidationError error = errors.get(errorId);
+                            if (error == null) {
+                                error = toValidationError(errorId, row, errorOffset + 1);
+                                errors.put(errorId, error);
+                            }
+                            document.getValidationErrors().add(error);
+                        }
+                    }
+                    if (document != null) {
+                        handler.handle(document);
+                    }
+                }
+                transaction.commit();
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the error from its type, specification, clause, test number and description, which start at the offset.
+     */
+    private static ValidationError toValidationError(Integer id, Object[] row, int offset) {
+        ValidationError error;
+        if (RULE_VIOLATION_TYPE.equals(row[offset])) {
+            error = new RuleViolationError((String) row[offset + 1], (String) row[offset + 2], (String) row[offset + 3],
+                    (String) row[offset + 4]);
+        } else {
+            error = new ValidationError((String) row[offset + 4]);
+        }
+        error.setId(id);
+        return error;
+    }
+
+    /**
+     * @return value which changes whenever documents of the domain are added, removed or crawled again
+     */
+    public String getDocumentsFingerprint(String domain) {
+        Object[] row = (Object[]) currentSession().createNativeQuery(
+                "SELECT COUNT(*), MAX(id), MAX(last_modified) FROM documents WHERE crawl_job_domain = :domain")
+                .setParameter("domain", domain)
+                .getSingleResult();
+        return row[0] + ":" + row[1] + ":" + (row[2] != null ? ((Date) row[2]).getTime() : null);
+    }
+
+    /**
+     * Passes rows of documents of the chunk, of their properties and of their error links to the handler, table by
+     * table. Like {@link #scrollDocuments}, rows are streamed in a separate stateless session.
+     *
+     * @param afterId documents up to this id are skipped, may be null
+     * @param untilId documents after this id are skipped, may be null
+     */
+    public void scrollSnapshot(String domain, Long afterId, Long untilId, SnapshotHandler handler) throws IOException {
+        StringBuilder restrictions = new StringBuilder(" WHERE d.crawl_job_domain = :domain");
+        if (afterId != null) {
+            restrictions.append(" AND d.id > :afterId");
+        }
+        if (untilId != null) {
+            restrictions.append(" AND d.id <= :untilId");
+        }
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                scrollRows(session, "SELECT d.id, d.document_url, d.document_type, d.document_status, d.last_modified"
+                        + " FROM documents d" + restrictions + " ORDER BY d.id", domain, afterId, untilId,
+                        row -> handler.document(((Number) row[0]).longValue(), (String) row[1], (String) row[2],
+                                (String) row[3], (Date) row[4]));
+                scrollRows(session, "SELECT p.document_id, p.property_name, p.property_value FROM document_properties p"
+                        + " JOIN documents d ON d.id = p.document_id" + restrictions + " ORDER BY p.document_id, p.property_name",
+                        domain, afterId, untilId,
+                        row -> handler.property(((Number) row[0]).longValue(), (String) row[1], (String) row[2]));
+                scrollRows(session, "SELECT e.document_id, e.error_id FROM documents_validation_errors e"
+                        + " JOIN documents d ON d.id = e.document_id" + restrictions + " ORDER BY e.document_id, e.error_id",
+                        domain, afterId, untilId,
+                        row -> handler.errorLink(((Number) row[0]).longValue(), ((Number) row[1]).intValue()));
+                transaction.commit();
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes validation errors of documents of the domain to the handler, in order of their ids.
+     */
+    public void scrollSnapshotErrors(String domain, SnapshotHandler handler) throws IOException {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                scrollRows(session, "SELECT v.id, v.type, v.specification, v.clause, v.test_number, v.description"
+                        + " FROM validation_errors v WHERE EXISTS (SELECT 1 FROM documents_validation_errors e"
+                        + " JOIN documents d ON d.id = e.document_id WHERE e.error_id = v.id AND d.crawl_job_domain = :domain)"
+                        + " ORDER BY v.id", domain, null, null,
+                        row -> handler.error(((Number) row[0]).intValue(), (String) row[1], (String) row[2],
+                                (String) row[3], (String) row[4], (String) row[5]));
+                transaction.commit();
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        }
+    }
+
+    private interface RowHandler {
+        void handle(Object[] row) throws IOException;
+    }
+
+    private static void scrollRows(StatelessSession session, String sql, String domain, Long afterId, Long untilId,
+                                   RowHandler handler) throws IOException {
+        NativeQuery<?> query = session.createNativeQuery(sql)
+                .setParameter("domain", domain);
+        if (afterId != null) {
+            query.setParameter("afterId", afterId);
+        }
+        if (untilId != null) {
+            query.setParameter("untilId", untilId);
+        }
+        // makes MySQL driver stream rows instead of reading the whole result
+        query.setFetchSize(Integer.MIN_VALUE);
+        query.setReadOnly(true);
+        try (ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next()) {
+                handler.handle(results.get());
+            }
+        }
+    }
+
+    private static void putProperty(Map<String, String> properties, String name, Object value) {
+        if (value != null) {
+            properties.put(name, (String) value);
         }
-        return query.list();
     }
 
     public List<String> getDocumentPropertyValues(String propertyName, String domain, String propertyValueFilter, Integer limit) {
@@ -129,10 +533,10 @@ public class DocumentDAO extends AbstractDAO<DomainDocument> {
     }
 
     public List<PdfPropertyStatistics.ValueCount> getPropertyStatistics(String domain, String propertyName, Date startDate) {
-        return getPropertyStatistics(domain, propertyName, startDate, false, null);
+        return getPropertyStatistics(domain, propertyName, startDate, null, false, null);
     }
 
-    public List<PdfPropertyStatistics.ValueCount> getPropertyStatistics(String domain, String propertyName, Date startDate, boolean orderByCount, Integer limit) {
+    public List<PdfPropertyStatistics.ValueCount> getPropertyStatistics(String domain, String propertyName, Date startDate, Date endDate, boolean orderByCount, Integer limit) {
         CriteriaBuilder builder = currentSession().getCriteriaBuilder();
         CriteriaQuery<PdfPropertyStatistics.ValueCount> criteriaQuery = builder.createQuery(PdfPropertyStatistics.ValueCount.class);
         Root<DomainDocument> document = criteriaQuery.from(DomainDocument.class);
@@ -151,6 +555,9 @@ public class DocumentDAO extends AbstractDAO<DomainDocument> {
         if (startDate != null) {
             restrictions.add(builder.greaterThanOrEqualTo(document.get(DomainDocument_.lastModified), startDate));
         }
+        if (endDate != null) {
+            restrictions.add(builder.lessThan(document.get(DomainDocument_.lastModified), endDate));
+        }
         criteriaQuery.where(builder.and(restrictions.toArray(new Predicate[restrictions.size()])));
 
         criteriaQuery.groupBy(properties.value());
@@ -227,6 +634,10 @@ public class DocumentDAO extends AbstractDAO<DomainDocument> {
     }
 
     public List<ErrorStatistics.ErrorCount> getErrorsStatistics(String domain, Date startDate, String flavour, String version, String producer, int limit) {
+        return getErrorsStatistics(domain, startDate, null, flavour, version, producer, limit);
+    }
+
+    public List<ErrorStatistics.ErrorCount> getErrorsStatistics(String domain, Date startDate, Date endDate, String flavour, String version, String producer, Integer limit) {
         CriteriaBuilder builder = currentSession().getCriteriaBuilder();
         CriteriaQuery<ErrorStatistics.ErrorCount> criteriaQuery = builder.createQuery(ErrorStatistics.ErrorCount.class);
 
@@ -251,6 +662,11 @@ public class DocumentDAO extends AbstractDAO<DomainDocument> {
             restrictions.add(builder.greaterThanOrEqualTo(document.get(DomainDocument_.lastModified), startDate));
         }
 
+        if (endDate != null) {
+            // AND document.lastModified < endDate
+            restrictions.add(builder.lessThan(document.get(DomainDocument_.lastModified), endDate));
+        }
+
         if (flavour != null) {
             // AND document.properties['flavour'] = <flavour>
             MapJoin<DomainDocument, String, String> flavourProperty = document.join(DomainDocument_.properties, JoinType.LEFT);
@@ -288,6 +704,10 @@ public class DocumentDAO extends AbstractDAO<DomainDocument> {
         // ORDER BY documentCount DESC
         criteriaQuery.orderBy(builder.desc(documentCount));
 
-        return currentSession().createQuery(criteriaQuery).setMaxResults(limit).list();
+        Query<ErrorStatistics.ErrorCount> query = currentSession().createQuery(criteriaQuery);
+        if (limit != null) {
+            query.setMaxResults(limit);
+        }
+        return query.list();
     }
 }
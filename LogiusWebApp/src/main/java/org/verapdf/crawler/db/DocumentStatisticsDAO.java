@@ -0,0 +1,357 @@
+package org.verapdf.crawler.db;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+import org.verapdf.crawler.api.document.DomainDocument;
+import org.verapdf.crawler.api.report.DocumentCounts;
+import org.verapdf.crawler.api.report.PdfPropertyStatistics;
+import org.verapdf.crawler.api.validation.error.ValidationError;
+import org.verapdf.crawler.tools.HashUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Per-domain rollups of document counts, bucketed by month of the document last modified date, which let report
+ * statistics be summed over a few rows instead of counting all documents of the domain.
+ * <p>
+ * Rollups are updated in the same transaction as documents: counts of a new document are added when it is saved,
+ * and when validation results are saved, counts of the document as it has been stored before are subtracted and
+ * counts of its new state are added. Missing values are stored as empty strings and missing month as 0, so the
+ * unique key on the hash of all dimensions matches them.
+ */
+public class DocumentStatisticsDAO {
+
+    private static final String DOCUMENT_DIMENSIONS_HASH =
+            "SHA1(CONVERT(CONCAT_WS(CHAR(31), %s, %s, %s, %s, %s, %s, %s) USING utf8mb4))";
+    private static final String ERROR_DIMENSIONS_HASH =
+            "SHA1(CONVERT(CONCAT_WS(CHAR(31), %s, %s, %s, %s, %s, %s) USING utf8mb4))";
+
+    private static final String ADD_DOCUMENTS = "INSERT INTO document_statistics " +
+            "(dimensions_hash, crawl_job_domain, month, document_type, document_status, flavour, version, producer, document_count) " +
+            "VALUES (" + String.format(DOCUMENT_DIMENSIONS_HASH,
+            ":domain", ":month", ":type", ":status", ":flavour", ":version", ":producer") + ", " +
+            ":domain, :month, :type, :status, :flavour, :version, :producer, :delta) " +
+            "ON DUPLICATE KEY UPDATE document_count = document_count + VALUES(document_count)";
+
+    private static final String ADD_ERRORS = "INSERT INTO document_error_statistics " +
+            "(dimensions_hash, crawl_job_domain, month, flavour, version, producer, error_id, document_count) " +
+            "VALUES (" + String.format(ERROR_DIMENSIONS_HASH,
+            ":domain", ":month", ":flavour", ":version", ":producer", ":errorId") + ", " +
+            ":domain, :month, :flavour, :version, :producer, :errorId, :delta) " +
+            "ON DUPLICATE KEY UPDATE document_count = document_count + VALUES(document_count)";
+
+    private static final String STORED_DOCUMENT = "SELECT d.crawl_job_domain AS domain, " +
+            "IFNULL(EXTRACT(YEAR_MONTH FROM d.last_modified), 0) AS month, " +
+            "IFNULL(d.document_type, '') AS type, IFNULL(d.document_status, '') AS status, " +
+            "IFNULL(f.property_value, '') AS flavour, IFNULL(v.property_value, '') AS version, " +
+            "IFNULL(p.property_value, '') AS producer, d.id AS document_id " +
+            "FROM documents d " +
+            "LEFT JOIN document_properties f ON f.document_id = d.id AND f.property_name = :flavourProperty " +
+            "LEFT JOIN document_properties v ON v.document_id = d.id AND v.property_name = :versionProperty " +
+            "LEFT JOIN document_properties p ON p.document_id = d.id AND p.property_name = :producerProperty " +
+            "WHERE d.id = :documentId";
+
+    private static final String SUBTRACT_DOCUMENT = "INSERT INTO document_statistics " +
+            "(dimensions_hash, crawl_job_domain, month, document_type, document_status, flavour, version, producer, document_count) " +
+            "SELECT " + String.format(DOCUMENT_DIMENSIONS_HASH,
+            "s.domain", "s.month", "s.type", "s.status", "s.flavour", "s.version", "s.producer") + ", " +
+            "s.domain, s.month, s.type, s.status, s.flavour, s.version, s.producer, -1 " +
+            "FROM (" + STORED_DOCUMENT + ") s " +
+            "ON DUPLICATE KEY UPDATE document_count = document_count + VALUES(document_count)";
+
+    private static final String SUBTRACT_ERRORS = "INSERT INTO document_error_statistics " +
+            "(dimensions_hash, crawl_job_domain, month, flavour, version, producer, error_id, document_count) " +
+            "SELECT " + String.format(ERROR_DIMENSIONS_HASH,
+            "s.domain", "s.month", "s.flavour", "s.version", "s.producer", "e.error_id") + ", " +
+            "s.domain, s.month, s.flavour, s.version, s.producer, e.error_id, -1 " +
+            "FROM (" + STORED_DOCUMENT + ") s " +
+            "JOIN documents_validation_errors e ON e.document_id = s.document_id " +
+            "ON DUPLICATE KEY UPDATE document_count = document_count + VALUES(document_count)";
+
+    private final SessionFactory sessionFactory;
+
+    public DocumentStatisticsDAO(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    private Session currentSession() {
+        return sessionFactory.getCurrentSession();
+    }
+
+    /**
+     * Adds counts of the given documents in their current state.
+     */
+    public void addDocuments(Collection<DomainDocument> documents) {
+        Map<DocumentDimensions, Long> documentCounts = new LinkedHashMap<>();
+        Map<ErrorDimensions, Long> errorCounts = new LinkedHashMap<>();
+        for (DomainDocument document : documents) {
+            DocumentDimensions dimensions = new DocumentDimensions(document);
+            documentCounts.merge(dimensions, 1L, Long::sum);
+            List<ValidationError> errors = document.getValidationErrors();
+            if (errors != null) {
+                for (ValidationError error : errors) {
+                    errorCounts.merge(new ErrorDimensions(dimensions, error.getId()), 1L, Long::sum);
+                }
+            }
+        }
+        for (Map.Entry<DocumentDimensions, Long> entry : documentCounts.entrySet()) {
+            DocumentDimensions dimensions = entry.getKey();
+            currentSession().createNativeQuery(ADD_DOCUMENTS)
+                    .setParameter("domain", dimensions.domain)
+                    .setParameter("month", dimensions.month)
+                    .setParameter("type", dimensions.type)
+                    .setParameter("status", dimensions.status)
+                    .setParameter("flavour", dimensions.flavour)
+                    .setParameter("version", dimensions.version)
+                    .setParameter("producer", dimensions.producer)
+                    .setParameter("delta", entry.getValue())
+                    .executeUpdate();
+        }
+        for (Map.Entry<ErrorDimensions, Long> entry : errorCounts.entrySet()) {
+            ErrorDimensions dimensions = entry.getKey();
+            currentSession().createNativeQuery(ADD_ERRORS)
+                    .setParameter("domain", dimensions.document.domain)
+                    .setParameter("month", dimensions.document.month)
+                    .setParameter("flavour", dimensions.document.flavour)
+                    .setParameter("version", dimensions.document.version)
+                    .setParameter("producer", dimensions.document.producer)
+                    .setParameter("errorId", dimensions.errorId)
+                    .setParameter("delta", entry.getValue())
+                    .executeUpdate();
+        }
+    }
+
+    /**
+     * Subtracts counts of the document as it is stored in the database. Must be called before the document
+     * changes are flushed.
+     */
+    public void subtractStoredDocument(Long documentId) {
+        setStoredDocumentParameters(currentSession().createNativeQuery(SUBTRACT_ERRORS), documentId).executeUpdate();
+        setStoredDocumentParameters(currentSession().createNativeQuery(SUBTRACT_DOCUMENT), documentId).executeUpdate();
+    }
+
+    private static NativeQuery<?> setStoredDocumentParameters(NativeQuery<?> query, Long documentId) {
+        return query.setParameter("documentId", documentId)
+                .setParameter("flavourProperty", PdfPropertyStatistics.FLAVOUR_PROPERTY_NAME)
+                .setParameter("versionProperty", PdfPropertyStatistics.VERSION_PROPERTY_NAME)
+                .setParameter("producerProperty", PdfPropertyStatistics.PRODUCER_PROPERTY_NAME);
+    }
+
+    /**
+     * @param fromMonth first month to count in yyyyMM format, or null to count all documents
+     */
+    public DocumentCounts getDocumentCounts(String domain, Integer fromMonth) {
+        StringBuilder sql = new StringBuilder("SELECT document_type, document_status, SUM(document_count) " +
+                "FROM document_statistics WHERE crawl_job_domain = :domain");
+        appendMonthRestriction(sql, fromMonth);
+        sql.append(" GROUP BY document_type, document_status");
+        NativeQuery<?> query = currentSession().createNativeQuery(sql.toString())
+                .setParameter("domain", domain);
+        setMonthParameter(query, fromMonth);
+        List<DocumentCounts.TypeCount> counts = new ArrayList<>();
+        for (Object row : query.getResultList()) {
+            Object[] values = (Object[]) row;
+            String status = (String) values[1];
+            counts.add(new DocumentCounts.TypeCount((String) values[0],
+                    status.isEmpty() ? null : DomainDocument.BaseTestResult.valueOf(status),
+                    ((Number) values[2]).longValue()));
+        }
+        return new DocumentCounts(counts);
+    }
+
+    /**
+     * @return number of documents by value of the property, in order of decreasing count
+     */
+    public Map<String, Long> getPropertyStatistics(String domain, String propertyName, Integer fromMonth) {
+        String column = getPropertyColumn(propertyName);
+        StringBuilder sql = new StringBuilder("SELECT " + column + ", SUM(document_count) AS documents " +
+                "FROM document_statistics WHERE crawl_job_domain = :domain AND " + column + " <> ''");
+        appendMonthRestriction(sql, fromMonth);
+        sql.append(" GROUP BY ").append(column).append(" HAVING documents > 0 ORDER BY documents DESC");
+        NativeQuery<?> query = currentSession().createNativeQuery(sql.toString())
+                .setParameter("domain", domain);
+        setMonthParameter(query, fromMonth);
+        Map<String, Long> res = new LinkedHashMap<>();
+        for (Object row : query.getResultList()) {
+            Object[] values = (Object[]) row;
+            res.put((String) values[0], ((Number) values[1]).longValue());
+        }
+        return res;
+    }
+
+    /**
+     * @return number of documents by error id, in order of decreasing count
+     */
+    public Map<Integer, Long> getErrorsStatistics(String domain, Integer fromMonth, String flavour, String version, String producer) {
+        StringBuilder sql = new StringBuilder("SELECT error_id, SUM(document_count) AS documents " +
+                "FROM document_error_statistics WHERE crawl_job_domain = :domain");
+        appendMonthRestriction(sql, fromMonth);
+        if (flavour != null) {
+            sql.append(" AND flavour = :flavour");
+        }
+        if (version != null) {
+            sql.append(" AND version = :version");
+        }
+        if (producer != null) {
+            sql.append(" AND producer LIKE :producer");
+        }
+        sql.append(" GROUP BY error_id HAVING documents > 0 ORDER BY documents DESC");
+        NativeQuery<?> query = currentSession().createNativeQuery(sql.toString())
+                .setParameter("domain", domain);
+        setMonthParameter(query, fromMonth);
+        if (flavour != null) {
+            query.setParameter("flavour", DocumentDAO.NONE.equals(flavour) ? "" : flavour);
+        }
+        if (version != null) {
+            query.setParameter("version", version);
+        }
+        if (producer != null) {
+            query.setParameter("producer", "%" + producer + "%");
+        }
+        Map<Integer, Long> res = new LinkedHashMap<>();
+        for (Object row : query.getResultList()) {
+            Object[] values = (Object[]) row;
+            res.put(((Number) values[0]).intValue(), ((Number) values[1]).longValue());
+        }
+        return res;
+    }
+
+    /**
+     * Version of the domain data, which is the hex SHA-1 of all rollups of the domain. Every saved or validated
+     * document changes some rollup count, so the version changes together with the documents.
+     */
+    public String getDataVersion(String domain) {
+        MessageDigest digest = HashUtils.newSha1Digest();
+        for (String table : new String[]{"document_statistics", "document_error_statistics"}) {
+            List<?> rows = currentSession().createNativeQuery("SELECT dimensions_hash, document_count FROM " + table +
+                    " WHERE crawl_job_domain = :domain AND document_count <> 0 ORDER BY dimensions_hash")
+                    .setParameter("domain", domain)
+                    .getResultList();
+            for (Object row : rows) {
+                Object[] values = (Object[]) row;
+                digest.update((values[0] + ":" + values[1] + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+        }
+        return HashUtils.toHex(digest.digest());
+    }
+
+    private static void appendMonthRestriction(StringBuilder sql, Integer fromMonth) {
+        if (fromMonth != null) {
+            sql.append(" AND month >= :fromMonth");
+        }
+    }
+
+    private static void setMonthParameter(NativeQuery<?> query, Integer fromMonth) {
+        if (fromMonth != null) {
+            query.setParameter("fromMonth", fromMonth);
+        }
+    }
+
+    private static String getPropertyColumn(String propertyName) {
+        switch (propertyName) {
+            case PdfPropertyStatistics.FLAVOUR_PROPERTY_NAME:
+                return "flavour";
+            case PdfPropertyStatistics.VERSION_PROPERTY_NAME:
+                return "version";
+            case PdfPropertyStatistics.PRODUCER_PROPERTY_NAME:
+                return "producer";
+            default:
+                throw new IllegalArgumentException("No statistics for property " + propertyName);
+        }
+    }
+
+    /**
+     * @return month of the date in yyyyMM format, the same as EXTRACT(YEAR_MONTH) of MySQL, or 0 for null date
+     */
+    public static int getMonth(Date date) {
+        if (date == null) {
+            return 0;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        return calendar.get(Calendar.YEAR) * 100 + calendar.get(Calendar.MONTH) + 1;
+    }
+
+    private static String getProperty(Map<String, String> properties, String name) {
+        String value = properties == null ? null : properties.get(name);
+        return value == null ? "" : value;
+    }
+
+    private static class DocumentDimensions {
+        private final String domain;
+        private final int month;
+        private final String type;
+        private final String status;
+        private final String flavour;
+        private final String version;
+        private final String producer;
+
+        private DocumentDimensions(DomainDocument document) {
+            this.domain = document.getCrawlJob().getDomain();
+            this.month = getMonth(document.getLastModified());
+            this.type = document.getContentType() == null ? "" : document.getContentType();
+            this.status = document.getBaseTestResult() == null ? "" : document.getBaseTestResult().name();
+            Map<String, String> properties = document.getProperties();
+            this.flavour = getProperty(properties, PdfPropertyStatistics.FLAVOUR_PROPERTY_NAME);
+            this.version = getProperty(properties, PdfPropertyStatistics.VERSION_PROPERTY_NAME);
+            this.producer = getProperty(properties, PdfPropertyStatistics.PRODUCER_PROPERTY_NAME);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            DocumentDimensions that = (DocumentDimensions) o;
+            return month == that.month && domain.equals(that.domain) && type.equals(that.type)
+                    && status.equals(that.status) && flavour.equals(that.flavour)
+                    && version.equals(that.version) && producer.equals(that.producer);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(domain, month, type, status, flavour, version, producer);
+        }
+    }
+
+    private static class ErrorDimensions {
+        private final DocumentDimensions document;
+        private final Integer errorId;
+
+        private ErrorDimensions(DocumentDimensions document, Integer errorId) {
+            this.document = document;
+            this.errorId = errorId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ErrorDimensions that = (ErrorDimensions) o;
+            return document.equals(that.document) && errorId.equals(that.errorId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(document, errorId);
+        }
+    }
+}
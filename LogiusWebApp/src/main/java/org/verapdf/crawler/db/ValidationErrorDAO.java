@@ -1,70 +1,163 @@
 package org.verapdf.crawler.db;
 
 import io.dropwizard.hibernate.AbstractDAO;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.verapdf.crawler.api.validation.error.*;
+import org.verapdf.crawler.tools.HashUtils;
 
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Path;
-import javax.persistence.criteria.Root;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Validation errors are shared by all documents, and there are only a few hundreds of distinct ones, so ids of
+ * saved errors are cached by rule or by description hash. The cache is warmed at startup, and on a miss the error
+ * is inserted or, if it has been inserted concurrently, selected. Rule violations are unique by rule, and generic
+ * errors are unique by the hash of the description.
+ */
 public class ValidationErrorDAO extends AbstractDAO<ValidationError> {
 
+    private static final Logger logger = LoggerFactory.getLogger(ValidationErrorDAO.class);
+
     private static final int MAX_DESCRIPTION_LENGTH = 2048;
+    private static final int MAX_CACHE_SIZE = 10000;
+
+    private final SessionFactory sessionFactory;
+    private final Map<String, Integer> errorIds = new ConcurrentHashMap<>();
 
     public ValidationErrorDAO(SessionFactory sessionFactory) {
         super(sessionFactory);
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Loads ids of all saved errors into the cache. Called at startup outside of a unit of work.
+     */
+    public void warmCache() {
+        try (Session session = sessionFactory.openSession()) {
+            CriteriaBuilder builder = session.getCriteriaBuilder();
+            CriteriaQuery<ValidationError> criteriaQuery = builder.createQuery(ValidationError.class);
+            criteriaQuery.from(ValidationError.class);
+            List<ValidationError> errors = session.createQuery(criteriaQuery).setMaxResults(MAX_CACHE_SIZE).getResultList();
+            for (ValidationError error : errors) {
+                cache(getCacheKey(error), error.getId());
+            }
+            logger.info("Cached ids of " + errorIds.size() + " validation errors");
+        }
+    }
+
+    public ValidationError getById(Integer id) {
+        return get(id);
     }
 
+    /**
+     * @return reference to the saved error, which is equal to the given one
+     */
     public ValidationError save(ValidationError error) {
         String description = error.getDescription();
         if (description.length() > MAX_DESCRIPTION_LENGTH) {
             error.setDescription(description.substring(0, MAX_DESCRIPTION_LENGTH));
         }
-        if (error instanceof RuleViolationError) {
-            return save((RuleViolationError) error);
-        } else {
-            return saveGeneric(error);
+        if (!(error instanceof RuleViolationError)) {
+            error.setDescriptionHash(hashDescription(error.getDescription()));
+        }
+        String key = getCacheKey(error);
+        Integer id = errorIds.get(key);
+        if (id == null) {
+            if (error instanceof RuleViolationError) {
+                id = save((RuleViolationError) error, key);
+            } else {
+                id = saveGeneric(error, key);
+            }
         }
+        return currentSession().load(ValidationError.class, id);
     }
 
-    private ValidationError save(RuleViolationError error) {
-        RuleViolationError existingError = findRuleErrorByRule(error.getRule());
-        if (existingError != null) {
-            return existingError;
+    private Integer save(RuleViolationError error, String key) {
+        Rule rule = error.getRule();
+        // unique key on the rule makes concurrent inserts of the same error return id of the existing row
+        currentSession().createNativeQuery(
+                "INSERT INTO validation_errors (type, specification, clause, test_number, description) " +
+                        "VALUES ('RULE_VIOLATION', :specification, :clause, :testNumber, :description) " +
+                        "ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id)")
+                .setParameter("specification", rule.getSpecification())
+                .setParameter("clause", rule.getClause())
+                .setParameter("testNumber", rule.getTestNumber())
+                .setParameter("description", error.getDescription())
+                .executeUpdate();
+        Integer id = getLastInsertId();
+        cacheOnCommit(key, id);
+        return id;
+    }
+
+    private Integer saveGeneric(ValidationError error, String key) {
+        // unique key on the description hash does the same for generic errors
+        currentSession().createNativeQuery(
+                "INSERT INTO validation_errors (type, description, description_hash) " +
+                        "VALUES ('GENERIC', :description, :descriptionHash) " +
+                        "ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id)")
+                .setParameter("description", error.getDescription())
+                .setParameter("descriptionHash", error.getDescriptionHash())
+                .executeUpdate();
+        Integer id = getLastInsertId();
+        cacheOnCommit(key, id);
+        return id;
+    }
+
+    private Integer getLastInsertId() {
+        return ((Number) currentSession().createNativeQuery("SELECT LAST_INSERT_ID()").getSingleResult()).intValue();
+    }
+
+    /**
+     * Inserted row doesn't exist for other transactions until the current one is committed, and it's gone
+     * if the current one is rolled back, so its id is cached only after the commit.
+     */
+    private void cacheOnCommit(String key, Integer id) {
+        Transaction transaction = currentSession().getTransaction();
+        if (transaction == null || !transaction.isActive()) {
+            return;
         }
-        return persist(error);
+        transaction.registerSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    cache(key, id);
+                }
+            }
+        });
     }
 
-    private ValidationError saveGeneric(ValidationError error) {
-        ValidationError existingError = findErrorByDescription(error.getDescription());
-        if (existingError != null) {
-            return existingError;
+    private void cache(String key, Integer id) {
+        if (errorIds.size() < MAX_CACHE_SIZE) {
+            errorIds.put(key, id);
         }
-        return persist(error);
     }
 
-    private ValidationError findErrorByDescription(String description) {
-        CriteriaBuilder builder = currentSession().getCriteriaBuilder();
-        CriteriaQuery<ValidationError> criteriaQuery = builder.createQuery(ValidationError.class);
-        Root<ValidationError> error = criteriaQuery.from(ValidationError.class);
-        criteriaQuery.where(
-                builder.equal(error.get(ValidationError_.description), description)
-        );
-        return uniqueResult(criteriaQuery);
+    private static String getCacheKey(ValidationError error) {
+        if (error instanceof RuleViolationError && ((RuleViolationError) error).getRule() != null) {
+            Rule rule = ((RuleViolationError) error).getRule();
+            return "rule:" + rule.getSpecification() + '\u0000' + rule.getClause() + '\u0000' + rule.getTestNumber();
+        }
+        String hash = error.getDescriptionHash();
+        return "description:" + (hash != null ? hash : hashDescription(error.getDescription()));
     }
 
-    private RuleViolationError findRuleErrorByRule(Rule rule) {
-        CriteriaBuilder builder = currentSession().getCriteriaBuilder();
-        CriteriaQuery<RuleViolationError> criteriaQuery = builder.createQuery(RuleViolationError.class);
-        Root<RuleViolationError> error = criteriaQuery.from(RuleViolationError.class);
-        Path<Rule> rulePath = error.get(RuleViolationError_.rule);
-        criteriaQuery.where(builder.and(
-                builder.equal(rulePath.get(Rule_.specification), rule.getSpecification()),
-                builder.equal(rulePath.get(Rule_.clause), rule.getClause()),
-                builder.equal(rulePath.get(Rule_.testNumber), rule.getTestNumber())
-        ));
-        return currentSession().createQuery(criteriaQuery).uniqueResult();
+    /**
+     * @return hex SHA-1 of UTF-8 bytes of the description, the same as SHA1() of MySQL for utf8mb4 strings
+     */
+    static String hashDescription(String description) {
+        return HashUtils.sha1Hex(String.valueOf(description));
     }
 }
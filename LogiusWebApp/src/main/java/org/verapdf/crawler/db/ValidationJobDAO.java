@@ -10,9 +10,20 @@ import org.verapdf.crawler.api.validation.ValidationJob;
 import org.verapdf.crawler.api.validation.ValidationJob_;
 
 import javax.persistence.criteria.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class ValidationJobDAO extends AbstractDAO<ValidationJob> {
+
+    private static final Pattern SERVER_VERSION = Pattern.compile("(\\d+)\\.(\\d+)");
+
+    // SKIP LOCKED requires MySQL 8.0 or MariaDB 10.6, detected on the first claim
+    private volatile Boolean skipLockedSupported;
+
     public ValidationJobDAO(SessionFactory sessionFactory) {
         super(sessionFactory);
     }
@@ -21,23 +32,122 @@ public class ValidationJobDAO extends AbstractDAO<ValidationJob> {
         return persist(validationJob);
     }
 
-    public ValidationJob next() {
-        return getValidationJobWithStatus(ValidationJob.Status.NOT_STARTED);
+    /**
+     * Leases up to limit not started jobs to the given owner. Rows locked by concurrent claims are skipped,
+     * so the same job is never handed out twice. Servers without SKIP LOCKED wait for concurrent claims instead,
+     * and then see their jobs as already leased.
+     */
+    public List<ValidationJob> claim(String owner, int limit, Date leaseExpires) {
+        String lock = isSkipLockedSupported() ? "FOR UPDATE SKIP LOCKED" : "FOR UPDATE";
+        List<?> rows = currentSession().createNativeQuery(
+                "SELECT document_id FROM pdf_validation_jobs_queue WHERE validation_status = :status " +
+                        "LIMIT :limit " + lock)
+                .setParameter("status", ValidationJob.Status.NOT_STARTED.name())
+                .setParameter("limit", limit)
+                .getResultList();
+        if (rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            ids.add(((Number) row).longValue());
+        }
+
+        CriteriaBuilder builder = currentSession().getCriteriaBuilder();
+        CriteriaUpdate<ValidationJob> criteriaUpdate = builder.createCriteriaUpdate(ValidationJob.class);
+        Root<ValidationJob> updateRoot = criteriaUpdate.from(ValidationJob.class);
+        criteriaUpdate.set(updateRoot.get(ValidationJob_.status), ValidationJob.Status.IN_PROGRESS);
+        criteriaUpdate.set(updateRoot.get(ValidationJob_.leaseOwner), owner);
+        criteriaUpdate.set(updateRoot.get(ValidationJob_.leaseExpires), leaseExpires);
+        criteriaUpdate.where(updateRoot.get(ValidationJob_.id).in(ids));
+        currentSession().createQuery(criteriaUpdate).executeUpdate();
+
+        CriteriaQuery<ValidationJob> criteriaQuery = builder.createQuery(ValidationJob.class);
+        Root<ValidationJob> jobRoot = criteriaQuery.from(ValidationJob.class);
+        criteriaQuery.where(jobRoot.get(ValidationJob_.id).in(ids));
+        return list(currentSession().createQuery(criteriaQuery));
     }
 
-    public ValidationJob current() {
-        return getValidationJobWithStatus(ValidationJob.Status.IN_PROGRESS);
+    private boolean isSkipLockedSupported() {
+        if (skipLockedSupported == null) {
+            String version = (String) currentSession().createNativeQuery("SELECT VERSION()").getSingleResult();
+            skipLockedSupported = supportsSkipLocked(version);
+        }
+        return skipLockedSupported;
     }
 
-    private ValidationJob getValidationJobWithStatus(ValidationJob.Status status) {
+    static boolean supportsSkipLocked(String serverVersion) {
+        boolean mariaDB = serverVersion.contains("MariaDB");
+        if (mariaDB && serverVersion.startsWith("5.5.5-")) {
+            // replication prefix of MariaDB versions for old MySQL clients
+            serverVersion = serverVersion.substring("5.5.5-".length());
+        }
+        Matcher matcher = SERVER_VERSION.matcher(serverVersion);
+        if (!matcher.find()) {
+            return false;
+        }
+        int major = Integer.parseInt(matcher.group(1));
+        int minor = Integer.parseInt(matcher.group(2));
+        if (mariaDB) {
+            return major > 10 || (major == 10 && minor >= 6);
+        }
+        return major >= 8;
+    }
+
+    /**
+     * Prolongs leases of all jobs which are being validated by the given owner.
+     */
+    public void extendLeases(String owner, Date leaseExpires) {
         CriteriaBuilder builder = currentSession().getCriteriaBuilder();
-        CriteriaQuery<ValidationJob> criteriaQuery = builder.createQuery(ValidationJob.class);
-        Root<ValidationJob> jobRoot = criteriaQuery.from(ValidationJob.class);
-        criteriaQuery.where(builder.and(
-                builder.equal(jobRoot.get(ValidationJob_.status), status),
-                builder.isNotNull(jobRoot.get(ValidationJob_.document).get(DomainDocument_.url))
+        CriteriaUpdate<ValidationJob> criteriaUpdate = builder.createCriteriaUpdate(ValidationJob.class);
+        Root<ValidationJob> jobRoot = criteriaUpdate.from(ValidationJob.class);
+        criteriaUpdate.set(jobRoot.get(ValidationJob_.leaseExpires), leaseExpires);
+        criteriaUpdate.where(builder.and(
+                builder.equal(jobRoot.get(ValidationJob_.status), ValidationJob.Status.IN_PROGRESS),
+                builder.equal(jobRoot.get(ValidationJob_.leaseOwner), owner)
+        ));
+        currentSession().createQuery(criteriaUpdate).executeUpdate();
+    }
+
+    /**
+     * Returns jobs of the given owner to the queue, e.g. after restart of the owner.
+     */
+    public int releaseLeases(String owner) {
+        CriteriaBuilder builder = currentSession().getCriteriaBuilder();
+        CriteriaUpdate<ValidationJob> criteriaUpdate = createReleaseUpdate(builder);
+        Root<ValidationJob> jobRoot = criteriaUpdate.getRoot();
+        criteriaUpdate.where(builder.and(
+                builder.equal(jobRoot.get(ValidationJob_.status), ValidationJob.Status.IN_PROGRESS),
+                builder.equal(jobRoot.get(ValidationJob_.leaseOwner), owner)
         ));
-        return currentSession().createQuery(criteriaQuery).setMaxResults(1).uniqueResult();
+        return currentSession().createQuery(criteriaUpdate).executeUpdate();
+    }
+
+    /**
+     * Returns jobs whose leases have not been prolonged in time to the queue.
+     */
+    public int releaseExpiredLeases(Date now) {
+        CriteriaBuilder builder = currentSession().getCriteriaBuilder();
+        CriteriaUpdate<ValidationJob> criteriaUpdate = createReleaseUpdate(builder);
+        Root<ValidationJob> jobRoot = criteriaUpdate.getRoot();
+        Path<Date> leaseExpires = jobRoot.get(ValidationJob_.leaseExpires);
+        criteriaUpdate.where(builder.and(
+                builder.equal(jobRoot.get(ValidationJob_.status), ValidationJob.Status.IN_PROGRESS),
+                builder.or(
+                        builder.isNull(leaseExpires),
+                        builder.lessThan(leaseExpires, now)
+                )
+        ));
+        return currentSession().createQuery(criteriaUpdate).executeUpdate();
+    }
+
+    private CriteriaUpdate<ValidationJob> createReleaseUpdate(CriteriaBuilder builder) {
+        CriteriaUpdate<ValidationJob> criteriaUpdate = builder.createCriteriaUpdate(ValidationJob.class);
+        Root<ValidationJob> jobRoot = criteriaUpdate.from(ValidationJob.class);
+        criteriaUpdate.set(jobRoot.get(ValidationJob_.status), ValidationJob.Status.NOT_STARTED);
+        criteriaUpdate.set(jobRoot.get(ValidationJob_.leaseOwner), builder.nullLiteral(String.class));
+        criteriaUpdate.set(jobRoot.get(ValidationJob_.leaseExpires), builder.nullLiteral(Date.class));
+        return criteriaUpdate;
     }
 
     public void remove(ValidationJob validationJob) {
@@ -71,7 +181,7 @@ public class ValidationJobDAO extends AbstractDAO<ValidationJob> {
         Root<ValidationJob> job = criteriaQuery.from(ValidationJob.class);
         criteriaQuery.select(builder.construct(
                 ValidationJob.class,
-                job.get(ValidationJob_.id),
+                job.get(ValidationJob_.document).get(DomainDocument_.url),
                 job.get(ValidationJob_.status)
         ));
         if (domain != null) {
@@ -95,9 +205,9 @@ public class ValidationJobDAO extends AbstractDAO<ValidationJob> {
         CriteriaUpdate<ValidationJob> criteriaUpdate = builder.createCriteriaUpdate(ValidationJob.class);
         Root<ValidationJob> jobRoot = criteriaUpdate.from(ValidationJob.class);
 
-        Subquery<String> subquery = criteriaUpdate.subquery(String.class);
+        Subquery<Long> subquery = criteriaUpdate.subquery(Long.class);
         Root<DomainDocument> subqueryRoot = subquery.from(DomainDocument.class);
-        subquery.select(subqueryRoot.get(DomainDocument_.url));
+        subquery.select(subqueryRoot.get(DomainDocument_.id));
         subquery.where(
                 builder.equal(subqueryRoot.get(DomainDocument_.crawlJob).get(CrawlJob_.domain), domain)
         );
@@ -1,28 +1,39 @@
 package org.verapdf.crawler.resources;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import io.dropwizard.hibernate.UnitOfWork;
 import io.dropwizard.jersey.params.IntParam;
+import io.dropwizard.jersey.params.LongParam;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.verapdf.crawler.ResourceManager;
 import org.verapdf.crawler.api.crawling.CrawlRequest;
+import org.verapdf.crawler.api.document.DomainDocument;
 import org.verapdf.crawler.api.monitoring.CrawlJobStatus;
 import org.verapdf.crawler.api.monitoring.HeritrixCrawlJobStatus;
 import org.verapdf.crawler.api.monitoring.ValidationQueueStatus;
 import org.verapdf.crawler.api.validation.ValidationJob;
 import org.verapdf.crawler.core.heritrix.HeritrixClient;
+import org.verapdf.crawler.core.reports.DocumentsExport;
 import org.verapdf.crawler.api.crawling.CrawlJob;
-import org.verapdf.crawler.core.validation.ValidationService;
+import org.verapdf.crawler.db.DocumentDAO;
+import org.verapdf.crawler.tools.DateParam;
 import org.verapdf.crawler.tools.DomainUtils;
 import org.xml.sax.SAXException;
 
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.IOException;
+import java.text.DateFormat;
 import java.util.*;
 
 @Path("/crawl-jobs")
@@ -32,6 +43,11 @@ public class CrawlJobResource {
     private static final Logger logger = LoggerFactory.getLogger(CrawlJobResource.class);
 
     private static final int GET_STATUS_MAX_DOCUMENT_COUNT = 10;
+    private static final int DOCUMENTS_DEFAULT_LIMIT = 100;
+    private static final int DOCUMENTS_MAX_LIMIT = 1000;
+    private static final int DOCUMENTS_MAX_PROPERTIES = 20;
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
 
     private final ResourceManager resourceManager;
 
@@ -82,14 +98,10 @@ public class CrawlJobResource {
 
             // Remove job from DB
             resourceManager.getCrawlJobDAO().remove(crawlJob);
+            resourceManager.getReportCache().invalidate(domain);
 
-            // Stop validation job if it's related to this crawl job
-            synchronized (ValidationService.class) {
-                ValidationJob currentJob = resourceManager.getValidationService().getCurrentJob();
-                if (currentJob != null && currentJob.getDocument().getCrawlJob().getDomain().equals(domain)) {
-                    resourceManager.getValidationService().abortCurrentJob();
-                }
-            }
+            // Stop validation jobs related to this crawl job
+            resourceManager.getValidationService().abortJobs(domain);
         }
 
         // Create and start new crawl job
@@ -190,33 +202,59 @@ public class CrawlJobResource {
 
         return crawlJob.getCrawlRequests();
     }
-//
-//    @GET
-//    @Path("/{domain}/documents")
-//    public List<Object> getDomainDocuments(@PathParam("domain") String domain,
-//                                           @QueryParam("startDate") DateParam startDate,
-//                                           @QueryParam("type") String type,
-//                                           @QueryParam("start") IntParam start,
-//                                           @QueryParam("limit") IntParam limit,
-//                                           @QueryParam("property") List<String> properties) {
-//        /* todo: introduce new domain object DomainDocument with the following structure:
-//            {
-//                url: '',
-//                contentType: '',
-//                compliant: true,
-//                properties: {
-//                    requestedProperty1: '',
-//                    requestedProperty2: '',
-//                    ...
-//                },
-//                errors: [
-//                    'Error description 1',
-//                    'Error description 2'
-//                ]
-//            }
-//         */
-//        return null;
-//    }
+
+    /**
+     * Lists documents of the domain with their validation results, page by page. Pages are taken by id ranges:
+     * the next page starts after the id given in the "next" link of the previous page. Documents of the page are
+     * written to the response while they are read from the database.
+     *
+     * @param types      types of documents, all types if empty
+     * @param after      id of the last document of the previous page
+     * @param properties names of document properties to include
+     */
+    @GET
+    @Path("/{domain}/documents")
+    @UnitOfWork
+    public Response getDomainDocuments(@PathParam("domain") String domain,
+                                       @QueryParam("startDate") DateParam startDate,
+                                       @QueryParam("type") List<String> types,
+                                       @QueryParam("status") DomainDocument.BaseTestResult status,
+                                       @QueryParam("after") LongParam after,
+                                       @QueryParam("limit") IntParam limitParam,
+                                       @QueryParam("property") List<String> properties,
+                                       @Context UriInfo uriInfo) {
+        CrawlJob crawlJob = getCrawlJob(domain);
+        String jobDomain = crawlJob.getDomain();
+        int limit = limitParam != null ? limitParam.get() : DOCUMENTS_DEFAULT_LIMIT;
+        if (limit < 1 || limit > DOCUMENTS_MAX_LIMIT) {
+            throw new WebApplicationException("Limit should be from 1 to " + DOCUMENTS_MAX_LIMIT, Response.Status.BAD_REQUEST);
+        }
+        if (properties.size() > DOCUMENTS_MAX_PROPERTIES) {
+            throw new WebApplicationException("At most " + DOCUMENTS_MAX_PROPERTIES + " properties can be requested", Response.Status.BAD_REQUEST);
+        }
+        List<String> documentTypes = types.isEmpty() ? null : types;
+        List<String> propertyNames = new ArrayList<>(new LinkedHashSet<>(properties));
+        Date start = DateParam.getDateFromParam(startDate);
+        Long afterId = after != null ? after.get() : null;
+
+        DocumentDAO documentDAO = resourceManager.getDocumentDAO();
+        Long pageEnd = documentDAO.getPageEnd(jobDomain, documentTypes, status, start, afterId, limit);
+        StreamingOutput documents = output -> {
+            try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+                DateFormat dateFormat = DocumentsExport.createDateFormat();
+                generator.writeStartArray();
+                documentDAO.scrollDocuments(jobDomain, documentTypes, status, start, afterId, pageEnd, propertyNames,
+                        document -> DocumentsExport.writeJSON(generator, document, dateFormat));
+                generator.writeEndArray();
+            }
+        };
+        Response.ResponseBuilder response = Response.ok(documents, MediaType.APPLICATION_JSON);
+        if (pageEnd != null) {
+            response.links(Link.fromUri(uriInfo.getRequestUriBuilder().replaceQueryParam("after", pageEnd).build())
+                    .rel("next").build());
+        }
+        return response.build();
+    }
 
     static void startCrawlJob(CrawlJob crawlJob, HeritrixClient heritrix) {
         try {
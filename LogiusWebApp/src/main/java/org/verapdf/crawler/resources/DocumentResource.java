@@ -5,16 +5,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.verapdf.crawler.ResourceManager;
 import org.verapdf.crawler.api.crawling.CrawlJob;
+import org.verapdf.crawler.api.document.DocumentIngestResult;
 import org.verapdf.crawler.api.document.DomainDocument;
 import org.verapdf.crawler.api.validation.ValidationJob;
 import org.verapdf.crawler.db.CrawlJobDAO;
 import org.verapdf.crawler.db.DocumentDAO;
 import org.verapdf.crawler.db.ValidationJobDAO;
 
+import javax.validation.constraints.NotNull;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Path("/documents")
 @Produces(MediaType.APPLICATION_JSON)
@@ -38,7 +50,99 @@ public class DocumentResource {
         return saveDocument(document, job, resourceManager);
     }
 
+    /**
+     * Saves documents sent by Heritrix in one transaction. Every distinct crawl job is resolved once, and documents
+     * with validation jobs are inserted in JDBC batches. Heritrix may resend a batch if it has not received
+     * the response, so documents which are already saved are reported as duplicates.
+     *
+     * @return result for every document in the same order
+     */
+    @POST
+    @Path("/batch")
+    @UnitOfWork
+    public List<DocumentIngestResult> saveDocuments(@NotNull List<DomainDocument> documents) {
+        DocumentDAO documentDAO = resourceManager.getDocumentDAO();
+        Set<String> heritrixJobIds = new HashSet<>();
+        Set<String> urls = new HashSet<>();
+        for (DomainDocument document : documents) {
+            if (document.getCrawlJob() != null && document.getCrawlJob().getHeritrixJobId() != null) {
+                heritrixJobIds.add(document.getCrawlJob().getHeritrixJobId());
+            }
+            if (document.getUrl() != null) {
+                urls.add(document.getUrl());
+            }
+        }
+        Map<String, CrawlJob> jobs = new HashMap<>();
+        if (!heritrixJobIds.isEmpty()) {
+            for (CrawlJob job : resourceManager.getCrawlJobDAO().getByHeritrixJobIds(heritrixJobIds)) {
+                jobs.put(job.getHeritrixJobId(), job);
+            }
+        }
+        Set<String> existingUrls = urls.isEmpty() ? new HashSet<>() : documentDAO.getExistingUrls(urls);
+
+        int batchSize = Math.max(documentDAO.getJdbcBatchSize(), 1);
+        List<DocumentIngestResult> results = new ArrayList<>(documents.size());
+        List<DomainDocument> savedDocuments = new ArrayList<>(documents.size());
+        for (DomainDocument document : documents) {
+            String url = document.getUrl();
+            if (url == null || document.getContentType() == null || document.getCrawlJob() == null) {
+                results.add(new DocumentIngestResult(url, DocumentIngestResult.Status.INVALID,
+                        "Document url, content type and crawl job are required"));
+                continue;
+            }
+            CrawlJob job = jobs.get(document.getCrawlJob().getHeritrixJobId());
+            if (job == null) {
+                results.add(new DocumentIngestResult(url, DocumentIngestResult.Status.UNKNOWN_CRAWL_JOB));
+                continue;
+            }
+            // the same url may also be repeated within the batch
+            if (!existingUrls.add(url)) {
+                results.add(new DocumentIngestResult(url, DocumentIngestResult.Status.DUPLICATE));
+                continue;
+            }
+            insertDocument(document, job, resourceManager);
+            savedDocuments.add(document);
+            results.add(new DocumentIngestResult(url, DocumentIngestResult.Status.SAVED));
+            if (savedDocuments.size() % batchSize == 0) {
+                documentDAO.flushAndClear();
+            }
+        }
+        // report statistics of the whole batch are updated with one statement per distinct combination of values
+        resourceManager.getDocumentStatisticsDAO().addDocuments(savedDocuments);
+        Set<String> domains = new HashSet<>();
+        for (DomainDocument document : savedDocuments) {
+            domains.add(document.getCrawlJob().getDomain());
+        }
+        for (String domain : domains) {
+            resourceManager.getReportCache().invalidate(domain);
+        }
+        logger.info("Saved " + savedDocuments.size() + " of " + documents.size() + " documents from batch");
+        return results;
+    }
+
+    /**
+     * Called by Heritrix when all documents of the crawl job have been delivered, the job isn't finished before that.
+     */
+    @POST
+    @Path("/delivered/{heritrixJobId}")
+    @UnitOfWork
+    public void documentsDelivered(@PathParam("heritrixJobId") String heritrixJobId) {
+        CrawlJob job = resourceManager.getCrawlJobDAO().getByHeritrixJobId(heritrixJobId);
+        if (job == null) {
+            throw new WebApplicationException("Crawl job " + heritrixJobId + " not found", Response.Status.NOT_FOUND);
+        }
+        job.setDocumentsDelivered(true);
+        logger.info("All documents of " + job.getDomain() + " have been delivered");
+    }
+
     public static DomainDocument saveDocument(DomainDocument document, CrawlJob job, ResourceManager resourceManager) {
+        insertDocument(document, job, resourceManager);
+        resourceManager.getDocumentStatisticsDAO().addDocuments(Collections.singletonList(document));
+        resourceManager.getReportCache().invalidate(job.getDomain());
+        return document;
+    }
+
+    private static void insertDocument(DomainDocument document, CrawlJob job, ResourceManager resourceManager) {
         document.setCrawlJob(job);
 
         resourceManager.getDocumentDAO().save(document);
@@ -64,7 +168,6 @@ public class DocumentResource {
                 logger.warn("Unknown document type " + document.getContentType() + ". Document " + document.getUrl() + " won't be tested.");
         }
 
-        return document;
     }
 
     private static void validatePdfFile(DomainDocument document, ValidationJobDAO validationJobDAO) {
@@ -6,26 +6,41 @@ import org.slf4j.LoggerFactory;
 import org.verapdf.crawler.ResourceManager;
 import org.verapdf.crawler.api.document.DomainDocument;
 import org.verapdf.crawler.api.report.CrawlJobSummary;
+import org.verapdf.crawler.api.report.DocumentCounts;
 import org.verapdf.crawler.api.report.ErrorStatistics;
 import org.verapdf.crawler.api.report.PDFWamErrorStatistics;
 import org.verapdf.crawler.api.report.PdfPropertyStatistics;
-import org.verapdf.crawler.core.reports.ReportsGenerator;
-import org.verapdf.crawler.db.DocumentDAO;
+import org.verapdf.crawler.api.validation.settings.PdfProperty;
+import org.verapdf.crawler.core.reports.DocumentsExport;
+import org.verapdf.crawler.core.reports.ReportCache;
+import org.verapdf.crawler.core.reports.ReportStatistics;
+import org.verapdf.crawler.core.validation.PDFWamProcessor;
 import org.verapdf.crawler.tools.DateParam;
 import org.verapdf.crawler.tools.DomainUtils;
-import org.xml.sax.SAXException;
 
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 @Path("/report")
 public class ReportResource {
@@ -33,7 +48,14 @@ public class ReportResource {
 
     private static final Logger logger = LoggerFactory.getLogger(ReportResource.class);
 
-    private static final int ODS_MAX_DOCUMENTS_SHOW = 100;
+    private static final int ODS_RETRY_AFTER_SECONDS = 10;
+    private static final Pattern BYTE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final String RANGE = "Range";
+    private static final String IF_RANGE = "If-Range";
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+    private static final String CONTENT_RANGE = "Content-Range";
+    private static final String GZIP_MEDIA_TYPE = "application/gzip";
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
 
     private final ResourceManager resourceManager;
 
@@ -45,15 +67,20 @@ public class ReportResource {
     @Path("/summary")
     @Produces(MediaType.APPLICATION_JSON)
     @UnitOfWork
-    public CrawlJobSummary getSummary(@QueryParam("domain") String domain,
-                                      @QueryParam("startDate") DateParam startDate) throws IOException, ParserConfigurationException, SAXException {
+    public Response getSummary(@QueryParam("domain") String domain,
+                               @QueryParam("startDate") DateParam startDate,
+                               @Context Request request) {
         Date documentsSince = DateParam.getDateFromParam(startDate);
+        return getCachedResponse(request, "summary", domain, documentsSince,
+                () -> getSummary(domain, documentsSince));
+    }
 
-        DocumentDAO documentDAO = resourceManager.getDocumentDAO();
-        Long openPdf = documentDAO.count(domain, DomainDocument.DocumentTypeGroup.PDF.getTypes(), DomainDocument.BaseTestResult.OPEN, documentsSince);
-        Long notOpenPdf = documentDAO.count(domain, DomainDocument.DocumentTypeGroup.PDF.getTypes(), DomainDocument.BaseTestResult.NOT_OPEN, documentsSince);
-        Long openOffice = documentDAO.count(domain, DomainDocument.DocumentTypeGroup.OFFICE.getTypes(), DomainDocument.BaseTestResult.OPEN, documentsSince);
-        Long notOpenOffice = documentDAO.count(domain, DomainDocument.DocumentTypeGroup.OFFICE.getTypes(), DomainDocument.BaseTestResult.NOT_OPEN, documentsSince);
+    private CrawlJobSummary getSummary(String domain, Date documentsSince) {
+        DocumentCounts counts = resourceManager.getReportStatistics().getDocumentCounts(domain, documentsSince);
+        Long openPdf = counts.count(DomainDocument.DocumentTypeGroup.PDF, DomainDocument.BaseTestResult.OPEN);
+        Long notOpenPdf = counts.count(DomainDocument.DocumentTypeGroup.PDF, DomainDocument.BaseTestResult.NOT_OPEN);
+        Long openOffice = counts.count(DomainDocument.DocumentTypeGroup.OFFICE, DomainDocument.BaseTestResult.OPEN);
+        Long notOpenOffice = counts.count(DomainDocument.DocumentTypeGroup.OFFICE, DomainDocument.BaseTestResult.NOT_OPEN);
 
         CrawlJobSummary summary = new CrawlJobSummary();
         summary.getOpenDocuments().put(DomainDocument.DocumentTypeGroup.PDF, openPdf);
@@ -67,21 +94,27 @@ public class ReportResource {
     @Path("/document-statistics")
     @Produces(MediaType.APPLICATION_JSON)
     @UnitOfWork
-    public PdfPropertyStatistics getDocumentStatistics(@QueryParam("domain") String domain,
-                                                       @QueryParam("startDate") DateParam startDate) {
+    public Response getDocumentStatistics(@QueryParam("domain") String domain,
+                                          @QueryParam("startDate") DateParam startDate,
+                                          @Context Request request) {
         Date documentsSince = DateParam.getDateFromParam(startDate);
+        return getCachedResponse(request, "document-statistics", domain, documentsSince,
+                () -> getDocumentStatistics(domain, documentsSince));
+    }
 
-        DocumentDAO documentDAO = resourceManager.getDocumentDAO();
-        Long openPdf = documentDAO.count(domain, DomainDocument.DocumentTypeGroup.PDF.getTypes(), DomainDocument.BaseTestResult.OPEN, documentsSince);
-        Long notOpenPdf = documentDAO.count(domain, DomainDocument.DocumentTypeGroup.PDF.getTypes(), DomainDocument.BaseTestResult.NOT_OPEN, documentsSince);
+    private PdfPropertyStatistics getDocumentStatistics(String domain, Date documentsSince) {
+        ReportStatistics reportStatistics = resourceManager.getReportStatistics();
+        DocumentCounts counts = reportStatistics.getDocumentCounts(domain, documentsSince);
+        Long openPdf = counts.count(DomainDocument.DocumentTypeGroup.PDF, DomainDocument.BaseTestResult.OPEN);
+        Long notOpenPdf = counts.count(DomainDocument.DocumentTypeGroup.PDF, DomainDocument.BaseTestResult.NOT_OPEN);
         Long total = openPdf + notOpenPdf;
 
-        List<PdfPropertyStatistics.ValueCount> flavourStatistics = documentDAO.getPropertyStatistics(
+        List<PdfPropertyStatistics.ValueCount> flavourStatistics = reportStatistics.getPropertyStatistics(
                 domain, PdfPropertyStatistics.FLAVOUR_PROPERTY_NAME, documentsSince);
-        List<PdfPropertyStatistics.ValueCount> versionStatistics = documentDAO.getPropertyStatistics(
+        List<PdfPropertyStatistics.ValueCount> versionStatistics = reportStatistics.getPropertyStatistics(
                 domain, PdfPropertyStatistics.VERSION_PROPERTY_NAME, documentsSince);
-        List<PdfPropertyStatistics.ValueCount> producerStatistics = documentDAO.getPropertyStatistics(
-                domain, PdfPropertyStatistics.PRODUCER_PROPERTY_NAME, documentsSince, true, PdfPropertyStatistics.TOP_PRODUCERS_COUNT);
+        List<PdfPropertyStatistics.ValueCount> producerStatistics = reportStatistics.getPropertyStatistics(
+                domain, PdfPropertyStatistics.PRODUCER_PROPERTY_NAME, documentsSince, PdfPropertyStatistics.TOP_PRODUCERS_COUNT);
 
         PdfPropertyStatistics statistics = new PdfPropertyStatistics();
         statistics.setOpenPdfDocumentsCount(openPdf);
@@ -98,19 +131,21 @@ public class ReportResource {
     @Path("/error-statistics")
     @Produces(MediaType.APPLICATION_JSON)
     @UnitOfWork
-    public ErrorStatistics getErrorStatistics(@QueryParam("domain") String domain,
-                                              @QueryParam("startDate") DateParam startDate,
-                                              @QueryParam("flavour") String flavour,
-                                              @QueryParam("version") String version,
-                                              @QueryParam("producer") String producer) {
+    public Response getErrorStatistics(@QueryParam("domain") String domain,
+                                       @QueryParam("startDate") DateParam startDate,
+                                       @QueryParam("flavour") String flavour,
+                                       @QueryParam("version") String version,
+                                       @QueryParam("producer") String producer,
+                                       @Context Request request) {
         Date documentsSince = DateParam.getDateFromParam(startDate);
+        return getCachedResponse(request, "error-statistics", domain, documentsSince, () -> {
+            List<ErrorStatistics.ErrorCount> errorCounts = resourceManager.getReportStatistics().getErrorsStatistics(
+                    domain, documentsSince, flavour, version, producer, ErrorStatistics.TOP_ERRORS_COUNT);
 
-        List<ErrorStatistics.ErrorCount> errorCounts = resourceManager.getDocumentDAO().getErrorsStatistics(
-                domain, documentsSince, flavour, version, producer, ErrorStatistics.TOP_ERRORS_COUNT);
-
-        ErrorStatistics errorStatistics = new ErrorStatistics();
-        errorStatistics.setTopErrorStatistics(errorCounts);
-        return errorStatistics;
+            ErrorStatistics errorStatistics = new ErrorStatistics();
+            errorStatistics.setTopErrorStatistics(errorCounts);
+            return errorStatistics;
+        }, flavour, version, producer);
     }
 
 
@@ -118,65 +153,189 @@ public class ReportResource {
     @Path("/pdfwam-statistics")
     @Produces(MediaType.APPLICATION_JSON)
     @UnitOfWork
-    public List<PDFWamErrorStatistics.ErrorCount> getDocumentPropertyStatistics(@QueryParam("domain") @NotNull String domain,
-                                                                                @QueryParam("startDate") DateParam startDate,
-                                                                                @QueryParam("flavour") String flavour,
-                                                                                @QueryParam("version") String version,
-                                                                                @QueryParam("producer") String producer) {
+    public Response getDocumentPropertyStatistics(@QueryParam("domain") @NotNull String domain,
+                                                  @QueryParam("startDate") DateParam startDate,
+                                                  @QueryParam("flavour") String flavour,
+                                                  @QueryParam("version") String version,
+                                                  @QueryParam("producer") String producer,
+                                                  @Context Request request) {
         Date documentsSince = DateParam.getDateFromParam(startDate);
-        return resourceManager.getDocumentDAO().getPDFWamErrorsStatistics(domain, documentsSince, flavour, version, producer);
+        return getCachedResponse(request, "pdfwam-statistics", domain, documentsSince,
+                () -> resourceManager.getDocumentDAO().getPDFWamErrorsStatistics(domain, documentsSince, flavour, version, producer),
+                flavour, version, producer);
+    }
+
+    /**
+     * Responds with the cached report, or with 304 if the client already has its current version. Clients may store
+     * reports, but have to revalidate them on every use, as reports change whenever documents are validated.
+     */
+    private <T> Response getCachedResponse(Request request, String endpoint, String domain, Date documentsSince,
+                                           Supplier<T> loader, Object... filters) {
+        ReportCache.CachedReport<T> report = resourceManager.getReportCache().get(endpoint, domain, documentsSince, loader, filters);
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        cacheControl.setNoTransform(false);
+        EntityTag entityTag = report.getEntityTag();
+        if (entityTag != null) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+            if (notModified != null) {
+                return notModified.cacheControl(cacheControl).build();
+            }
+        }
+        return Response.ok(report.getValue()).tag(entityTag).cacheControl(cacheControl).build();
     }
 
     @GET
     @Path("/full.ods")
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
-    @UnitOfWork
     public Response getFullReportAsOds(@QueryParam("domain") String domain,
-                                       @QueryParam("startDate") DateParam startDate) {
+                                       @QueryParam("startDate") DateParam startDate,
+                                       @HeaderParam(RANGE) String range,
+                                       @HeaderParam(IF_RANGE) String ifRange,
+                                       @Context Request request) throws IOException, InterruptedException {
         if (domain != null) {
             domain = DomainUtils.trimUrl(domain);
         }
-        DocumentDAO documentDAO = resourceManager.getDocumentDAO();
+        logger.info("ODS report requested");
         Date start = DateParam.getDateFromParam(startDate);
-        long compliantPDFA12Count = getDocumentsCount(domain, DomainDocument.DocumentTypeGroup.PDF,
-                DomainDocument.BaseTestResult.OPEN, start);
-        long odfCount = getDocumentsCount(domain, DomainDocument.DocumentTypeGroup.OPEN_OFFICE,
-                null, start);
-        long invalidPDFA12Count = getDocumentsCount(domain, DomainDocument.DocumentTypeGroup.PDF,
-                DomainDocument.BaseTestResult.NOT_OPEN, start);
-        long msCount = getDocumentsCount(domain, DomainDocument.DocumentTypeGroup.MS_OFFICE,
-                null, start);
-        long ooXMLCount = getDocumentsCount(domain, DomainDocument.DocumentTypeGroup.OO_XML_OFFICE,
-                null, start);
-        List<DomainDocument> invalidPDFDocuments = documentDAO.getDocuments(domain,
-                DomainDocument.DocumentTypeGroup.PDF.getTypes(),
-                DomainDocument.BaseTestResult.NOT_OPEN, start, ODS_MAX_DOCUMENTS_SHOW);
-        List<String> microsoftDocuments = documentDAO.getDocumentsUrls(domain,
-                DomainDocument.DocumentTypeGroup.MS_OFFICE.getTypes(),
-                null, start, ODS_MAX_DOCUMENTS_SHOW);
-        List<String> openOfficeXMLDocuments = documentDAO.getDocumentsUrls(domain,
-                DomainDocument.DocumentTypeGroup.OO_XML_OFFICE.getTypes(), null, start, ODS_MAX_DOCUMENTS_SHOW);
-        try {
-            File tempODS = ReportsGenerator.generateODSReport(domain, start,
-                    compliantPDFA12Count, odfCount,
-                    invalidPDFA12Count, msCount,
-                    ooXMLCount, invalidPDFDocuments,
-                    microsoftDocuments, openOfficeXMLDocuments);
-            logger.info("ODS report requested");
-            return Response.ok(tempODS, MediaType.APPLICATION_OCTET_STREAM)
-                    .header("Content-Disposition", "attachment; filename=\"" + tempODS.getName() + "\"")
+        long waitMillis = resourceManager.getReportsConfiguration().getOdsGenerationWaitMillis();
+        File report = resourceManager.getODSReportService().getReport(domain, start, waitMillis);
+        if (report == null) {
+            return Response.accepted("ODS report is being generated, retry later")
+                    .type(MediaType.TEXT_PLAIN)
+                    .header(HttpHeaders.RETRY_AFTER, ODS_RETRY_AFTER_SECONDS)
                     .build();
-        } catch (IOException e) {
-            logger.error("Exception during ods report creation: " + e.getMessage(), e);
         }
-        return null;
+        String fileName = "logiusODSReport-" + domain + "-" + report.lastModified() + ".ods";
+        return getFileResponse(report, fileName, range, ifRange, request);
+    }
+
+    /**
+     * Streams all documents of the domain with their properties and errors. Responses are compressed by the server
+     * when the client accepts gzip encoding, and with the gzip parameter the export is downloaded as a gzip file.
+     */
+    @GET
+    @Path("/export")
+    @UnitOfWork
+    public Response exportDocuments(@QueryParam("domain") @NotNull String domain,
+                                    @QueryParam("startDate") DateParam startDate,
+                                    @QueryParam("format") String formatName,
+                                    @QueryParam("gzip") boolean gzip) {
+        String exportDomain = DomainUtils.trimUrl(domain);
+        DocumentsExport.Format format = formatName == null ? DocumentsExport.Format.NDJSON
+                : DocumentsExport.Format.fromExtension(formatName);
+        if (format == null) {
+            throw new WebApplicationException("Format should be ndjson or csv", Response.Status.BAD_REQUEST);
+        }
+        logger.info("Export of " + exportDomain + " requested as " + format.getExtension());
+        DocumentsExport export = new DocumentsExport(resourceManager.getDocumentDAO(), exportDomain,
+                DateParam.getDateFromParam(startDate), getExportPropertyNames(), format,
+                resourceManager.getReportsConfiguration().getExportChunkSize());
+        String fileName = "logiusExport-" + exportDomain + "." + format.getExtension();
+        StreamingOutput content;
+        if (gzip) {
+            fileName += ".gz";
+            content = output -> {
+                GZIPOutputStream gzipOutput = new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+                export.write(gzipOutput);
+                gzipOutput.finish();
+            };
+        } else {
+            content = export::write;
+        }
+        return Response.ok(content)
+                .type(gzip ? GZIP_MEDIA_TYPE : format.getMediaType() + ";charset=utf-8")
+                .header("Content-Disposition", "attachment; filename=\"" + fileName + "\"")
+                .build();
+    }
+
+    /**
+     * Enabled veraPDF properties, properties of reports and PDFWam checks, each as a field of exported documents.
+     */
+    private List<String> getExportPropertyNames() {
+        Set<String> propertyNames = new LinkedHashSet<>();
+        for (PdfProperty property : resourceManager.getPdfPropertyDAO().getEnabledPropertiesMap()) {
+            propertyNames.add(property.getName());
+        }
+        propertyNames.add(PdfPropertyStatistics.FLAVOUR_PROPERTY_NAME);
+        propertyNames.add(PdfPropertyStatistics.VERSION_PROPERTY_NAME);
+        propertyNames.add(PdfPropertyStatistics.PRODUCER_PROPERTY_NAME);
+        propertyNames.addAll(new TreeSet<>(PDFWamProcessor.getErrorPropertyNames()));
+        return new ArrayList<>(propertyNames);
+    }
+
+    /**
+     * Positions beyond the range of long are beyond the end of any file, so they are treated as the largest long:
+     * such a suffix selects the whole file, and such a first position makes the range not satisfiable.
+     */
+    private static long parseRangePosition(String digits) {
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
     }
 
-    private long getDocumentsCount(String domain, DomainDocument.DocumentTypeGroup documentGroup,
-                                   DomainDocument.BaseTestResult testResult,
-                                   Date start) {
-        Long count = resourceManager.getDocumentDAO().count(domain, documentGroup.getTypes(),
-                testResult, start);
-        return count == null ? 0 : count;
+    /**
+     * Serves the file with support of revalidation by its entity tag and of single byte range requests.
+     */
+    private static Response getFileResponse(File file, String fileName, String range, String ifRange, Request request) {
+        // report files are named by their content version, so the name identifies the content
+        EntityTag entityTag = new EntityTag(file.getName());
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        long length = file.length();
+        long first = 0;
+        long last = length - 1;
+        Response.Status status = Response.Status.OK;
+        if (range != null && (ifRange == null || ifRange.equals(entityTag.toString()))) {
+            Matcher matcher = BYTE_RANGE.matcher(range.trim());
+            if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+                if (matcher.group(1).isEmpty()) {
+                    first = Math.max(0, length - parseRangePosition(matcher.group(2)));
+                } else {
+                    first = parseRangePosition(matcher.group(1));
+                    if (!matcher.group(2).isEmpty()) {
+                        last = Math.min(last, parseRangePosition(matcher.group(2)));
+                    }
+                }
+                if (first > last) {
+                    return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(CONTENT_RANGE, "bytes */" + length)
+                            .build();
+                }
+                status = Response.Status.PARTIAL_CONTENT;
+            }
+        }
+        long offset = first;
+        long count = last - first + 1;
+        StreamingOutput content = output -> {
+            try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+                input.seek(offset);
+                byte[] buffer = new byte[64 * 1024];
+                long remaining = count;
+                while (remaining > 0) {
+                    int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        break;
+                    }
+                    output.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        };
+        Response.ResponseBuilder response = Response.status(status)
+                .entity(content)
+                .type(MediaType.APPLICATION_OCTET_STREAM)
+                .tag(entityTag)
+                .header(ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_LENGTH, count)
+                .header("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        if (status == Response.Status.PARTIAL_CONTENT) {
+            response.header(CONTENT_RANGE, "bytes " + first + "-" + last + "/" + length);
+        }
+        return response.build();
     }
 }
@@ -4,7 +4,7 @@ import io.dropwizard.hibernate.UnitOfWork;
 import org.verapdf.crawler.ResourceManager;
 import org.verapdf.crawler.api.monitoring.ValidationQueueStatus;
 import org.verapdf.crawler.api.validation.ValidationJob;
-import org.verapdf.crawler.api.validation.VeraPDFValidationResult;
+import org.verapdf.crawler.api.validation.VeraPDFServiceStatus;
 import org.verapdf.crawler.api.validation.settings.Namespace;
 import org.verapdf.crawler.api.validation.settings.PdfProperty;
 import org.verapdf.crawler.api.validation.settings.ValidationSettings;
@@ -56,7 +56,7 @@ public class ValidationServiceResource {
 
 	@POST
 	@Path("/result")
-	public void setValidationResult(@NotNull @Valid VeraPDFValidationResult result) {
-		// todo: interrupt sleep
+	public void setValidationResult(@NotNull @Valid VeraPDFServiceStatus status) {
+		resourceManager.getVeraPDFValidator().validationFinished(status);
 	}
 }
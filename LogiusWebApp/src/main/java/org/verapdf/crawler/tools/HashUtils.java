@@ -0,0 +1,41 @@
+package org.verapdf.crawler.tools;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-1 hashes in hex form, the same as SHA1() of MySQL returns for utf8mb4 strings.
+ */
+public class HashUtils {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    public static MessageDigest newSha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported", e);
+        }
+    }
+
+    /**
+     * @return hex SHA-1 of UTF-8 bytes of the value
+     */
+    public static String sha1Hex(String value) {
+        return sha1Hex(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String sha1Hex(byte[] value) {
+        return toHex(newSha1Digest().digest(value));
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] res = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            res[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            res[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(res);
+    }
+}
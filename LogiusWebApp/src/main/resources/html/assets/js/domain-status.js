@@ -112,7 +112,7 @@ $(function () {
             var template = queueTbody.find('.template');
             $.each(jobStatus.validationQueueStatus.topDocuments, function(index, validationJob) {
                 var element = template.clone().removeClass('template');
-                element.find('.url').text(validationJob.id);
+                element.find('.url').text(validationJob.url);
                 if (validationJob.status === 'IN_PROGRESS') {
                     element.addClass('in-progress');
                 } else if (validationJob.status === 'PAUSED') {
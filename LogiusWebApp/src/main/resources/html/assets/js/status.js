@@ -185,7 +185,7 @@ $(function () {
             var template = tbody.find('.template');
             $.each(queueStatus.topDocuments, function(index, validationJob) {
                 var element = template.clone().removeClass('template');
-                element.find('.url').text(validationJob.id);
+                element.find('.url').text(validationJob.url);
                 if (validationJob.status === 'IN_PROGRESS') {
                     element.addClass('in-progress');
                 }
@@ -0,0 +1,8 @@
+-- Leases on validation queue entries, so that several Logius instances can share the queue
+ALTER TABLE `pdf_validation_jobs_queue`
+  ADD COLUMN `lease_owner`   VARCHAR(255) DEFAULT NULL,
+  ADD COLUMN `lease_expires` DATETIME     DEFAULT NULL,
+  ADD KEY `pdf_validation_jobs_queue_status_lease_index` (`validation_status`, `lease_expires`);
+
+-- Jobs left in progress have no owner any more
+UPDATE `pdf_validation_jobs_queue` SET `validation_status` = 'NOT_STARTED' WHERE `validation_status` = 'IN_PROGRESS';
@@ -0,0 +1,32 @@
+-- Generic validation errors are looked up by SHA-1 of the description instead of the unindexed description itself.
+-- Rule violations are unique by rule and keep the hash empty.
+ALTER TABLE `validation_errors`
+  ADD COLUMN `description_hash` CHAR(40) DEFAULT NULL;
+
+-- the application hashes UTF-8 bytes of the description
+UPDATE `validation_errors`
+SET `description_hash` = SHA1(CONVERT(`description` USING utf8mb4))
+WHERE `type` = 'GENERIC' AND `description` IS NOT NULL;
+
+-- Generic errors saved concurrently may have been duplicated, they are merged into the oldest one
+CREATE TEMPORARY TABLE `validation_errors_duplicates` AS
+  SELECT `error`.`id` AS `id`, `original`.`id` AS `original_id`
+  FROM `validation_errors` `error`
+    JOIN (SELECT `description_hash`, MIN(`id`) AS `id`
+          FROM `validation_errors`
+          WHERE `description_hash` IS NOT NULL
+          GROUP BY `description_hash`
+          HAVING COUNT(*) > 1) `original`
+      ON `error`.`description_hash` = `original`.`description_hash` AND `error`.`id` <> `original`.`id`;
+
+-- links which already exist for the original error are left as is and removed together with the duplicate
+UPDATE IGNORE `documents_validation_errors` `link`
+  JOIN `validation_errors_duplicates` `duplicate` ON `link`.`error_id` = `duplicate`.`id`
+SET `link`.`error_id` = `duplicate`.`original_id`;
+
+DELETE FROM `validation_errors` WHERE `id` IN (SELECT `id` FROM `validation_errors_duplicates`);
+
+DROP TEMPORARY TABLE `validation_errors_duplicates`;
+
+ALTER TABLE `validation_errors`
+  ADD UNIQUE KEY `validation_errors_description_hash_uindex` (`description_hash`);
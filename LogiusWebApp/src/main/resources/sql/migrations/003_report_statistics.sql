@@ -0,0 +1,70 @@
+-- Monthly per-domain rollups of document counts, which report statistics are summed from.
+-- Rows are unique by SHA-1 of all dimensions, missing values are stored as empty strings and missing month as 0.
+CREATE TABLE `document_statistics` (
+  `dimensions_hash`  CHAR(40)     NOT NULL,
+  `crawl_job_domain` VARCHAR(255) NOT NULL,
+  `month`            INT(11)      NOT NULL,
+  `document_type`    VARCHAR(127) NOT NULL DEFAULT '',
+  `document_status`  VARCHAR(16)  NOT NULL DEFAULT '',
+  `flavour`          VARCHAR(255) NOT NULL DEFAULT '',
+  `version`          VARCHAR(255) NOT NULL DEFAULT '',
+  `producer`         VARCHAR(255) NOT NULL DEFAULT '',
+  `document_count`   BIGINT(20)   NOT NULL DEFAULT '0',
+  PRIMARY KEY (`dimensions_hash`),
+  KEY `document_statistics_domain_month_index` (`crawl_job_domain`, `month`),
+  CONSTRAINT `document_statistics_crawl_jobs_domain_fk` FOREIGN KEY (`crawl_job_domain`) REFERENCES `crawl_jobs` (`domain`)
+    ON DELETE CASCADE
+    ON UPDATE CASCADE
+);
+CREATE TABLE `document_error_statistics` (
+  `dimensions_hash`  CHAR(40)     NOT NULL,
+  `crawl_job_domain` VARCHAR(255) NOT NULL,
+  `month`            INT(11)      NOT NULL,
+  `flavour`          VARCHAR(255) NOT NULL DEFAULT '',
+  `version`          VARCHAR(255) NOT NULL DEFAULT '',
+  `producer`         VARCHAR(255) NOT NULL DEFAULT '',
+  `error_id`         INT(11)      NOT NULL,
+  `document_count`   BIGINT(20)   NOT NULL DEFAULT '0',
+  PRIMARY KEY (`dimensions_hash`),
+  KEY `document_error_statistics_domain_month_index` (`crawl_job_domain`, `month`),
+  CONSTRAINT `document_error_statistics_crawl_jobs_domain_fk` FOREIGN KEY (`crawl_job_domain`) REFERENCES `crawl_jobs` (`domain`)
+    ON DELETE CASCADE
+    ON UPDATE CASCADE,
+  CONSTRAINT `document_error_statistics_validation_errors_id_fk` FOREIGN KEY (`error_id`) REFERENCES `validation_errors` (`id`)
+    ON DELETE CASCADE
+    ON UPDATE CASCADE
+);
+
+-- the application computes the same dimensions for new and validated documents
+CREATE TEMPORARY TABLE `document_dimensions` AS
+  SELECT `d`.`document_url`                                  AS `document_url`,
+         `d`.`crawl_job_domain`                              AS `crawl_job_domain`,
+         IFNULL(EXTRACT(YEAR_MONTH FROM `d`.`last_modified`), 0) AS `month`,
+         IFNULL(`d`.`document_type`, '')                     AS `document_type`,
+         IFNULL(`d`.`document_status`, '')                   AS `document_status`,
+         IFNULL(`f`.`property_value`, '')                    AS `flavour`,
+         IFNULL(`v`.`property_value`, '')                    AS `version`,
+         IFNULL(`p`.`property_value`, '')                    AS `producer`
+  FROM `documents` `d`
+    LEFT JOIN `document_properties` `f` ON `f`.`document_url` = `d`.`document_url` AND `f`.`property_name` = 'flavour'
+    LEFT JOIN `document_properties` `v` ON `v`.`document_url` = `d`.`document_url` AND `v`.`property_name` = 'pdfVersion'
+    LEFT JOIN `document_properties` `p` ON `p`.`document_url` = `d`.`document_url` AND `p`.`property_name` = 'producer';
+
+INSERT INTO `document_statistics` (`dimensions_hash`, `crawl_job_domain`, `month`, `document_type`, `document_status`,
+                                   `flavour`, `version`, `producer`, `document_count`)
+  SELECT SHA1(CONVERT(CONCAT_WS(CHAR(31), `crawl_job_domain`, `month`, `document_type`, `document_status`,
+                                `flavour`, `version`, `producer`) USING utf8mb4)),
+         `crawl_job_domain`, `month`, `document_type`, `document_status`, `flavour`, `version`, `producer`, COUNT(*)
+  FROM `document_dimensions`
+  GROUP BY `crawl_job_domain`, `month`, `document_type`, `document_status`, `flavour`, `version`, `producer`;
+
+INSERT INTO `document_error_statistics` (`dimensions_hash`, `crawl_job_domain`, `month`, `flavour`, `version`,
+                                         `producer`, `error_id`, `document_count`)
+  SELECT SHA1(CONVERT(CONCAT_WS(CHAR(31), `dd`.`crawl_job_domain`, `dd`.`month`, `dd`.`flavour`, `dd`.`version`,
+                                `dd`.`producer`, `e`.`error_id`) USING utf8mb4)),
+         `dd`.`crawl_job_domain`, `dd`.`month`, `dd`.`flavour`, `dd`.`version`, `dd`.`producer`, `e`.`error_id`, COUNT(*)
+  FROM `document_dimensions` `dd`
+    JOIN `documents_validation_errors` `e` ON `e`.`document_url` = `dd`.`document_url`
+  GROUP BY `dd`.`crawl_job_domain`, `dd`.`month`, `dd`.`flavour`, `dd`.`version`, `dd`.`producer`, `e`.`error_id`;
+
+DROP TEMPORARY TABLE `document_dimensions`;
@@ -0,0 +1,21 @@
+-- Secondary indexes for report, document listing and queue queries, which all filter by domain or status.
+-- InnoDB secondary indexes contain the primary key, so queries which need only indexed columns and urls are
+-- answered from the index without reading the rows.
+
+-- Document counts grouped by type and status, counts and listings of documents by type, status and date.
+-- It replaces the index which has been created for the domain foreign key.
+ALTER TABLE `documents`
+  ADD KEY `documents_domain_type_status_modified_index` (`crawl_job_domain`, `document_type`, `document_status`, `last_modified`),
+  ADD KEY `documents_domain_modified_index` (`crawl_job_domain`, `last_modified`);
+
+-- Property statistics grouped by value and property values filtered by name, together with the documents urls
+ALTER TABLE `document_properties`
+  ADD KEY `document_properties_name_value_index` (`property_name`, `property_value`);
+
+-- Leases which are extended and released by their owner
+ALTER TABLE `pdf_validation_jobs_queue`
+  ADD KEY `pdf_validation_jobs_queue_owner_status_index` (`lease_owner`, `validation_status`);
+
+-- Running jobs which are checked in batches in order of domains
+ALTER TABLE `crawl_jobs`
+  ADD KEY `crawl_jobs_status_index` (`job_status`);
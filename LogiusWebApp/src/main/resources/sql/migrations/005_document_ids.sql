@@ -0,0 +1,110 @@
+-- Documents are keyed by BIGINT ids instead of urls, and urls are looked up through the unique key on their SHA-1.
+-- Keys and joins become 8 bytes instead of up to 1020, and urls are no longer limited by the index key length.
+--
+-- To migrate online, phases 1 and 2 are run while the previous version of the application is running: tables are
+-- rebuilt in place with concurrent reads and writes allowed. Then the application is stopped, phase 2 is repeated
+-- for documents saved meanwhile, and phase 3 switches the keys. Run at once, the script does the same offline.
+
+-- Phase 1, online: new columns
+
+ALTER TABLE `documents`
+  ADD COLUMN `id`       BIGINT(20) DEFAULT NULL FIRST,
+  ADD COLUMN `url_hash` CHAR(40)   DEFAULT NULL,
+  ALGORITHM=INPLACE, LOCK=NONE;
+
+ALTER TABLE `document_properties`
+  ADD COLUMN `document_id` BIGINT(20) DEFAULT NULL FIRST,
+  ALGORITHM=INPLACE, LOCK=NONE;
+
+ALTER TABLE `pdf_validation_jobs_queue`
+  ADD COLUMN `document_id` BIGINT(20) DEFAULT NULL FIRST,
+  ALGORITHM=INPLACE, LOCK=NONE;
+
+ALTER TABLE `documents_validation_errors`
+  ADD COLUMN `document_id` BIGINT(20) DEFAULT NULL FIRST,
+  ALGORITHM=INPLACE, LOCK=NONE;
+
+-- Phase 2, online and repeatable: ids of documents and of rows which refer to them
+
+SELECT IFNULL(MAX(`id`), 0) INTO @document_id FROM `documents`;
+UPDATE `documents`
+SET `id` = (@document_id := @document_id + 1),
+  `url_hash` = SHA1(CONVERT(`document_url` USING utf8mb4))
+WHERE `id` IS NULL
+ORDER BY `document_url`;
+
+UPDATE `document_properties` `property`
+  JOIN `documents` `document` ON `document`.`document_url` = `property`.`document_url`
+SET `property`.`document_id` = `document`.`id`
+WHERE `property`.`document_id` IS NULL;
+
+UPDATE `pdf_validation_jobs_queue` `job`
+  JOIN `documents` `document` ON `document`.`document_url` = `job`.`document_url`
+SET `job`.`document_id` = `document`.`id`
+WHERE `job`.`document_id` IS NULL;
+
+UPDATE `documents_validation_errors` `link`
+  JOIN `documents` `document` ON `document`.`document_url` = `link`.`document_url`
+SET `link`.`document_id` = `document`.`id`
+WHERE `link`.`document_id` IS NULL;
+
+-- Phase 3, with the application stopped: switch of the keys
+
+ALTER TABLE `document_properties` DROP FOREIGN KEY `document_properties_documents_document_url_fk`;
+ALTER TABLE `pdf_validation_jobs_queue` DROP FOREIGN KEY `pdf_validation_jobs_queue_documents_document_url_fk`;
+ALTER TABLE `documents_validation_errors` DROP FOREIGN KEY `documents_validation_errors_documents_document_url_fk`;
+
+ALTER TABLE `documents`
+  MODIFY COLUMN `id`       BIGINT(20) NOT NULL,
+  MODIFY COLUMN `url_hash` CHAR(40)   NOT NULL,
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (`id`),
+  ADD UNIQUE KEY `documents_url_hash_uindex` (`url_hash`),
+  ALGORITHM=INPLACE, LOCK=NONE;
+
+ALTER TABLE `documents`
+  MODIFY COLUMN `document_url` VARCHAR(2048) NOT NULL;
+
+ALTER TABLE `document_properties`
+  MODIFY COLUMN `document_id` BIGINT(20) NOT NULL,
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (`document_id`, `property_name`),
+  DROP COLUMN `document_url`,
+  ALGORITHM=INPLACE, LOCK=NONE;
+
+ALTER TABLE `pdf_validation_jobs_queue`
+  MODIFY COLUMN `document_id` BIGINT(20) NOT NULL,
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (`document_id`),
+  DROP COLUMN `document_url`,
+  ALGORITHM=INPLACE, LOCK=NONE;
+
+ALTER TABLE `documents_validation_errors`
+  MODIFY COLUMN `document_id` BIGINT(20) NOT NULL,
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (`document_id`, `error_id`),
+  DROP COLUMN `document_url`,
+  ALGORITHM=INPLACE, LOCK=NONE;
+
+-- rows refer to existing documents by construction, so the keys are added without checking them
+SET foreign_key_checks = 0;
+ALTER TABLE `document_properties`
+  ADD CONSTRAINT `document_properties_documents_id_fk` FOREIGN KEY (`document_id`) REFERENCES `documents` (`id`)
+    ON DELETE CASCADE;
+ALTER TABLE `pdf_validation_jobs_queue`
+  ADD CONSTRAINT `pdf_validation_jobs_queue_documents_id_fk` FOREIGN KEY (`document_id`) REFERENCES `documents` (`id`)
+    ON DELETE CASCADE;
+ALTER TABLE `documents_validation_errors`
+  ADD CONSTRAINT `documents_validation_errors_documents_id_fk` FOREIGN KEY (`document_id`) REFERENCES `documents` (`id`)
+    ON DELETE CASCADE;
+SET foreign_key_checks = 1;
+
+-- Ids of new documents are allocated by the application in blocks of 100 from this table. The stored value is
+-- the upper bound of the next block, so it starts one block above the last id.
+CREATE TABLE `id_generators` (
+  `sequence_name` VARCHAR(255) NOT NULL,
+  `next_val`      BIGINT(20)   DEFAULT NULL,
+  PRIMARY KEY (`sequence_name`)
+);
+INSERT INTO `id_generators` (`sequence_name`, `next_val`)
+  SELECT 'documents', IFNULL(MAX(`id`), 0) + 101 FROM `documents`;
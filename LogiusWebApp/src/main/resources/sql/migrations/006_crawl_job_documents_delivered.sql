@@ -0,0 +1,6 @@
+-- Heritrix reports when all documents of a crawl job have been delivered, and the job is finished only after that.
+-- Jobs which have been started before are treated as delivered, as their crawlers don't report it.
+ALTER TABLE `crawl_jobs`
+  ADD COLUMN `documents_delivered` TINYINT(1) NOT NULL DEFAULT '0';
+
+UPDATE `crawl_jobs` SET `documents_delivered` = 1;
@@ -1,6 +1,9 @@
+DROP TABLE IF EXISTS `document_error_statistics`;
+DROP TABLE IF EXISTS `document_statistics`;
 DROP TABLE IF EXISTS `pdf_properties_namespaces`;
 DROP TABLE IF EXISTS `pdf_properties_xpath`;
 DROP TABLE IF EXISTS `pdf_properties`;
+DROP TABLE IF EXISTS `id_generators`;
 DROP TABLE IF EXISTS `documents_validation_errors`;
 DROP TABLE IF EXISTS `validation_errors`;
 DROP TABLE IF EXISTS `pdf_validation_jobs_queue`;
@@ -18,16 +21,18 @@ CREATE TABLE `crawl_job_requests` (
   PRIMARY KEY (`id`)
 );
 CREATE TABLE `crawl_jobs` (
-  `domain`          VARCHAR(255) NOT NULL,
-  `heritrix_job_id` VARCHAR(36)  NOT NULL,
-  `job_url`         VARCHAR(255)          DEFAULT NULL,
-  `start_time`      DATETIME              DEFAULT NULL,
-  `finish_time`     DATETIME              DEFAULT NULL,
-  `is_finished`     TINYINT(1)            DEFAULT '0',
-  `job_status`      VARCHAR(10)           DEFAULT NULL,
-  `crawl_service`   VARCHAR(10)  NOT NULL,
+  `domain`              VARCHAR(255) NOT NULL,
+  `heritrix_job_id`     VARCHAR(36)  NOT NULL,
+  `job_url`             VARCHAR(255)          DEFAULT NULL,
+  `start_time`          DATETIME              DEFAULT NULL,
+  `finish_time`         DATETIME              DEFAULT NULL,
+  `is_finished`         TINYINT(1)            DEFAULT '0',
+  `job_status`          VARCHAR(10)           DEFAULT NULL,
+  `crawl_service`       VARCHAR(10)  NOT NULL,
+  `documents_delivered` TINYINT(1)   NOT NULL DEFAULT '0',
   PRIMARY KEY (`domain`),
-  UNIQUE KEY `crawl_jobs_domain_uindex` (`heritrix_job_id`)
+  UNIQUE KEY `crawl_jobs_domain_uindex` (`heritrix_job_id`),
+  KEY `crawl_jobs_status_index` (`job_status`)
 );
 CREATE TRIGGER crawl_jobs_B4_INSERT BEFORE INSERT ON `crawl_jobs`
     FOR EACH ROW SET NEW.start_time = IFNULL(NEW.start_time, NOW());
@@ -44,33 +49,41 @@ CREATE TABLE `crawl_job_requests_crawl_jobs` (
     ON UPDATE CASCADE
 );
 CREATE TABLE `documents` (
-  `document_url`     VARCHAR(255)              NOT NULL,
+  `id`               BIGINT(20)                NOT NULL,
+  `document_url`     VARCHAR(2048)             NOT NULL,
+  `url_hash`         CHAR(40)                  NOT NULL,
   `crawl_job_domain` VARCHAR(255)              NOT NULL,
   `last_modified`    DATETIME     DEFAULT NULL,
   `document_type`    VARCHAR(127) DEFAULT NULL,
   `document_status`  ENUM ('OPEN', 'NOT_OPEN'),
-  PRIMARY KEY (`document_url`),
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `documents_url_hash_uindex` (`url_hash`),
+  KEY `documents_domain_type_status_modified_index` (`crawl_job_domain`, `document_type`, `document_status`, `last_modified`),
+  KEY `documents_domain_modified_index` (`crawl_job_domain`, `last_modified`),
   CONSTRAINT `documents_crawl_jobs_domain_fk` FOREIGN KEY (`crawl_job_domain`) REFERENCES `crawl_jobs` (`domain`)
     ON DELETE CASCADE
     ON UPDATE CASCADE
 );
 CREATE TABLE `document_properties` (
-  `document_url`   VARCHAR(255) NOT NULL,
+  `document_id`    BIGINT(20)   NOT NULL,
   `property_name`  VARCHAR(255) NOT NULL,
   `property_value` VARCHAR(255) DEFAULT NULL,
-  PRIMARY KEY (`document_url`, `property_name`),
-  CONSTRAINT `document_properties_documents_document_url_fk` FOREIGN KEY (`document_url`) REFERENCES `documents` (`document_url`)
+  PRIMARY KEY (`document_id`, `property_name`),
+  KEY `document_properties_name_value_index` (`property_name`, `property_value`),
+  CONSTRAINT `document_properties_documents_id_fk` FOREIGN KEY (`document_id`) REFERENCES `documents` (`id`)
     ON DELETE CASCADE
-    ON UPDATE CASCADE
 );
 CREATE TABLE `pdf_validation_jobs_queue` (
-  `document_url`       VARCHAR(255)                        NOT NULL,
+  `document_id`        BIGINT(20)                          NOT NULL,
   `filepath`           VARCHAR(255)                        NOT NULL,
   `validation_status`  ENUM ('IN_PROGRESS', 'NOT_STARTED', 'PAUSED', 'ABORTED') NOT NULL DEFAULT 'NOT_STARTED',
-  PRIMARY KEY (`document_url`),
-  CONSTRAINT `pdf_validation_jobs_queue_documents_document_url_fk` FOREIGN KEY (`document_url`) REFERENCES `documents` (`document_url`)
+  `lease_owner`        VARCHAR(255)                        DEFAULT NULL,
+  `lease_expires`      DATETIME                            DEFAULT NULL,
+  PRIMARY KEY (`document_id`),
+  KEY `pdf_validation_jobs_queue_status_lease_index` (`validation_status`, `lease_expires`),
+  KEY `pdf_validation_jobs_queue_owner_status_index` (`lease_owner`, `validation_status`),
+  CONSTRAINT `pdf_validation_jobs_queue_documents_id_fk` FOREIGN KEY (`document_id`) REFERENCES `documents` (`id`)
     ON DELETE CASCADE
-    ON UPDATE CASCADE
 );
 CREATE TABLE `validation_errors` (
   `id`            INT(11) NOT NULL AUTO_INCREMENT,
@@ -79,17 +92,52 @@ CREATE TABLE `validation_errors` (
   `clause`        VARCHAR(16)      DEFAULT NULL,
   `test_number`   VARCHAR(4)       DEFAULT NULL,
   `description`   VARCHAR(2048)     DEFAULT NULL,
+  `description_hash` CHAR(40)       DEFAULT NULL,
   PRIMARY KEY (`id`),
-  UNIQUE KEY `validation_errors_specification_clause_test_number_pk` (`specification`, `clause`, `test_number`)
+  UNIQUE KEY `validation_errors_specification_clause_test_number_pk` (`specification`, `clause`, `test_number`),
+  UNIQUE KEY `validation_errors_description_hash_uindex` (`description_hash`)
 );
 CREATE TABLE `documents_validation_errors` (
-  `document_url` VARCHAR(255) NOT NULL DEFAULT '',
+  `document_id`  BIGINT(20)   NOT NULL,
   `error_id`     INT(11)      NOT NULL DEFAULT '0',
-  PRIMARY KEY (`document_url`, `error_id`),
-  CONSTRAINT `documents_validation_errors_documents_document_url_fk` FOREIGN KEY (`document_url`) REFERENCES `documents` (`document_url`)
+  PRIMARY KEY (`document_id`, `error_id`),
+  CONSTRAINT `documents_validation_errors_documents_id_fk` FOREIGN KEY (`document_id`) REFERENCES `documents` (`id`)
+    ON DELETE CASCADE,
+  CONSTRAINT `documents_validation_errors_validation_errors_id_fk` FOREIGN KEY (`error_id`) REFERENCES `validation_errors` (`id`)
+    ON DELETE CASCADE
+    ON UPDATE CASCADE
+);
+CREATE TABLE `document_statistics` (
+  `dimensions_hash`  CHAR(40)     NOT NULL,
+  `crawl_job_domain` VARCHAR(255) NOT NULL,
+  `month`            INT(11)      NOT NULL,
+  `document_type`    VARCHAR(127) NOT NULL DEFAULT '',
+  `document_status`  VARCHAR(16)  NOT NULL DEFAULT '',
+  `flavour`          VARCHAR(255) NOT NULL DEFAULT '',
+  `version`          VARCHAR(255) NOT NULL DEFAULT '',
+  `producer`         VARCHAR(255) NOT NULL DEFAULT '',
+  `document_count`   BIGINT(20)   NOT NULL DEFAULT '0',
+  PRIMARY KEY (`dimensions_hash`),
+  KEY `document_statistics_domain_month_index` (`crawl_job_domain`, `month`),
+  CONSTRAINT `document_statistics_crawl_jobs_domain_fk` FOREIGN KEY (`crawl_job_domain`) REFERENCES `crawl_jobs` (`domain`)
+    ON DELETE CASCADE
+    ON UPDATE CASCADE
+);
+CREATE TABLE `document_error_statistics` (
+  `dimensions_hash`  CHAR(40)     NOT NULL,
+  `crawl_job_domain` VARCHAR(255) NOT NULL,
+  `month`            INT(11)      NOT NULL,
+  `flavour`          VARCHAR(255) NOT NULL DEFAULT '',
+  `version`          VARCHAR(255) NOT NULL DEFAULT '',
+  `producer`         VARCHAR(255) NOT NULL DEFAULT '',
+  `error_id`         INT(11)      NOT NULL,
+  `document_count`   BIGINT(20)   NOT NULL DEFAULT '0',
+  PRIMARY KEY (`dimensions_hash`),
+  KEY `document_error_statistics_domain_month_index` (`crawl_job_domain`, `month`),
+  CONSTRAINT `document_error_statistics_crawl_jobs_domain_fk` FOREIGN KEY (`crawl_job_domain`) REFERENCES `crawl_jobs` (`domain`)
     ON DELETE CASCADE
     ON UPDATE CASCADE,
-  CONSTRAINT `documents_validation_errors_validation_errors_id_fk` FOREIGN KEY (`error_id`) REFERENCES `validation_errors` (`id`)
+  CONSTRAINT `document_error_statistics_validation_errors_id_fk` FOREIGN KEY (`error_id`) REFERENCES `validation_errors` (`id`)
     ON DELETE CASCADE
     ON UPDATE CASCADE
 );
@@ -109,3 +157,8 @@ CREATE TABLE `pdf_properties_namespaces` (
   `namespace_url`    VARCHAR(255) NOT NULL,
   PRIMARY KEY (`namespace_prefix`)
 );
+CREATE TABLE `id_generators` (
+  `sequence_name` VARCHAR(255) NOT NULL,
+  `next_val`      BIGINT(20)   DEFAULT NULL,
+  PRIMARY KEY (`sequence_name`)
+);
@@ -0,0 +1,414 @@
+package org.verapdf.crawler.db;
+
+import io.dropwizard.testing.junit.DAOTestRule;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.verapdf.crawler.api.crawling.CrawlJob;
+import org.verapdf.crawler.api.crawling.CrawlRequest;
+import org.verapdf.crawler.api.document.DomainDocument;
+import org.verapdf.crawler.api.report.PdfPropertyStatistics;
+import org.verapdf.crawler.api.validation.ValidationJob;
+import org.verapdf.crawler.api.validation.error.RuleViolationError;
+import org.verapdf.crawler.api.validation.error.ValidationError;
+import org.verapdf.crawler.api.validation.settings.Namespace;
+import org.verapdf.crawler.api.validation.settings.PdfProperty;
+import org.verapdf.crawler.tools.HashUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that report, listing and claim queries are answered by indexes of sql/schema.sql rather than by full scans.
+ * Queries are sent by the DAOs to H2 in MySQL mode, which is seeded with a few domains, and plans of all statements
+ * sent during a call are taken with EXPLAIN.
+ */
+public class QueryPlanTest {
+
+    private static final String URL = "jdbc:h2:mem:logius;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private static final String[] DOMAINS = {"first.com", "second.com", "third.com"};
+    private static final int DOCUMENTS_PER_DOMAIN = 500;
+    private static final int ERRORS = 60;
+    private static final int MONTHS = 24;
+    private static final String[] TYPES = {"pdf", "doc", "docx", "odt"};
+
+    private static final List<String> statements = Collections.synchronizedList(new ArrayList<>());
+
+    @Rule
+    public DAOTestRule database = DAOTestRule.newBuilder()
+            .setHbm2DdlAuto("none")
+            .setProperty("hibernate.connection.provider_class", RecordingConnectionProvider.class.getName())
+            .addEntityClass(CrawlJob.class)
+            .addEntityClass(CrawlRequest.class)
+            .addEntityClass(DomainDocument.class)
+            .addEntityClass(ValidationJob.class)
+            .addEntityClass(ValidationError.class)
+            .addEntityClass(RuleViolationError.class)
+            .addEntityClass(PdfProperty.class)
+            .addEntityClass(Namespace.class)
+            .build();
+
+    private DocumentDAO documentDAO;
+    private DocumentStatisticsDAO statisticsDAO;
+    private ValidationJobDAO validationJobDAO;
+
+    @BeforeClass
+    public static void createDatabase() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL);
+             Statement statement = connection.createStatement()) {
+            for (String sql : readSchema().split(";")) {
+                // the trigger is MySQL syntax, and it only fills start time of jobs
+                if (!sql.trim().isEmpty() && !sql.contains("TRIGGER")) {
+                    statement.execute(sql);
+                }
+            }
+            // claims check the server version, which the alias emulates as MySQL 5.7 without SKIP LOCKED
+            statement.execute("CREATE ALIAS IF NOT EXISTS VERSION FOR \"" + QueryPlanTest.class.getName() + ".version\"");
+            seed(connection);
+            statement.execute("ANALYZE");
+        }
+    }
+
+    public static String version() {
+        return "5.7.24";
+    }
+
+    @Before
+    public void setUp() {
+        documentDAO = new DocumentDAO(database.getSessionFactory());
+        statisticsDAO = new DocumentStatisticsDAO(database.getSessionFactory());
+        validationJobDAO = new ValidationJobDAO(database.getSessionFactory());
+    }
+
+    @Test
+    public void reportStatisticsAreReadByDomainAndMonth() throws SQLException {
+        List<String> plans = explain(() -> {
+            statisticsDAO.getDocumentCounts(DOMAINS[0], 201701);
+            statisticsDAO.getPropertyStatistics(DOMAINS[0], PdfPropertyStatistics.PRODUCER_PROPERTY_NAME, null);
+        });
+        assertEquals(2, plans.size());
+        for (String plan : plans) {
+            assertIndexLookup(plan, "CRAWL_JOB_DOMAIN = ?1");
+        }
+
+        plans = explain(() -> statisticsDAO.getErrorsStatistics(DOMAINS[1], 201701, "1b", null, "producer"));
+        assertEquals(1, plans.size());
+        assertIndexLookup(plans.get(0), "CRAWL_JOB_DOMAIN = ?1");
+    }
+
+    @Test
+    public void documentsPageIsReadByDomain() throws SQLException {
+        List<String> plans = explain(() -> {
+            documentDAO.getPageEnd(DOMAINS[1], null, null, null, null, 100);
+            documentDAO.getPageEnd(DOMAINS[1], Arrays.asList(TYPES[0], TYPES[1]), DomainDocument.BaseTestResult.OPEN,
+                    month(6), 600L, 100);
+        });
+        assertEquals(2, plans.size());
+        for (String plan : plans) {
+            assertNoTableScan(plan);
+        }
+    }
+
+    @Test
+    public void documentsAreScrolledWithIndexLookups() throws Exception {
+        List<DomainDocument> documents = new ArrayList<>();
+        List<String> plans = explain(() -> documentDAO.scrollDocuments(DOMAINS[2], null, null, null, 1100L, 1200L,
+                Arrays.asList(PdfPropertyStatistics.FLAVOUR_PROPERTY_NAME, PdfPropertyStatistics.PRODUCER_PROPERTY_NAME),
+                documents::add));
+        assertEquals(100, documents.size());
+        assertTrue(documents.stream().allMatch(document -> document.getValidationErrors().stream()
+                .allMatch(error -> error instanceof RuleViolationError && error.getDescription().startsWith("Error "))));
+        assertEquals(1, plans.size());
+        assertNoTableScan(plans.get(0));
+
+        plans = explain(() -> documentDAO.scrollDocuments(DOMAINS[2], Collections.singletonList(TYPES[0]),
+                DomainDocument.BaseTestResult.NOT_OPEN, null, document -> {
+                }));
+        assertEquals(1, plans.size());
+        assertUsesIndex(plans.get(0), "DOCUMENTS_DOMAIN_TYPE_STATUS_MODIFIED_INDEX");
+    }
+
+    @Test
+    public void jobsAreClaimedByStatus() throws SQLException {
+        List<ValidationJob> jobs = new ArrayList<>();
+        List<String> plans = explain(() -> jobs.addAll(validationJobDAO.claim("test", 10, new Date())));
+        assertEquals(10, jobs.size());
+        assertFalse(plans.isEmpty());
+        assertTrue(plans.get(0), plans.stream().anyMatch(plan -> plan.contains("FOR UPDATE")));
+        for (String plan : plans) {
+            if (plan.contains("FOR UPDATE")) {
+                assertFalse(plan, plan.contains("SKIP LOCKED"));
+                assertUsesIndex(plan, "PDF_VALIDATION_JOBS_QUEUE_STATUS_LEASE_INDEX");
+            } else {
+                assertNoTableScan(plan);
+            }
+        }
+    }
+
+    private interface DatabaseCall {
+        void call() throws Exception;
+    }
+
+    /**
+     * @return plans of statements which have been sent to the database during the call, except for trivial ones
+     */
+    private List<String> explain(DatabaseCall call) throws SQLException {
+        statements.clear();
+        database.inTransaction(() -> {
+            try {
+                call.call();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        List<String> plans = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(URL)) {
+            for (String sql : new ArrayList<>(statements)) {
+                try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql);
+                     ResultSet result = statement.executeQuery()) {
+                    result.next();
+                    String plan = result.getString(1);
+                    if (plan.contains("FROM PUBLIC.") || plan.startsWith("UPDATE")) {
+                        plans.add(plan);
+                    }
+                }
+            }
+        }
+        return plans;
+    }
+
+    private static void assertUsesIndex(String plan, String index) {
+        assertTrue(plan, plan.contains("/* PUBLIC." + index + ":"));
+        assertNoTableScan(plan);
+    }
+
+    /**
+     * H2 creates its own indexes for foreign keys, which MySQL covers by the indexes of the schema, and it may prefer
+     * them, so only the lookup condition is checked where they compete.
+     */
+    private static void assertIndexLookup(String plan, String condition) {
+        assertTrue(plan, Pattern.compile("/\\* PUBLIC\\.\\w+: [^*]*" + Pattern.quote(condition)).matcher(plan).find());
+        assertNoTableScan(plan);
+    }
+
+    private static void assertNoTableScan(String plan) {
+        assertFalse(plan, plan.contains(".tableScan"));
+    }
+
+    private static String readSchema() throws IOException {
+        try (InputStream schema = QueryPlanTest.class.getResourceAsStream("/sql/schema.sql");
+             Scanner scanner = new Scanner(schema, StandardCharsets.UTF_8.name())) {
+            // H2 treats quoted names as case sensitive, while Hibernate and the DAOs don't quote them,
+            // and its enums are not mapped by Hibernate
+            return scanner.useDelimiter("\\A").next().replace("`", "").replaceAll("ENUM \\([^)]*\\)", "VARCHAR(16)");
+        }
+    }
+
+    private static Timestamp month(int index) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2016, Calendar.JANUARY, 15);
+        calendar.add(Calendar.MONTH, index);
+        return new Timestamp(calendar.getTimeInMillis());
+    }
+
+    private static void seed(Connection connection) throws SQLException {
+        try (PreparedStatement errors = connection.prepareStatement(
+                "INSERT INTO validation_errors (id, type, specification, clause, test_number, description) " +
+                        "VALUES (?, 'RULE_VIOLATION', 'ISO 19005-1:2005', ?, '1', ?)")) {
+            for (int id = 1; id <= ERRORS; id++) {
+                errors.setInt(1, id);
+                errors.setString(2, "6." + id);
+                errors.setString(3, "Error " + id);
+                errors.addBatch();
+            }
+            errors.executeBatch();
+        }
+        long documentId = 0;
+        for (String domain : DOMAINS) {
+            try (PreparedStatement job = connection.prepareStatement(
+                    "INSERT INTO crawl_jobs (domain, heritrix_job_id, start_time, job_status, crawl_service) " +
+                            "VALUES (?, ?, ?, 'FINISHED', 'HERITRIX')")) {
+                job.setString(1, domain);
+                job.setString(2, HashUtils.sha1Hex(domain).substring(0, 36));
+                job.setTimestamp(3, month(0));
+                job.execute();
+            }
+            try (PreparedStatement document = connection.prepareStatement(
+                    "INSERT INTO documents (id, document_url, url_hash, crawl_job_domain, last_modified, document_type, " +
+                            "document_status) VALUES (?, ?, ?, ?, ?, ?, ?)");
+                 PreparedStatement property = connection.prepareStatement(
+                         "INSERT INTO document_properties (document_id, property_name, property_value) VALUES (?, ?, ?)");
+                 PreparedStatement error = connection.prepareStatement(
+                         "INSERT INTO documents_validation_errors (document_id, error_id) VALUES (?, ?)");
+                 PreparedStatement job = connection.prepareStatement(
+                         "INSERT INTO pdf_validation_jobs_queue (document_id, filepath, validation_status) VALUES (?, ?, ?)")) {
+                for (int index = 0; index < DOCUMENTS_PER_DOMAIN; index++) {
+                    long id = ++documentId;
+                    String url = "http://" + domain + "/" + id + ".pdf";
+                    document.setLong(1, id);
+                    document.setString(2, url);
+                    document.setString(3, HashUtils.sha1Hex(url));
+                    document.setString(4, domain);
+                    document.setTimestamp(5, month(index % MONTHS));
+                    document.setString(6, TYPES[index % TYPES.length]);
+                    document.setString(7, index % 3 == 0 ? "OPEN" : "NOT_OPEN");
+                    document.addBatch();
+
+                    addProperty(property, id, PdfPropertyStatistics.FLAVOUR_PROPERTY_NAME, index % 2 == 0 ? "1b" : "2b");
+                    addProperty(property, id, PdfPropertyStatistics.VERSION_PROPERTY_NAME, "1." + index % 8);
+                    addProperty(property, id, PdfPropertyStatistics.PRODUCER_PROPERTY_NAME, "producer " + index % 40);
+
+                    for (int number = 0; number < index % 4; number++) {
+                        error.setLong(1, id);
+                        error.setInt(2, (index + number * 7) % ERRORS + 1);
+                        error.addBatch();
+                    }
+
+                    job.setLong(1, id);
+                    job.setString(2, "/tmp/" + id + ".pdf");
+                    job.setString(3, index % 10 == 0 ? "NOT_STARTED" : index % 10 == 1 ? "IN_PROGRESS" : "PAUSED");
+                    job.addBatch();
+                }
+                document.executeBatch();
+                property.executeBatch();
+                error.executeBatch();
+                job.executeBatch();
+            }
+            seedStatistics(connection, domain);
+        }
+    }
+
+    private static void addProperty(PreparedStatement property, long documentId, String name, String value) throws SQLException {
+        property.setLong(1, documentId);
+        property.setString(2, name);
+        property.setString(3, value);
+        property.addBatch();
+    }
+
+    private static void seedStatistics(Connection connection, String domain) throws SQLException {
+        try (PreparedStatement documents = connection.prepareStatement(
+                "INSERT INTO document_statistics (dimensions_hash, crawl_job_domain, month, document_type, " +
+                        "document_status, flavour, version, producer, document_count) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement errors = connection.prepareStatement(
+                     "INSERT INTO document_error_statistics (dimensions_hash, crawl_job_domain, month, flavour, " +
+                             "version, producer, error_id, document_count) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int month = 0; month < MONTHS; month++) {
+                int yearMonth = 201601 + month / 12 * 100 + month % 12;
+                for (String type : TYPES) {
+                    for (int producer = 0; producer < 5; producer++) {
+                        String dimensions = domain + yearMonth + type + producer;
+                        documents.setString(1, HashUtils.sha1Hex(dimensions));
+                        documents.setString(2, domain);
+                        documents.setInt(3, yearMonth);
+                        documents.setString(4, type);
+                        documents.setString(5, producer % 2 == 0 ? "OPEN" : "NOT_OPEN");
+                        documents.setString(6, "1b");
+                        documents.setString(7, "1.4");
+                        documents.setString(8, "producer " + producer);
+                        documents.setLong(9, month + producer + 1);
+                        documents.addBatch();
+
+                        errors.setString(1, HashUtils.sha1Hex(dimensions + "error"));
+                        errors.setString(2, domain);
+                        errors.setInt(3, yearMonth);
+                        errors.setString(4, "1b");
+                        errors.setString(5, "1.4");
+                        errors.setString(6, "producer " + producer);
+                        errors.setInt(7, (month * TYPES.length + producer) % ERRORS + 1);
+                        errors.setLong(8, producer + 1);
+                        errors.addBatch();
+                    }
+                }
+            }
+            documents.executeBatch();
+            errors.executeBatch();
+        }
+    }
+
+    /**
+     * Connects Hibernate to the H2 database, records statements which are prepared, and ignores negative fetch sizes,
+     * by which the DAOs make the MySQL driver stream results, but which H2 rejects.
+     */
+    public static class RecordingConnectionProvider implements ConnectionProvider {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = DriverManager.getConnection(URL);
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(connection, method, args);
+                        if (method.getName().equals("prepareStatement")) {
+                            statements.add((String) args[0]);
+                            return wrap((PreparedStatement) result);
+                        }
+                        return result;
+                    });
+        }
+
+        private static PreparedStatement wrap(PreparedStatement statement) {
+            return (PreparedStatement) Proxy.newProxyInstance(RecordingConnectionProvider.class.getClassLoader(),
+                    new Class[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("setFetchSize") && (Integer) args[0] < 0) {
+                            return null;
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        @Override
+        public void closeConnection(Connection connection) throws SQLException {
+            connection.close();
+        }
+
+        @Override
+        public boolean supportsAggressiveRelease() {
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public boolean isUnwrappableAs(Class unwrapType) {
+            return false;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> unwrapType) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.verapdf.service;
+
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.verapdf.crawler.api.validation.VeraPDFBatchItem;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates a list of files in a single request. Files are validated in free slots as they become available,
+ * and the status of every file is written to the response as a separate JSON line as soon as it is finished.
+ */
+@Path("/batch")
+public class BatchResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchResource.class);
+
+    static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    private static final long FREE_SLOT_CHECK_INTERVAL = 1000;
+    // empty lines are sent while no file is finished, so the connection isn't closed by socket timeouts
+    private static final long KEEP_ALIVE_INTERVAL = 30 * 1000;
+
+    private final ValidationJobManager jobManager;
+    private final ObjectMapper mapper;
+
+    BatchResource(ValidationJobManager jobManager, ObjectMapper mapper) {
+        this.jobManager = jobManager;
+        this.mapper = mapper;
+    }
+
+    @POST
+    @Timed
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(NDJSON_MEDIA_TYPE)
+    public Response validateBatch(@NotNull @Valid List<VeraPDFBatchItem> items) {
+        Set<String> ids = new HashSet<>();
+        for (VeraPDFBatchItem item : items) {
+            if (!ids.add(item.getId()) || jobManager.getTask(item.getId()) != null) {
+                throw new WebApplicationException("Validation job " + item.getId() + " already exists", Response.Status.CONFLICT);
+            }
+        }
+        logger.info("Starting processing of batch of " + items.size() + " files");
+        StreamingOutput output = stream -> validate(items, stream);
+        return Response.ok(output).build();
+    }
+
+    private void validate(List<VeraPDFBatchItem> items, OutputStream output) throws IOException {
+        Deque<VeraPDFBatchItem> pending = new ArrayDeque<>(items);
+        BlockingQueue<ValidationTask> finished = new LinkedBlockingQueue<>();
+        List<ValidationTask> started = new ArrayList<>();
+        try {
+            int remaining = items.size();
+            long lastWriteTime = System.currentTimeMillis();
+            while (remaining > 0) {
+                // slots are shared with other clients, so the batch takes the ones which are free at the moment
+                while (!pending.isEmpty()) {
+                    VeraPDFBatchItem item = pending.peek();
+                    ValidationTask task = jobManager.submit(item.getId(), item.getFilename(), finished::add);
+                    if (task == null) {
+                        break;
+                    }
+                    pending.poll();
+                    started.add(task);
+                }
+                ValidationTask task = finished.poll(FREE_SLOT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                if (task != null) {
+                    output.write(mapper.writeValueAsBytes(task.getStatus()));
+                    output.write('\n');
+                    output.flush();
+                    // result has been delivered, so there is no need to keep it for status requests
+                    jobManager.removeTask(task.getId());
+                    --remaining;
+                    lastWriteTime = System.currentTimeMillis();
+                } else if (System.currentTimeMillis() - lastWriteTime >= KEEP_ALIVE_INTERVAL) {
+                    output.write('\n');
+                    output.flush();
+                    lastWriteTime = System.currentTimeMillis();
+                }
+            }
+            logger.info("Batch of " + items.size() + " files has been processed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch validation has been interrupted");
+        } finally {
+            // the client may have gone away, so nobody needs the remaining results
+            for (ValidationTask task : started) {
+                jobManager.removeTask(task.getId());
+            }
+        }
+    }
+}
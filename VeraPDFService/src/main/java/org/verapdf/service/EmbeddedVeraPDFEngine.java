@@ -0,0 +1,85 @@
+package org.verapdf.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.verapdf.core.VeraPDFException;
+import org.verapdf.features.FeatureExtractorConfig;
+import org.verapdf.features.FeatureFactory;
+import org.verapdf.metadata.fixer.FixerFactory;
+import org.verapdf.pdfa.VeraGreenfieldFoundryProvider;
+import org.verapdf.pdfa.validation.validators.ValidatorConfig;
+import org.verapdf.pdfa.validation.validators.ValidatorFactory;
+import org.verapdf.processor.BatchProcessingHandler;
+import org.verapdf.processor.BatchProcessor;
+import org.verapdf.processor.FormatOption;
+import org.verapdf.processor.ProcessorConfig;
+import org.verapdf.processor.ProcessorFactory;
+import org.verapdf.processor.TaskType;
+import org.verapdf.processor.plugins.PluginsCollectionConfig;
+
+import javax.xml.bind.JAXBException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.EnumSet;
+
+/**
+ * Runs veraPDF validation inside the service JVM. The library and validation profiles are loaded once,
+ * and every validation thread reuses its own processor, so no JVM is started per document.
+ */
+class EmbeddedVeraPDFEngine {
+
+	private static final Logger logger = LoggerFactory.getLogger(EmbeddedVeraPDFEngine.class);
+
+	private static final String VALIDATOR_CONFIG_NAME = "validator.xml";
+	private static final String FEATURES_CONFIG_NAME = "features.xml";
+	// same as --maxfailuresdisplayed option of the CLI
+	private static final int MAX_FAILURES_DISPLAYED = 1;
+
+	private final ProcessorConfig processorConfig;
+	// processors keep their state between items, so they are not shared between validation threads
+	private final ThreadLocal<BatchProcessor> processors;
+
+	EmbeddedVeraPDFEngine(File configFolder) throws IOException, JAXBException {
+		VeraGreenfieldFoundryProvider.initialise();
+		ValidatorConfig validatorConfig = loadValidatorConfig(new File(configFolder, VALIDATOR_CONFIG_NAME));
+		FeatureExtractorConfig featuresConfig = loadFeaturesConfig(new File(configFolder, FEATURES_CONFIG_NAME));
+		this.processorConfig = ProcessorFactory.fromValues(validatorConfig, featuresConfig,
+				PluginsCollectionConfig.defaultConfig(), FixerFactory.defaultConfig(),
+				EnumSet.of(TaskType.VALIDATE, TaskType.EXTRACT_FEATURES));
+		this.processors = ThreadLocal.withInitial(() -> ProcessorFactory.fileBatchProcessor(this.processorConfig));
+		logger.info("Embedded veraPDF engine has been initialized with configuration from " + configFolder.getAbsolutePath());
+	}
+
+	private static ValidatorConfig loadValidatorConfig(File config) throws IOException, JAXBException {
+		if (!config.isFile()) {
+			logger.info("Validator configuration " + config.getAbsolutePath() + " not found, using defaults");
+			return ValidatorFactory.defaultConfig();
+		}
+		try (InputStream is = new FileInputStream(config)) {
+			return ValidatorFactory.createConfig(is);
+		}
+	}
+
+	private static FeatureExtractorConfig loadFeaturesConfig(File config) throws IOException, JAXBException {
+		if (!config.isFile()) {
+			logger.info("Features configuration " + config.getAbsolutePath() + " not found, using defaults");
+			return FeatureFactory.defaultConfig();
+		}
+		try (InputStream is = new FileInputStream(config)) {
+			return FeatureFactory.configFromXml(is);
+		}
+	}
+
+	/**
+	 * Validates the file and writes machine readable report, the same as the CLI produces with --format mrr.
+	 */
+	void generateReport(File file, OutputStream report) throws VeraPDFException {
+		BatchProcessingHandler handler = ProcessorFactory.getHandler(FormatOption.MRR, false, report,
+				MAX_FAILURES_DISPLAYED, false);
+		this.processors.get().process(Collections.singletonList(file), handler);
+	}
+}
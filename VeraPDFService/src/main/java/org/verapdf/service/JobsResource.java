@@ -0,0 +1,57 @@
+package org.verapdf.service;
+
+import com.codahale.metrics.annotation.Timed;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.verapdf.crawler.api.validation.VeraPDFServiceStatus;
+
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+
+@Path("/jobs")
+@Produces(MediaType.APPLICATION_JSON)
+public class JobsResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobsResource.class);
+
+    private final ValidationJobManager jobManager;
+
+    JobsResource(ValidationJobManager jobManager) {
+        this.jobManager = jobManager;
+    }
+
+    @POST
+    @Timed
+    public Response startJob(String filename) {
+        logger.info("Starting processing of " + filename);
+        ValidationTask task = jobManager.submit(filename);
+        if (task == null) {
+            return Response.status(HttpStatus.SC_LOCKED).build();
+        }
+        return Response.accepted(task.getStatus()).location(URI.create("jobs/" + task.getId())).build();
+    }
+
+    @GET
+    @Path("/{id}")
+    @Timed
+    public VeraPDFServiceStatus getJobStatus(@PathParam("id") String id) {
+        ValidationTask task = jobManager.getTask(id);
+        if (task == null) {
+            throw new WebApplicationException("Validation job " + id + " not found", Response.Status.NOT_FOUND);
+        }
+        return task.getStatus();
+    }
+
+    @DELETE
+    @Path("/{id}")
+    @Timed
+    public void discardJob(@PathParam("id") String id) {
+        logger.info("Terminating job " + id);
+        if (jobManager.removeTask(id) == null) {
+            throw new WebApplicationException("Validation job " + id + " not found", Response.Status.NOT_FOUND);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.verapdf.service;
+
+import org.verapdf.crawler.api.validation.error.RuleViolationError;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parts of veraPDF machine readable report needed to build validation result.
+ */
+class MRRReport {
+
+	private String exceptionMessage;
+	private String compliant;
+	private final List<RuleViolationError> failedRules = new ArrayList<>();
+	private final Map<String, String> values = new HashMap<>();
+
+	String getExceptionMessage() {
+		return exceptionMessage;
+	}
+
+	void setExceptionMessage(String exceptionMessage) {
+		this.exceptionMessage = exceptionMessage;
+	}
+
+	boolean isCompliant() {
+		return Boolean.parseBoolean(compliant);
+	}
+
+	void setCompliant(String compliant) {
+		this.compliant = compliant;
+	}
+
+	List<RuleViolationError> getFailedRules() {
+		return failedRules;
+	}
+
+	void addFailedRule(RuleViolationError rule) {
+		this.failedRules.add(rule);
+	}
+
+	/**
+	 * @return string value of the given property path, empty string if the path matches nothing
+	 */
+	String getValue(String expression) {
+		String value = values.get(expression);
+		return value == null ? "" : value;
+	}
+
+	void setValue(String expression, String value) {
+		values.put(expression, value);
+	}
+}
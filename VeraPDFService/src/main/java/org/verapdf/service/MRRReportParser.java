@@ -0,0 +1,224 @@
+package org.verapdf.service;
+
+import org.verapdf.crawler.api.validation.error.RuleViolationError;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.namespace.QName;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Single pass StAX parser of veraPDF machine readable report. Memory usage doesn't depend on the report size:
+ * only the current chain of elements and the values being collected are kept.
+ */
+class MRRReportParser {
+
+	// longer values are cut, veraPDF processor prefers values shorter than 255 characters anyway
+	private static final int MAX_VALUE_LENGTH = 64 * 1024;
+
+	private static final String BASE_PATH = "/report/jobs/job/";
+	private static final String VALIDATION_REPORT_PATH = BASE_PATH + "validationReport";
+	private static final ReportPath EXCEPTION_PATH = compileBuiltIn(BASE_PATH + "taskResult/exceptionMessage");
+	private static final ReportPath COMPLIANT_PATH = compileBuiltIn(VALIDATION_REPORT_PATH + "/@isCompliant");
+	private static final ReportPath RULE_PATH = compileBuiltIn(VALIDATION_REPORT_PATH + "/details/rule");
+	private static final QName STATUS = new QName("status");
+	private static final QName SPECIFICATION = new QName("specification");
+	private static final QName CLAUSE = new QName("clause");
+	private static final QName TEST_NUMBER = new QName("testNumber");
+	private static final String DESCRIPTION = "description";
+
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+	private final List<ReportPath> paths = new ArrayList<>();
+
+	MRRReportParser(Collection<ReportPath> propertyPaths) {
+		this.paths.add(EXCEPTION_PATH);
+		this.paths.add(COMPLIANT_PATH);
+		this.paths.add(RULE_PATH);
+		this.paths.addAll(propertyPaths);
+	}
+
+	MRRReport parse(InputStream report) throws XMLStreamException {
+		MRRReport result = new MRRReport();
+		XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(report);
+		try {
+			new Parsing(result).run(reader);
+		} finally {
+			reader.close();
+		}
+		return result;
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	private static ReportPath compileBuiltIn(String expression) {
+		ReportPath path = ReportPath.compile(expression, Collections.emptyMap());
+		if (path == null) {
+			throw new IllegalStateException("Can't compile " + expression);
+		}
+		return path;
+	}
+
+	/**
+	 * State of a single parsing.
+	 */
+	private class Parsing {
+		private final MRRReport result;
+		// for each open element indexes of paths whose steps match the chain of elements up to it
+		private final Deque<int[]> matchedPaths = new ArrayDeque<>();
+		private final Set<String> completedPaths = new HashSet<>();
+		private final List<Capture> captures = new ArrayList<>();
+		private FailedRule currentRule;
+
+		private Parsing(MRRReport result) {
+			this.result = result;
+		}
+
+		private void run(XMLStreamReader reader) throws XMLStreamException {
+			int[] allPaths = new int[paths.size()];
+			for (int i = 0; i < allPaths.length; ++i) {
+				allPaths[i] = i;
+			}
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+					case XMLStreamConstants.START_ELEMENT:
+						int depth = matchedPaths.size();
+						int[] parentPaths = depth == 0 ? allPaths : matchedPaths.peek();
+						matchedPaths.push(startElement(reader, depth, parentPaths));
+						break;
+					case XMLStreamConstants.END_ELEMENT:
+						matchedPaths.pop();
+						endElement(matchedPaths.size());
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.SPACE:
+						if (!captures.isEmpty()) {
+							characters(reader);
+						}
+						break;
+					default:
+						break;
+				}
+			}
+		}
+
+		private int[] startElement(XMLStreamReader reader, int depth, int[] parentPaths) {
+			int[] matched = new int[parentPaths.length];
+			int matchedCount = 0;
+			for (int index : parentPaths) {
+				ReportPath path = paths.get(index);
+				if (path.getLength() > depth && !completedPaths.contains(path.getExpression())
+						&& path.matches(depth, reader)) {
+					if (path.getLength() == depth + 1) {
+						pathMatched(path, reader, depth);
+					} else {
+						matched[matchedCount++] = index;
+					}
+				}
+			}
+			if (currentRule != null && currentRule.description == null && depth == currentRule.depth + 1
+					&& DESCRIPTION.equals(reader.getLocalName())) {
+				Capture capture = new Capture(null, depth);
+				currentRule.description = capture.value;
+				captures.add(capture);
+			}
+			return Arrays.copyOf(matched, matchedCount);
+		}
+
+		private void pathMatched(ReportPath path, XMLStreamReader reader, int depth) {
+			if (path == RULE_PATH) {
+				if ("failed".equalsIgnoreCase(ReportPath.getAttributeValue(reader, STATUS))) {
+					currentRule = new FailedRule(depth,
+							ReportPath.getAttributeValue(reader, SPECIFICATION),
+							ReportPath.getAttributeValue(reader, CLAUSE),
+							ReportPath.getAttributeValue(reader, TEST_NUMBER));
+				}
+			} else if (path.isAttributePath()) {
+				String value = path.getAttributeValue(reader);
+				if (value != null) {
+					// as in XPath string() function only the first matched node matters
+					setValue(path, value);
+				}
+			} else {
+				completedPaths.add(path.getExpression());
+				captures.add(new Capture(path, depth));
+			}
+		}
+
+		private void endElement(int depth) {
+			Iterator<Capture> iterator = captures.iterator();
+			while (iterator.hasNext()) {
+				Capture capture = iterator.next();
+				if (capture.depth == depth) {
+					if (capture.path != null) {
+						setValue(capture.path, capture.value.toString());
+					}
+					iterator.remove();
+				}
+			}
+			if (currentRule != null && currentRule.depth == depth) {
+				String description = currentRule.description == null ? null : currentRule.description.toString();
+				result.addFailedRule(new RuleViolationError(currentRule.specification, currentRule.clause,
+						currentRule.testNumber, description));
+				currentRule = null;
+			}
+		}
+
+		private void characters(XMLStreamReader reader) {
+			for (Capture capture : captures) {
+				int length = Math.min(reader.getTextLength(), MAX_VALUE_LENGTH - capture.value.length());
+				if (length > 0) {
+					capture.value.append(reader.getTextCharacters(), reader.getTextStart(), length);
+				}
+			}
+		}
+
+		private void setValue(ReportPath path, String value) {
+			completedPaths.add(path.getExpression());
+			if (path == EXCEPTION_PATH) {
+				result.setExceptionMessage(value);
+			} else if (path == COMPLIANT_PATH) {
+				result.setCompliant(value);
+			} else {
+				result.setValue(path.getExpression(), value);
+			}
+		}
+	}
+
+	private static class Capture {
+		private final ReportPath path;
+		private final int depth;
+		private final StringBuilder value = new StringBuilder();
+
+		private Capture(ReportPath path, int depth) {
+			this.path = path;
+			this.depth = depth;
+		}
+	}
+
+	private static class FailedRule {
+		private final int depth;
+		private final String specification;
+		private final String clause;
+		private final String testNumber;
+		private StringBuilder description;
+
+		private FailedRule(int depth, String specification, String clause, String testNumber) {
+			this.depth = depth;
+			this.specification = specification;
+			this.clause = clause;
+			this.testNumber = testNumber;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package org.verapdf.service;
+
+import javanet.staxutils.SimpleNamespaceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.verapdf.crawler.api.validation.settings.ValidationSettings;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validation settings compiled once when they are received, so that property paths are not parsed again
+ * for every validated document. Instances are immutable and shared by all validation slots.
+ */
+final class PreparedValidationSettings {
+
+	private static final Logger logger = LoggerFactory.getLogger(PreparedValidationSettings.class);
+
+	static final String FLAVOUR_PART_PROPERTY_NAME = "flavourPart";
+	static final String FLAVOUR_CONFORMANCE_PROPERTY_NAME = "flavourConformance";
+
+	private final Map<String, String> namespaces;
+	private final List<String> flavourPartXPaths;
+	private final List<String> flavourConformanceXPaths;
+	private final List<Map.Entry<String, List<String>>> otherProperties;
+	private final List<ReportPath> reportPaths;
+	// compiled XPath expressions are not thread safe, so every validation thread keeps its own ones
+	private final ThreadLocal<XPathCache> xpathCache = ThreadLocal.withInitial(XPathCache::new);
+
+	PreparedValidationSettings(ValidationSettings settings) {
+		this.namespaces = settings.getNamespaces() == null
+				? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(settings.getNamespaces()));
+		Map<String, List<String>> properties = settings.getProperties() == null
+				? new HashMap<>() : new HashMap<>(settings.getProperties());
+		this.flavourPartXPaths = copyXPaths(properties.remove(FLAVOUR_PART_PROPERTY_NAME));
+		this.flavourConformanceXPaths = copyXPaths(properties.remove(FLAVOUR_CONFORMANCE_PROPERTY_NAME));
+		List<Map.Entry<String, List<String>>> other = new ArrayList<>();
+		for (Map.Entry<String, List<String>> property : properties.entrySet()) {
+			other.add(new AbstractMap.SimpleImmutableEntry<>(property.getKey(), copyXPaths(property.getValue())));
+		}
+		this.otherProperties = Collections.unmodifiableList(other);
+		this.reportPaths = compileReportPaths();
+	}
+
+	private static List<String> copyXPaths(List<String> xpaths) {
+		return xpaths == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(xpaths));
+	}
+
+	private List<ReportPath> compileReportPaths() {
+		List<ReportPath> res = new ArrayList<>();
+		List<List<String>> allXPaths = new ArrayList<>();
+		allXPaths.add(this.flavourPartXPaths);
+		allXPaths.add(this.flavourConformanceXPaths);
+		for (Map.Entry<String, List<String>> property : this.otherProperties) {
+			allXPaths.add(property.getValue());
+		}
+		for (List<String> xpaths : allXPaths) {
+			for (String xpath : xpaths) {
+				ReportPath path = ReportPath.compile(xpath, this.namespaces);
+				if (path == null) {
+					logger.info("Property path " + xpath + " is not supported by streaming parser, reports will be parsed into DOM");
+					return null;
+				}
+				res.add(path);
+			}
+		}
+		return Collections.unmodifiableList(res);
+	}
+
+	List<String> getFlavourPartXPaths() {
+		return flavourPartXPaths;
+	}
+
+	List<String> getFlavourConformanceXPaths() {
+		return flavourConformanceXPaths;
+	}
+
+	List<Map.Entry<String, List<String>>> getOtherProperties() {
+		return otherProperties;
+	}
+
+	/**
+	 * @return compiled property paths or null if some of them can't be evaluated by the streaming parser
+	 */
+	List<ReportPath> getReportPaths() {
+		return reportPaths;
+	}
+
+	/**
+	 * @return expression compiled for the current thread
+	 */
+	XPathExpression getXPathExpression(String expression) throws XPathExpressionException {
+		return this.xpathCache.get().getExpression(expression);
+	}
+
+	private class XPathCache {
+		private final XPath xpath;
+		private final Map<String, XPathExpression> expressions = new HashMap<>();
+
+		private XPathCache() {
+			this.xpath = XPathFactory.newInstance().newXPath();
+			SimpleNamespaceContext nsc = new SimpleNamespaceContext();
+			for (Map.Entry<String, String> entry : namespaces.entrySet()) {
+				nsc.setPrefix(entry.getKey(), entry.getValue());
+			}
+			this.xpath.setNamespaceContext(nsc);
+		}
+
+		private XPathExpression getExpression(String expression) throws XPathExpressionException {
+			XPathExpression res = this.expressions.get(expression);
+			if (res == null) {
+				res = this.xpath.compile(expression);
+				this.expressions.put(expression, res);
+			}
+			return res;
+		}
+	}
+}
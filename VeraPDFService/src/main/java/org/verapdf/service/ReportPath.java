@@ -0,0 +1,195 @@
+package org.verapdf.service;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamReader;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Absolute XPath location path in a form which can be matched against a stream of StAX events.
+ * <p>
+ * Only the subset of XPath used for report properties is supported: child steps with optional
+ * attribute equality predicates, optionally followed by an attribute step, e.g.
+ * {@code /report/jobs/job/featuresReport/informationDict/entry[@key='ModDate']} or
+ * {@code /report/buildInformation/releaseDetails[@id='gui']/@version}.
+ */
+final class ReportPath {
+
+	private final String expression;
+	private final List<Step> steps;
+	private final QName attribute;
+
+	private ReportPath(String expression, List<Step> steps, QName attribute) {
+		this.expression = expression;
+		this.steps = steps;
+		this.attribute = attribute;
+	}
+
+	/**
+	 * @return compiled path or null if the expression is out of the supported subset
+	 */
+	static ReportPath compile(String expression, Map<String, String> namespaces) {
+		try {
+			return new Compiler(expression, namespaces).compile();
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	String getExpression() {
+		return expression;
+	}
+
+	int getLength() {
+		return steps.size();
+	}
+
+	boolean isAttributePath() {
+		return attribute != null;
+	}
+
+	/**
+	 * Checks the element the reader is positioned at against the step with the given index.
+	 */
+	boolean matches(int stepIndex, XMLStreamReader reader) {
+		Step step = steps.get(stepIndex);
+		if (!step.name.getLocalPart().equals(reader.getLocalName())
+				|| !step.name.getNamespaceURI().equals(nonNull(reader.getNamespaceURI()))) {
+			return false;
+		}
+		for (Map.Entry<QName, String> predicate : step.predicates) {
+			if (!predicate.getValue().equals(getAttributeValue(reader, predicate.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return value of the target attribute of the element the reader is positioned at or null if there is no such attribute
+	 */
+	String getAttributeValue(XMLStreamReader reader) {
+		return getAttributeValue(reader, attribute);
+	}
+
+	static String getAttributeValue(XMLStreamReader reader, QName name) {
+		for (int i = 0; i < reader.getAttributeCount(); ++i) {
+			if (name.getLocalPart().equals(reader.getAttributeLocalName(i))
+					&& name.getNamespaceURI().equals(nonNull(reader.getAttributeNamespace(i)))) {
+				return reader.getAttributeValue(i);
+			}
+		}
+		return null;
+	}
+
+	private static String nonNull(String value) {
+		return value == null ? "" : value;
+	}
+
+	private static final class Step {
+		private final QName name;
+		private final List<Map.Entry<QName, String>> predicates;
+
+		private Step(QName name, List<Map.Entry<QName, String>> predicates) {
+			this.name = name;
+			this.predicates = predicates;
+		}
+	}
+
+	private static final class Compiler {
+		private final String expression;
+		private final Map<String, String> namespaces;
+		private int position = 0;
+
+		private Compiler(String expression, Map<String, String> namespaces) {
+			this.expression = expression.trim();
+			this.namespaces = namespaces;
+		}
+
+		private ReportPath compile() {
+			List<Step> steps = new ArrayList<>();
+			QName attribute = null;
+			while (position < expression.length()) {
+				expect('/');
+				if (peek() == '@') {
+					++position;
+					attribute = readQName();
+					break;
+				}
+				QName name = readQName();
+				List<Map.Entry<QName, String>> predicates = new ArrayList<>();
+				while (peek() == '[') {
+					++position;
+					expect('@');
+					QName predicateAttribute = readQName();
+					expect('=');
+					predicates.add(new AbstractMap.SimpleImmutableEntry<>(predicateAttribute, readLiteral()));
+					expect(']');
+				}
+				steps.add(new Step(name, Collections.unmodifiableList(predicates)));
+			}
+			if (position != expression.length() || steps.isEmpty()) {
+				throw new IllegalArgumentException("Unsupported expression " + expression);
+			}
+			return new ReportPath(expression, Collections.unmodifiableList(steps), attribute);
+		}
+
+		private char peek() {
+			return position < expression.length() ? expression.charAt(position) : 0;
+		}
+
+		private void expect(char c) {
+			if (peek() != c) {
+				throw new IllegalArgumentException("Expected '" + c + "' at " + position + " in " + expression);
+			}
+			++position;
+		}
+
+		private QName readQName() {
+			String first = readName();
+			if (peek() != ':') {
+				return new QName("", first);
+			}
+			++position;
+			String local = readName();
+			String namespace = namespaces.get(first);
+			if (namespace == null) {
+				throw new IllegalArgumentException("Unknown namespace prefix " + first);
+			}
+			return new QName(namespace, local, first);
+		}
+
+		private String readName() {
+			int start = position;
+			while (position < expression.length()) {
+				char c = expression.charAt(position);
+				if (Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.') {
+					++position;
+				} else {
+					break;
+				}
+			}
+			if (start == position || !(Character.isLetter(expression.charAt(start)) || expression.charAt(start) == '_')) {
+				throw new IllegalArgumentException("Expected name at " + start + " in " + expression);
+			}
+			return expression.substring(start, position);
+		}
+
+		private String readLiteral() {
+			char quote = peek();
+			if (quote != '\'' && quote != '"') {
+				throw new IllegalArgumentException("Expected literal at " + position + " in " + expression);
+			}
+			int end = expression.indexOf(quote, position + 1);
+			if (end < 0) {
+				throw new IllegalArgumentException("Unterminated literal in " + expression);
+			}
+			String res = expression.substring(position + 1, end);
+			position = end + 1;
+			return res;
+		}
+	}
+}
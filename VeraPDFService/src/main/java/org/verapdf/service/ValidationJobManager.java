@@ -0,0 +1,177 @@
+package org.verapdf.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.verapdf.common.GracefulHttpClient;
+import org.verapdf.crawler.api.validation.VeraPDFServiceStatus;
+import org.verapdf.crawler.api.validation.settings.ValidationSettings;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a fixed number of validation slots, each of them able to run one veraPDF validation at a time.
+ */
+class ValidationJobManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ValidationJobManager.class);
+
+    // finished jobs which have never been deleted by the client are forgotten after this period
+    private static final long FINISHED_JOB_LIFETIME = 60 * 60 * 1000;
+    private static final int NOTIFICATION_MAX_ATTEMPTS = 3;
+    private static final int NOTIFICATION_ATTEMPT_INTERVAL = 5 * 1000;
+
+    private final int slots;
+    private final ExecutorService service;
+    private final ExecutorService notificationService = Executors.newSingleThreadExecutor();
+    private final String resultUrl;
+    private final ObjectMapper mapper;
+    private final String veraPDFPath;
+    private final EmbeddedVeraPDFEngine embeddedEngine;
+    private final VeraPDFWorkerPool workerPool;
+    private final File veraPDFErrorLog;
+    private final Map<String, ValidationTask> tasks = new ConcurrentHashMap<>();
+    // slots stay occupied until the validation thread returns, even if its task has already been aborted
+    private int occupiedSlots = 0;
+    // settings are compiled once and replaced as a whole, so running validations keep their own ones
+    private volatile PreparedValidationSettings validationSettings;
+
+    ValidationJobManager(int slots, String veraPDFPath, EmbeddedVeraPDFEngine embeddedEngine, VeraPDFWorkerPool workerPool,
+                         String veraPDFErrorFilePath, ValidationSettings validationSettings, String logiusUrl,
+                         ObjectMapper mapper) {
+        this.slots = slots;
+        this.resultUrl = logiusUrl == null ? null : logiusUrl + "/validation-service/result";
+        this.mapper = mapper;
+        this.service = Executors.newFixedThreadPool(slots);
+        this.veraPDFPath = veraPDFPath;
+        this.embeddedEngine = embeddedEngine;
+        this.workerPool = workerPool;
+        this.veraPDFErrorLog = new File(veraPDFErrorFilePath);
+        this.validationSettings = new PreparedValidationSettings(validationSettings);
+    }
+
+    void setValidationSettings(ValidationSettings validationSettings) {
+        this.validationSettings = new PreparedValidationSettings(validationSettings);
+    }
+
+    int getSlots() {
+        return slots;
+    }
+
+    /**
+     * Starts validation of the given file in a free slot.
+     *
+     * @return started task or null if all slots are occupied
+     */
+    ValidationTask submit(String filename) {
+        return submit(UUID.randomUUID().toString(), filename, null);
+    }
+
+    /**
+     * Starts validation of the given file in a free slot under the given id.
+     *
+     * @param listener called when the task is finished or aborted, null to push the result to the main application
+     * @return started task or null if all slots are occupied
+     */
+    synchronized ValidationTask submit(String id, String filename, Consumer<ValidationTask> listener) {
+        removeExpiredTasks();
+        if (occupiedSlots >= slots) {
+            return null;
+        }
+        ValidationTask task = new ValidationTask(id, filename, this, listener);
+        VeraPDFProcessor processor = new VeraPDFProcessor(veraPDFPath, embeddedEngine, workerPool, veraPDFErrorLog,
+                filename, task, this.validationSettings);
+        tasks.put(task.getId(), task);
+        task.start(processor);
+        ++occupiedSlots;
+        service.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                releaseSlot();
+            }
+        });
+        logger.info("Validation job " + task.getId() + " started for " + filename);
+        return task;
+    }
+
+    ValidationTask getTask(String id) {
+        return id == null ? null : tasks.get(id);
+    }
+
+    /**
+     * Removes the task, terminating its validation if it is still in progress.
+     *
+     * @return removed task or null if there was no task with the given id
+     */
+    ValidationTask removeTask(String id) {
+        ValidationTask task = id == null ? null : tasks.remove(id);
+        if (task != null) {
+            task.abort();
+            logger.info("Validation job " + id + " removed");
+        }
+        return task;
+    }
+
+    synchronized int getActiveCount() {
+        return occupiedSlots;
+    }
+
+    private synchronized void releaseSlot() {
+        --occupiedSlots;
+    }
+
+    void validationFinished(ValidationTask task) {
+        logger.info("Validation job " + task.getId() + " finished");
+        if (resultUrl != null) {
+            VeraPDFServiceStatus status = task.getStatus();
+            notificationService.submit(() -> sendResult(status));
+        }
+    }
+
+    /**
+     * Pushes the result to the main Logius application, so it doesn't have to wait for the next status check.
+     */
+    private void sendResult(VeraPDFServiceStatus status) {
+        HttpPost request = new HttpPost(resultUrl);
+        try (CloseableHttpClient httpClient = new GracefulHttpClient(NOTIFICATION_MAX_ATTEMPTS, NOTIFICATION_ATTEMPT_INTERVAL)) {
+            request.setEntity(new StringEntity(mapper.writeValueAsString(status), ContentType.APPLICATION_JSON));
+            try (CloseableHttpResponse response = httpClient.execute(request)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                EntityUtils.consume(response.getEntity());
+                if (statusCode >= HttpStatus.SC_MULTIPLE_CHOICES) {
+                    logger.warn("Result of validation job " + status.getJobId() + " has been rejected with status " + statusCode);
+                }
+            }
+        } catch (Exception e) {
+            // main application will obtain the result by checking job status
+            logger.warn("Failed to send result of validation job " + status.getJobId(), e);
+        }
+    }
+
+    private void removeExpiredTasks() {
+        long now = System.currentTimeMillis();
+        Iterator<ValidationTask> iterator = tasks.values().iterator();
+        while (iterator.hasNext()) {
+            ValidationTask task = iterator.next();
+            if (!task.isActive() && now - task.getFinishTime() > FINISHED_JOB_LIFETIME) {
+                logger.info("Validation job " + task.getId() + " expired");
+                iterator.remove();
+            }
+        }
+    }
+}
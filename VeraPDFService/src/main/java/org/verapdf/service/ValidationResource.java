@@ -6,93 +6,76 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.verapdf.crawler.api.validation.settings.ValidationSettings;
 import org.verapdf.crawler.api.validation.VeraPDFServiceStatus;
-import org.verapdf.crawler.api.validation.VeraPDFValidationResult;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.io.File;
-import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
+/**
+ * Single job API kept for compatibility with clients which are not aware of {@link JobsResource}.
+ * The job started here occupies one of the validation slots like any other job.
+ */
 @Path("/")
 @Produces(MediaType.APPLICATION_JSON)
 public class ValidationResource {
 
     private static final Logger logger = LoggerFactory.getLogger(ValidationResource.class);
 
-    private final ExecutorService service = Executors.newFixedThreadPool(1);
-    private final String veraPDFPath;
-    private final File veraPDFErrorLog;
-    private VeraPDFProcessor veraPDFProcessor;
-    private ValidationSettings validationSettings;
-    private VeraPDFValidationResult validationResult;
+    private final ValidationJobManager jobManager;
+    private String currentJobId;
     private boolean isAborted = false;
 
-    ValidationResource(String veraPDFPath, String veraPDFErrorFilePath, ValidationSettings validationSettings) throws IOException {
-        this.validationSettings = validationSettings;
-        this.veraPDFPath = veraPDFPath;
-        this.veraPDFErrorLog = new File(veraPDFErrorFilePath);
+    ValidationResource(ValidationJobManager jobManager) {
+        this.jobManager = jobManager;
     }
 
     @POST
     @Path("/settings")
     @Timed
     public void setValidationSettings(ValidationSettings validationSettings) {
-        this.validationSettings = validationSettings;
+        this.jobManager.setValidationSettings(validationSettings);
     }
 
     @POST
     @Timed
-    public Response processValidateRequest(String filename) throws InterruptedException {
+    public synchronized Response processValidateRequest(String filename) {
         logger.info("Starting processing of " + filename);
-        synchronized (this) {
-            if (evaluateStatus() == VeraPDFServiceStatus.ProcessorStatus.ACTIVE) {
-                return Response.status(HttpStatus.SC_LOCKED).build();
-            }
+        if (evaluateStatus() == VeraPDFServiceStatus.ProcessorStatus.ACTIVE) {
+            return Response.status(HttpStatus.SC_LOCKED).build();
         }
+        jobManager.removeTask(currentJobId);
+        ValidationTask task = jobManager.submit(filename);
+        if (task == null) {
+            currentJobId = null;
+            return Response.status(HttpStatus.SC_LOCKED).build();
+        }
+        currentJobId = task.getId();
         isAborted = false;
-        validate(filename);
         return Response.accepted().build();
     }
 
     @GET
     @Timed
-    public VeraPDFServiceStatus getStatus() {
+    public synchronized VeraPDFServiceStatus getStatus() {
         VeraPDFServiceStatus.ProcessorStatus processorStatus = evaluateStatus();
         logger.info("Status requested, processorStatus is " + processorStatus);
-        return new VeraPDFServiceStatus(processorStatus, validationResult);
+        ValidationTask task = jobManager.getTask(currentJobId);
+        return new VeraPDFServiceStatus(processorStatus, task == null ? null : task.getStatus().getValidationResult());
     }
 
     @DELETE
     @Timed
-    public void discardCurrentJob() {
+    public synchronized void discardCurrentJob() {
         logger.info("Terminating current job");
-        if (this.veraPDFProcessor != null) {
-            this.veraPDFProcessor.stopProcess();
-            this.veraPDFProcessor = null;
-        }
-        validationResult = null;
+        jobManager.removeTask(currentJobId);
+        currentJobId = null;
         isAborted = true;
     }
 
-    private void validate(String filename) {
-        this.veraPDFProcessor = new VeraPDFProcessor(veraPDFPath, veraPDFErrorLog, filename, this, this.validationSettings);
-        service.submit(veraPDFProcessor);
-    }
-
-    void validationFinished(VeraPDFValidationResult result) {
-        this.validationResult = result;
-        this.veraPDFProcessor = null;
-        //TODO: send message to main service
-    }
-
     private VeraPDFServiceStatus.ProcessorStatus evaluateStatus() {
-        if (this.veraPDFProcessor != null) {
-            return VeraPDFServiceStatus.ProcessorStatus.ACTIVE;
-        } else if (validationResult != null) {
-            return VeraPDFServiceStatus.ProcessorStatus.FINISHED;
+        ValidationTask task = jobManager.getTask(currentJobId);
+        if (task != null) {
+            return task.getProcessorStatus();
         } else {
             return isAborted ? VeraPDFServiceStatus.ProcessorStatus.ABORTED : VeraPDFServiceStatus.ProcessorStatus.IDLE;
         }
@@ -0,0 +1,118 @@
+package org.verapdf.service;
+
+import org.verapdf.crawler.api.validation.VeraPDFServiceStatus;
+import org.verapdf.crawler.api.validation.VeraPDFValidationResult;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Single validation job occupying one of the slots of {@link ValidationJobManager}.
+ */
+class ValidationTask {
+
+    private final String id;
+    private final String filename;
+    private final ValidationJobManager manager;
+    // called once when the task is finished or aborted, instead of notifying the main application
+    private final Consumer<ValidationTask> listener;
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private VeraPDFProcessor processor;
+    // thread running the validation, interrupted on abort; guarded by this
+    private Thread thread;
+    private volatile VeraPDFValidationResult validationResult;
+    private volatile boolean aborted = false;
+    private volatile long finishTime;
+
+    ValidationTask(String id, String filename, ValidationJobManager manager, Consumer<ValidationTask> listener) {
+        this.id = id;
+        this.filename = filename;
+        this.manager = manager;
+        this.listener = listener;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String getFilename() {
+        return filename;
+    }
+
+    void start(VeraPDFProcessor processor) {
+        this.processor = processor;
+    }
+
+    /**
+     * Runs the validation in the current thread, unless the task has been aborted before it got there.
+     */
+    void run() {
+        synchronized (this) {
+            if (this.aborted) {
+                return;
+            }
+            this.thread = Thread.currentThread();
+        }
+        try {
+            this.processor.run();
+        } finally {
+            synchronized (this) {
+                this.thread = null;
+            }
+            // clear the interrupt of the abort, so it doesn't affect the next task of this thread
+            Thread.interrupted();
+        }
+    }
+
+    void validationFinished(VeraPDFValidationResult result) {
+        this.validationResult = result;
+        this.finishTime = System.currentTimeMillis();
+        if (this.completed.compareAndSet(false, true)) {
+            if (this.listener != null) {
+                this.listener.accept(this);
+            } else {
+                this.manager.validationFinished(this);
+            }
+        }
+    }
+
+    void abort() {
+        this.aborted = true;
+        if (this.finishTime == 0) {
+            this.finishTime = System.currentTimeMillis();
+        }
+        if (this.processor != null) {
+            this.processor.stopProcess();
+        }
+        synchronized (this) {
+            if (this.thread != null) {
+                this.thread.interrupt();
+            }
+        }
+        if (this.listener != null && this.completed.compareAndSet(false, true)) {
+            this.listener.accept(this);
+        }
+    }
+
+    boolean isActive() {
+        return getProcessorStatus() == VeraPDFServiceStatus.ProcessorStatus.ACTIVE;
+    }
+
+    long getFinishTime() {
+        return finishTime;
+    }
+
+    VeraPDFServiceStatus.ProcessorStatus getProcessorStatus() {
+        if (aborted) {
+            return VeraPDFServiceStatus.ProcessorStatus.ABORTED;
+        } else if (validationResult != null) {
+            return VeraPDFServiceStatus.ProcessorStatus.FINISHED;
+        } else {
+            return VeraPDFServiceStatus.ProcessorStatus.ACTIVE;
+        }
+    }
+
+    VeraPDFServiceStatus getStatus() {
+        return new VeraPDFServiceStatus(id, getProcessorStatus(), validationResult);
+    }
+}
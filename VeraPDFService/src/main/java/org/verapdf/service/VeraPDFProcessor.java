@@ -1,13 +1,11 @@
 package org.verapdf.service;
 
-import javanet.staxutils.SimpleNamespaceContext;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.verapdf.crawler.api.document.DomainDocument;
 import org.verapdf.crawler.api.validation.error.RuleViolationError;
 import org.verapdf.crawler.api.validation.error.ValidationError;
-import org.verapdf.crawler.api.validation.settings.ValidationSettings;
 import org.verapdf.crawler.api.validation.VeraPDFValidationResult;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
@@ -16,16 +14,14 @@ import org.w3c.dom.NodeList;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -38,70 +34,177 @@ public class VeraPDFProcessor implements Runnable {
 	private static final int MAX_PREFERRED_PROPERTY_LENGTH = 255;
 	private static final String BASE_PATH = "/report/jobs/job/";
 	private static final String VALIDATION_REPORT_PATH = BASE_PATH + "validationReport/";
-	private static final String FLAVOUR_PART_PROPERTY_NAME = "flavourPart";
-	private static final String FLAVOUR_CONFORMANCE_PROPERTY_NAME = "flavourConformance";
+	private static final long PROCESS_TIMEOUT_MINUTES = 30;
+
+	private static final ScheduledExecutorService TIMEOUT_SERVICE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Thread-VeraPDFProcessTimeout");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	private final String verapdfPath;
+	private final EmbeddedVeraPDFEngine embeddedEngine;
+	private final VeraPDFWorkerPool workerPool;
 	private final File veraPDFErrorLog;
 	private final String filePath;
-	private Process process;
-	private ValidationResource resource;
-	private boolean stopped = false;
-	private final ValidationSettings settings;
+	private volatile Process process;
+	private final ValidationTask task;
+	private volatile boolean stopped = false;
+	// embedded validation which has reached timeout has already been finished with a problem result
+	private volatile boolean timedOut = false;
+	private final PreparedValidationSettings settings;
 
-	VeraPDFProcessor(String verapdfPath, File veraPDFErrorLog, String filePath, ValidationResource resource, ValidationSettings settings) {
+	VeraPDFProcessor(String verapdfPath, EmbeddedVeraPDFEngine embeddedEngine, VeraPDFWorkerPool workerPool,
+					 File veraPDFErrorLog, String filePath, ValidationTask task, PreparedValidationSettings settings) {
 		this.verapdfPath = verapdfPath;
+		this.embeddedEngine = embeddedEngine;
+		this.workerPool = workerPool;
 		this.filePath = filePath;
-		this.resource = resource;
+		this.task = task;
 		this.settings = settings;
 		this.veraPDFErrorLog = veraPDFErrorLog;
 	}
 
-	private File getVeraPDFReport(String filename) throws IOException, InterruptedException {
+	private Process startVeraPDFProcess(String filename) throws IOException {
 		logger.info("Preparing veraPDF process...");
 		String[] cmd = {verapdfPath, "--extract", "--format", "mrr", "--maxfailuresdisplayed", "1", filename};
 		ProcessBuilder pb = new ProcessBuilder();
-		pb.redirectError(this.veraPDFErrorLog);
-		Path outputPath = Files.createTempFile("veraPDFReport", ".xml");
-		File file = outputPath.toFile();
-		pb.redirectOutput(file);
+		// several validations may run at the same time, so the error log must not be truncated by each of them
+		pb.redirectError(ProcessBuilder.Redirect.appendTo(this.veraPDFErrorLog));
 		pb.command(cmd);
 		logger.info("Starting veraPDF process for file " + filename);
-		this.process = pb.start();
+		Process res = pb.start();
 		logger.info("VeraPDF process has been started");
-		if (!this.process.waitFor(30, TimeUnit.MINUTES)) {
-			this.process.destroy();
+		return res;
+	}
+
+	private VeraPDFValidationResult validate(String filename) throws Exception {
+		if (this.embeddedEngine != null) {
+			return validateEmbedded(filename);
+		}
+		if (this.workerPool != null) {
+			return validateInWorker(filename);
+		}
+		Process veraPDFProcess = startVeraPDFProcess(filename);
+		if (!attachProcess(veraPDFProcess)) {
+			veraPDFProcess.destroy();
+			throw new InterruptedException("Validation has been aborted");
+		}
+		ScheduledFuture<?> timeout = scheduleTimeout(veraPDFProcess);
+		try (InputStream report = veraPDFProcess.getInputStream()) {
+			VeraPDFValidationResult result = readReport(report);
+			veraPDFProcess.waitFor();
+			logger.info("VeraPDF process has been finished");
+			return result;
+		} finally {
+			timeout.cancel(false);
+			if (veraPDFProcess.isAlive()) {
+				veraPDFProcess.destroy();
+			}
+		}
+	}
+
+	private VeraPDFValidationResult validateInWorker(String filename) throws Exception {
+		VeraPDFWorkerProcess worker = this.workerPool.acquire();
+		if (!attachProcess(worker.getProcess())) {
+			this.workerPool.release(worker);
+			throw new InterruptedException("Validation has been aborted");
+		}
+		logger.info("Sending file " + filename + " to veraPDF worker");
+		ScheduledFuture<?> timeout = scheduleTimeout(worker.getProcess());
+		try {
+			VeraPDFValidationResult result = worker.validate(filename, this::readReport);
+			logger.info("VeraPDF worker has finished validation");
+			return result;
+		} finally {
+			timeout.cancel(false);
+			// worker must not be destroyed by this processor after it has been given to another one
+			detachProcess();
+			this.workerPool.release(worker);
+		}
+	}
+
+	/**
+	 * Report is read while the process is running, so the timeout is enforced from another thread.
+	 */
+	private ScheduledFuture<?> scheduleTimeout(Process veraPDFProcess) {
+		return TIMEOUT_SERVICE.schedule(() -> {
 			logger.info("VeraPDF process has reached timeout. Destroying...");
+			veraPDFProcess.destroy();
+		}, PROCESS_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Embedded validation runs in the thread of this processor and can't be destroyed like a process. veraPDF parser
+	 * doesn't check interrupts, so a document on which it hangs keeps its slot occupied until the validation returns
+	 * or the service is restarted. On timeout the task is finished with a problem result, so its client doesn't wait
+	 * for it, but only CLI and WORKERS engines actually terminate such validation.
+	 */
+	private VeraPDFValidationResult validateEmbedded(String filename) throws Exception {
+		logger.info("Starting embedded validation for file " + filename);
+		ScheduledFuture<?> timeout = TIMEOUT_SERVICE.schedule(this::embeddedValidationTimedOut,
+				PROCESS_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+		// report is written to a temporary file, so it is not kept in memory while it is parsed
+		File report = File.createTempFile("veraPDFReport", ".xml");
+		try {
+			try (OutputStream reportStream = new BufferedOutputStream(new FileOutputStream(report))) {
+				this.embeddedEngine.generateReport(new File(filename), reportStream);
+			}
+			logger.info("Embedded validation has been finished");
+			if (this.stopped || this.timedOut) {
+				throw new InterruptedException("Validation has been aborted");
+			}
+			try (InputStream reportStream = new BufferedInputStream(new FileInputStream(report))) {
+				return readReport(reportStream);
+			}
+		} finally {
+			timeout.cancel(false);
+			if (!report.delete()) {
+				logger.info("Temp report file has not been deleted manually");
+			}
 		}
-		logger.info("VeraPDF process has been finished");
-		return file;
+	}
+
+	private void embeddedValidationTimedOut() {
+		this.timedOut = true;
+		logger.warn("Embedded validation of " + this.filePath + " has reached timeout, " +
+				"its slot stays occupied until the validation returns");
+		this.task.validationFinished(generateProblemResult("Validation has not been finished in "
+				+ PROCESS_TIMEOUT_MINUTES + " minutes"));
+	}
+
+	private VeraPDFValidationResult readReport(InputStream report) throws Exception {
+		logger.info("Obtaining result structure");
+		List<ReportPath> propertyPaths = this.settings.getReportPaths();
+		if (propertyPaths == null) {
+			// some expression can't be evaluated in a single pass, fall back to the whole document
+			return readReportDocument(report);
+		}
+		MRRReport mrrReport = new MRRReportParser(propertyPaths).parse(report);
+		VeraPDFValidationResult result = generateBaseResult(mrrReport);
+		evaluateProperties(result, mrrReport::getValue);
+		return result;
+	}
+
+	private VeraPDFValidationResult readReportDocument(InputStream report) throws Exception {
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		DocumentBuilder db = dbf.newDocumentBuilder();
+		Document document = db.parse(report);
+		VeraPDFValidationResult result = generateBaseResult(document);
+		evaluateProperties(result, propertyXPath -> (String) this.settings.getXPathExpression(propertyXPath)
+				.evaluate(document, XPathConstants.STRING));
+		return result;
 	}
 
 	@Override
 	public void run() {
 		VeraPDFValidationResult result;
-		File report = null;
 		File tempPdfFile = null;
 		try {
 			tempPdfFile = checkExtension(this.filePath);
 			String toValidatePath = tempPdfFile == null ? this.filePath : tempPdfFile.getAbsolutePath();
-			report = getVeraPDFReport(toValidatePath);
-			if (report != null && !stopped) {
-				logger.info("Obtaining result structure");
-				DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-				dbf.setNamespaceAware(true);
-				DocumentBuilder db = dbf.newDocumentBuilder();
-				Document document = db.parse(report);
-				XPathFactory xpf = XPathFactory.newInstance();
-				XPath xpath = xpf.newXPath();
-				SimpleNamespaceContext nsc = new SimpleNamespaceContext();
-				addNameSpaces(nsc);
-				xpath.setNamespaceContext(nsc);
-				result = generateBaseResult(document, xpath);
-				evaluateProperties(result, document, xpath);
-			} else {
-				result = generateProblemResult("Some problem in report generation");
-			}
+			result = validate(toValidatePath);
 		} catch (InterruptedException e) {
 			String message = "Process has been interrupted";
 			logger.info(message, e);
@@ -112,15 +215,12 @@ public class VeraPDFProcessor implements Runnable {
 			result = generateProblemResult(message, e);
 		} finally {
 			logger.info("Finished");
-			if (report != null && !report.delete()) {
-				logger.info("Report has not been deleted manually");
-			}
 			if (tempPdfFile != null && !tempPdfFile.delete()) {
 				logger.info("Temp pdf file has not been deleted manually");
 			}
 		}
-		if (!stopped) {
-			this.resource.validationFinished(result);
+		if (!stopped && !timedOut) {
+			this.task.validationFinished(result);
 		}
 	}
 
@@ -143,17 +243,9 @@ public class VeraPDFProcessor implements Runnable {
 		return null;
 	}
 
-	private void addNameSpaces(SimpleNamespaceContext nsc) {
-		Map<String, String> namespaces = this.settings.getNamespaces();
-		for (Map.Entry<String, String> entry : namespaces.entrySet()) {
-			nsc.setPrefix(entry.getKey(), entry.getValue());
-		}
-	}
-
-	private void evaluateProperties(VeraPDFValidationResult result, Document document, XPath xpath) {
-		Map<String, List<String>> properties = new HashMap<>(this.settings.getProperties());
-		List<String> partXPaths = properties.get(FLAVOUR_PART_PROPERTY_NAME);
-		String part = getProperty(partXPaths, document, xpath);
+	private void evaluateProperties(VeraPDFValidationResult result, PropertyEvaluator evaluator) {
+		List<String> partXPaths = this.settings.getFlavourPartXPaths();
+		String part = getProperty(partXPaths, evaluator);
 		// if document is valid, then we have already placed OPEN result, but we need to remove it
 		// in case, when flavour part is not 1 or 2
 		try {
@@ -164,27 +256,25 @@ public class VeraPDFProcessor implements Runnable {
 		} catch (NumberFormatException e) {
 			result.setTestResult(DomainDocument.BaseTestResult.NOT_OPEN);
 		}
-		List<String> conformanceXPaths = properties.get(FLAVOUR_CONFORMANCE_PROPERTY_NAME);
-		String conformance = getProperty(conformanceXPaths, document, xpath).toUpperCase();
+		List<String> conformanceXPaths = this.settings.getFlavourConformanceXPaths();
+		String conformance = getProperty(conformanceXPaths, evaluator).toUpperCase();
 		String flavour = part + conformance;
 		if (!flavour.isEmpty()) {
 			result.addProperty("flavour", flavour);
 		}
-		properties.remove(FLAVOUR_PART_PROPERTY_NAME);
-		properties.remove(FLAVOUR_CONFORMANCE_PROPERTY_NAME);
-		for (Map.Entry<String, List<String>> property : properties.entrySet()) {
-			String propertyValue = getProperty(property.getValue(), document, xpath);
+		for (Map.Entry<String, List<String>> property : this.settings.getOtherProperties()) {
+			String propertyValue = getProperty(property.getValue(), evaluator);
 			if (!propertyValue.isEmpty()) {
 				result.addProperty(property.getKey(), propertyValue);
 			}
 		}
 	}
 
-	private String getProperty(List<String> xpaths, Document document, XPath xpath) {
+	private String getProperty(List<String> xpaths, PropertyEvaluator evaluator) {
 		String tempResult = "";
 		try {
 			for (String propertyXPath : xpaths) {
-				String value = (String) xpath.evaluate(propertyXPath, document, XPathConstants.STRING);
+				String value = evaluator.evaluate(propertyXPath);
 				if (value != null && !value.isEmpty()) {
 					if (value.length() <= MAX_PREFERRED_PROPERTY_LENGTH) {
 						return value;
@@ -199,34 +289,49 @@ public class VeraPDFProcessor implements Runnable {
 		return tempResult;
 	}
 
-	private VeraPDFValidationResult generateBaseResult(Document document, XPath xpath) throws XPathExpressionException {
+	private VeraPDFValidationResult generateBaseResult(MRRReport report) {
+		VeraPDFValidationResult result = new VeraPDFValidationResult();
+		String exception = report.getExceptionMessage();
+		if (exception != null && !exception.isEmpty()) {
+			result.addValidationError(new ValidationError(exception));
+		}
+
+		if (report.isCompliant()) {
+			// set temporary OPEN result. will have to check document on flavour part 3
+			result.setTestResult(DomainDocument.BaseTestResult.OPEN);
+		} else {
+			for (RuleViolationError rule : report.getFailedRules()) {
+				result.addValidationError(rule);
+			}
+		}
+		return result;
+	}
+
+	private VeraPDFValidationResult generateBaseResult(Document document) throws XPathExpressionException {
 		VeraPDFValidationResult result = new VeraPDFValidationResult();
 		String exceptionPath = BASE_PATH + "taskResult/exceptionMessage";
-		String exception = (String) xpath.evaluate(exceptionPath,
-				document,
+		String exception = (String) this.settings.getXPathExpression(exceptionPath).evaluate(document,
 				XPathConstants.STRING);
 		if (exception != null && !exception.isEmpty()) {
 			result.addValidationError(new ValidationError(exception));
 		}
 
 		String isCompliantPath = VALIDATION_REPORT_PATH + "@isCompliant";
-		String isCompliantString = (String) xpath.evaluate(isCompliantPath,
-				document,
+		String isCompliantString = (String) this.settings.getXPathExpression(isCompliantPath).evaluate(document,
 				XPathConstants.STRING);
 		boolean isCompliant = Boolean.parseBoolean(isCompliantString);
 		if (isCompliant) {
 			// set temporary OPEN result. will have to check document on flavour part 3
 			result.setTestResult(DomainDocument.BaseTestResult.OPEN);
 		} else {
-			addValidationErrors(result, document, xpath);
+			addValidationErrors(result, document);
 		}
 		return result;
 	}
 
-	private void addValidationErrors(VeraPDFValidationResult result, Document document, XPath xpath) throws XPathExpressionException {
+	private void addValidationErrors(VeraPDFValidationResult result, Document document) throws XPathExpressionException {
 		String rulesPath = VALIDATION_REPORT_PATH + "details/rule";
-		NodeList rules = (NodeList) xpath.evaluate(rulesPath,
-				document,
+		NodeList rules = (NodeList) this.settings.getXPathExpression(rulesPath).evaluate(document,
 				XPathConstants.NODESET);
 		for (int i = 0; i < rules.getLength(); ++i) {
 			Node rule = rules.item(i);
@@ -249,7 +354,24 @@ public class VeraPDFProcessor implements Runnable {
 		}
 	}
 
-	void stopProcess() {
+	/**
+	 * Makes the process destroyable by {@link #stopProcess()}.
+	 *
+	 * @return false if validation has been aborted before the process was assigned to it
+	 */
+	private synchronized boolean attachProcess(Process veraPDFProcess) {
+		if (this.stopped) {
+			return false;
+		}
+		this.process = veraPDFProcess;
+		return true;
+	}
+
+	private synchronized void detachProcess() {
+		this.process = null;
+	}
+
+	synchronized void stopProcess() {
 		this.stopped = true;
 		if (this.process != null && this.process.isAlive()) {
 			this.process.destroy();
@@ -265,4 +387,8 @@ public class VeraPDFProcessor implements Runnable {
 		res.addValidationError(new ValidationError(message));
 		return res;
 	}
+
+	private interface PropertyEvaluator {
+		String evaluate(String xpath) throws Exception;
+	}
 }
@@ -3,10 +3,25 @@ package org.verapdf.service;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
 
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+
 public class VeraPDFServiceConfiguration extends Configuration {
 	private String verapdfPath;
+	private String verapdfConfigPath;
+	@NotNull
+	private Engine engine = Engine.CLI;
 	private String logiusUrl;
 	private String verapdfErrors;
+	@Min(1)
+	private int validationSlots = 1;
+	private List<String> workerJvmOptions = new ArrayList<>();
+	@Min(1)
+	private int workerMaxDocuments = 500;
+	@Min(1)
+	private int workerMaxHeapGrowthMb = 512;
 
 	@JsonProperty
 	public String getLogiusUrl() {
@@ -28,6 +43,26 @@ public class VeraPDFServiceConfiguration extends Configuration {
 		this.verapdfPath = verapdfPath;
 	}
 
+	@JsonProperty
+	public String getVerapdfConfigPath() {
+		return verapdfConfigPath;
+	}
+
+	@JsonProperty
+	public void setVerapdfConfigPath(String verapdfConfigPath) {
+		this.verapdfConfigPath = verapdfConfigPath;
+	}
+
+	@JsonProperty
+	public Engine getEngine() {
+		return engine;
+	}
+
+	@JsonProperty
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
 	@JsonProperty
 	public String getVerapdfErrors() {
 		return verapdfErrors;
@@ -37,4 +72,54 @@ public class VeraPDFServiceConfiguration extends Configuration {
 	public void setVerapdfErrors(String verapdfErrors) {
 		this.verapdfErrors = verapdfErrors;
 	}
+
+	@JsonProperty
+	public int getValidationSlots() {
+		return validationSlots;
+	}
+
+	@JsonProperty
+	public void setValidationSlots(int validationSlots) {
+		this.validationSlots = validationSlots;
+	}
+
+	@JsonProperty
+	public List<String> getWorkerJvmOptions() {
+		return workerJvmOptions;
+	}
+
+	@JsonProperty
+	public void setWorkerJvmOptions(List<String> workerJvmOptions) {
+		this.workerJvmOptions = workerJvmOptions;
+	}
+
+	@JsonProperty
+	public int getWorkerMaxDocuments() {
+		return workerMaxDocuments;
+	}
+
+	@JsonProperty
+	public void setWorkerMaxDocuments(int workerMaxDocuments) {
+		this.workerMaxDocuments = workerMaxDocuments;
+	}
+
+	@JsonProperty
+	public int getWorkerMaxHeapGrowthMb() {
+		return workerMaxHeapGrowthMb;
+	}
+
+	@JsonProperty
+	public void setWorkerMaxHeapGrowthMb(int workerMaxHeapGrowthMb) {
+		this.workerMaxHeapGrowthMb = workerMaxHeapGrowthMb;
+	}
+
+	public enum Engine {
+		// starts veraPDF CLI for every document
+		CLI,
+		// validates documents with veraPDF library loaded into the service; validations can't be killed, so a document
+		// on which veraPDF hangs occupies its slot until the service is restarted
+		EMBEDDED,
+		// sends documents to long-lived veraPDF worker processes, which are recycled from time to time
+		WORKERS
+	}
 }
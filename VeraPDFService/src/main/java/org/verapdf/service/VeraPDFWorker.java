@@ -0,0 +1,110 @@
+package org.verapdf.service;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Entry point of a long-lived veraPDF worker process started by {@link VeraPDFWorkerPool}.
+ * <p>
+ * The worker reads paths of files to validate from stdin, one per line. For every file it writes
+ * the machine readable report to stdout followed by a NUL byte and a status line
+ * {@code OK <retained heap bytes>} or {@code ERROR <retained heap bytes> <message>}.
+ * The worker exits when its stdin is closed, e.g. when the service has been stopped.
+ */
+public final class VeraPDFWorker {
+
+	static final int REPORT_DELIMITER = 0;
+	static final String STATUS_OK = "OK";
+	static final String STATUS_ERROR = "ERROR";
+
+	private VeraPDFWorker() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			System.err.println("Usage: VeraPDFWorker <veraPDF config folder>");
+			System.exit(1);
+		}
+		// stdout is reserved for reports, so everything else printed by libraries goes to stderr
+		OutputStream reports = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out));
+		System.setOut(System.err);
+
+		EmbeddedVeraPDFEngine engine = new EmbeddedVeraPDFEngine(new File(args[0]));
+		BufferedReader requests = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		String filename;
+		while ((filename = requests.readLine()) != null) {
+			if (filename.isEmpty()) {
+				continue;
+			}
+			String status;
+			try {
+				engine.generateReport(new File(filename), new CloseShieldOutputStream(new NoDelimiterOutputStream(reports)));
+				status = STATUS_OK + " " + getRetainedHeap();
+			} catch (Throwable e) {
+				status = STATUS_ERROR + " " + getRetainedHeap() + " " + String.valueOf(e.getMessage()).replaceAll("\\s+", " ");
+			}
+			reports.write(REPORT_DELIMITER);
+			reports.write((status + "\n").getBytes(StandardCharsets.UTF_8));
+			reports.flush();
+		}
+	}
+
+	/**
+	 * @return heap occupied after the last garbage collections, which grows when the worker leaks memory
+	 */
+	private static long getRetainedHeap() {
+		long res = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				MemoryUsage usage = pool.getCollectionUsage();
+				if (usage != null) {
+					res += usage.getUsed();
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * NUL is not allowed in XML, but it may come from broken documents, and it must not be taken for the delimiter.
+	 */
+	private static class NoDelimiterOutputStream extends FilterOutputStream {
+
+		private NoDelimiterOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (b != REPORT_DELIMITER) {
+				out.write(b);
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			int start = off;
+			for (int i = off; i < off + len; ++i) {
+				if (b[i] == REPORT_DELIMITER) {
+					out.write(b, start, i - start);
+					start = i + 1;
+				}
+			}
+			out.write(b, start, off + len - start);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package org.verapdf.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Keeps long-lived {@link VeraPDFWorker} processes, so JVM startup and veraPDF initialization are paid
+ * once per worker instead of once per document. Workers are started on demand, so there are never more
+ * of them than validation slots. A worker is recycled after the configured number of documents, when its
+ * retained heap has grown too much, or when it has been terminated in the middle of a document.
+ */
+class VeraPDFWorkerPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(VeraPDFWorkerPool.class);
+
+	private final List<String> command;
+	private final File veraPDFErrorLog;
+	private final int maxDocuments;
+	private final long maxRetainedHeapGrowth;
+	private final BlockingDeque<VeraPDFWorkerProcess> idleWorkers = new LinkedBlockingDeque<>();
+
+	VeraPDFWorkerPool(File veraPDFConfigFolder, List<String> jvmOptions, File veraPDFErrorLog,
+					  int maxDocuments, long maxRetainedHeapGrowth) {
+		this.veraPDFErrorLog = veraPDFErrorLog;
+		this.maxDocuments = maxDocuments;
+		this.maxRetainedHeapGrowth = maxRetainedHeapGrowth;
+		this.command = new ArrayList<>();
+		this.command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getAbsolutePath());
+		if (jvmOptions != null) {
+			this.command.addAll(jvmOptions);
+		}
+		this.command.add("-cp");
+		this.command.add(System.getProperty("java.class.path"));
+		this.command.add(VeraPDFWorker.class.getName());
+		this.command.add(veraPDFConfigFolder.getAbsolutePath());
+	}
+
+	VeraPDFWorkerProcess acquire() throws IOException {
+		VeraPDFWorkerProcess worker = this.idleWorkers.pollFirst();
+		return worker != null ? worker : startWorker();
+	}
+
+	/**
+	 * Returns the worker to the pool or terminates it if it should not be used anymore.
+	 */
+	void release(VeraPDFWorkerProcess worker) {
+		if (!worker.isReusable()) {
+			logger.info("Terminating veraPDF worker which has been interrupted");
+			worker.destroy();
+		} else if (worker.getDocumentsCount() >= this.maxDocuments) {
+			logger.info("Recycling veraPDF worker after " + worker.getDocumentsCount() + " documents");
+			worker.destroy();
+		} else if (worker.getRetainedHeapGrowth() > this.maxRetainedHeapGrowth) {
+			logger.info("Recycling veraPDF worker with retained heap grown by " + worker.getRetainedHeapGrowth() + " bytes");
+			worker.destroy();
+		} else {
+			this.idleWorkers.offerFirst(worker);
+		}
+	}
+
+	private VeraPDFWorkerProcess startWorker() throws IOException {
+		ProcessBuilder pb = new ProcessBuilder(this.command);
+		pb.redirectError(ProcessBuilder.Redirect.appendTo(this.veraPDFErrorLog));
+		VeraPDFWorkerProcess worker = new VeraPDFWorkerProcess(pb.start());
+		logger.info("VeraPDF worker has been started");
+		return worker;
+	}
+}
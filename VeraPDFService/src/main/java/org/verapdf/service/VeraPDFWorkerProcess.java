@@ -0,0 +1,166 @@
+package org.verapdf.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Connection to a single {@link VeraPDFWorker} process. Used by one validation at a time.
+ */
+class VeraPDFWorkerProcess {
+
+	private final Process process;
+	private final OutputStream requests;
+	private final InputStream reports;
+	private int documentsCount = 0;
+	private long baseRetainedHeap = -1;
+	private long retainedHeap = 0;
+	// false while a report is being transferred, so a worker interrupted in the middle can't be reused
+	private boolean synced = true;
+
+	VeraPDFWorkerProcess(Process process) {
+		this.process = process;
+		this.requests = process.getOutputStream();
+		this.reports = new BufferedInputStream(process.getInputStream());
+	}
+
+	Process getProcess() {
+		return process;
+	}
+
+	int getDocumentsCount() {
+		return documentsCount;
+	}
+
+	/**
+	 * @return growth of the worker heap retained after garbage collections since its first document
+	 */
+	long getRetainedHeapGrowth() {
+		return baseRetainedHeap < 0 ? 0 : retainedHeap - baseRetainedHeap;
+	}
+
+	boolean isReusable() {
+		return synced && process.isAlive();
+	}
+
+	/**
+	 * Sends the file to the worker and passes its report to the given reader.
+	 */
+	<T> T validate(String filename, ReportReader<T> reader) throws Exception {
+		this.synced = false;
+		++this.documentsCount;
+		this.requests.write((filename + "\n").getBytes(StandardCharsets.UTF_8));
+		this.requests.flush();
+		InputStream report = new ReportInputStream();
+		T result;
+		try {
+			result = reader.read(report);
+		} catch (Exception e) {
+			try {
+				finishDocument(report);
+			} catch (IOException workerError) {
+				workerError.addSuppressed(e);
+				throw workerError;
+			}
+			throw e;
+		}
+		finishDocument(report);
+		return result;
+	}
+
+	void destroy() {
+		this.process.destroy();
+	}
+
+	private void finishDocument(InputStream report) throws IOException {
+		// skip the rest of the report, which the reader has not been interested in
+		byte[] buffer = new byte[8192];
+		while (report.read(buffer) >= 0) {
+		}
+		String[] status = readStatusLine().split(" ", 3);
+		this.synced = true;
+		this.retainedHeap = status.length > 1 ? Long.parseLong(status[1]) : 0;
+		if (this.baseRetainedHeap < 0) {
+			this.baseRetainedHeap = this.retainedHeap;
+		}
+		if (!VeraPDFWorker.STATUS_OK.equals(status[0])) {
+			throw new IOException("VeraPDF worker failed to validate document: " + (status.length > 2 ? status[2] : status[0]));
+		}
+	}
+
+	private String readStatusLine() throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = this.reports.read()) != '\n') {
+			if (b < 0) {
+				throw new EOFException("VeraPDF worker has been terminated");
+			}
+			line.write(b);
+		}
+		return new String(line.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	interface ReportReader<T> {
+		T read(InputStream report) throws Exception;
+	}
+
+	/**
+	 * Report of the current document, which ends at the delimiter. Closing it doesn't close the worker output.
+	 */
+	private class ReportInputStream extends InputStream {
+
+		private boolean finished = false;
+
+		@Override
+		public int read() throws IOException {
+			if (finished) {
+				return -1;
+			}
+			int b = reports.read();
+			if (b < 0) {
+				throw new EOFException("VeraPDF worker has been terminated");
+			}
+			if (b == VeraPDFWorker.REPORT_DELIMITER) {
+				finished = true;
+				return -1;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (finished) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			reports.mark(len);
+			int count = reports.read(b, off, len);
+			if (count < 0) {
+				throw new EOFException("VeraPDF worker has been terminated");
+			}
+			for (int i = 0; i < count; ++i) {
+				if (b[off + i] == VeraPDFWorker.REPORT_DELIMITER) {
+					// return the status line after the delimiter back to the worker output
+					reports.reset();
+					long toSkip = i + 1;
+					while (toSkip > 0) {
+						toSkip -= reports.skip(toSkip);
+					}
+					finished = true;
+					return i == 0 ? -1 : i;
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
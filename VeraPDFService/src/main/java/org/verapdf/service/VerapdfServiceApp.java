@@ -14,6 +14,7 @@ import org.slf4j.LoggerFactory;
 import org.verapdf.common.GracefulHttpClient;
 import org.verapdf.crawler.api.validation.settings.ValidationSettings;
 
+import java.io.File;
 import java.io.InputStream;
 
 public class VerapdfServiceApp extends Application<VeraPDFServiceConfiguration> {
@@ -44,7 +45,31 @@ public class VerapdfServiceApp extends Application<VeraPDFServiceConfiguration>
 
         ValidationSettings validationSettings = loadValidationSettings(configuration.getLogiusUrl(), mapper);
 
-        environment.jersey().register(new ValidationResource(configuration.getVerapdfPath(), configuration.getVerapdfErrors(), validationSettings));
+        EmbeddedVeraPDFEngine embeddedEngine = null;
+        VeraPDFWorkerPool workerPool = null;
+        if (configuration.getEngine() == VeraPDFServiceConfiguration.Engine.EMBEDDED) {
+            embeddedEngine = new EmbeddedVeraPDFEngine(getVeraPDFConfigFolder(configuration));
+        } else if (configuration.getEngine() == VeraPDFServiceConfiguration.Engine.WORKERS) {
+            workerPool = new VeraPDFWorkerPool(getVeraPDFConfigFolder(configuration), configuration.getWorkerJvmOptions(),
+                    new File(configuration.getVerapdfErrors()), configuration.getWorkerMaxDocuments(),
+                    configuration.getWorkerMaxHeapGrowthMb() * 1024L * 1024L);
+        }
+
+        ValidationJobManager jobManager = new ValidationJobManager(configuration.getValidationSlots(),
+                configuration.getVerapdfPath(), embeddedEngine, workerPool, configuration.getVerapdfErrors(),
+                validationSettings, configuration.getLogiusUrl(), mapper);
+        environment.jersey().register(new ValidationResource(jobManager));
+        environment.jersey().register(new JobsResource(jobManager));
+        environment.jersey().register(new BatchResource(jobManager, mapper));
+    }
+
+    private File getVeraPDFConfigFolder(VeraPDFServiceConfiguration configuration) {
+        if (configuration.getVerapdfConfigPath() != null) {
+            return new File(configuration.getVerapdfConfigPath());
+        }
+        // use the same configuration as the installed veraPDF CLI
+        File verapdfFolder = new File(configuration.getVerapdfPath()).getAbsoluteFile().getParentFile();
+        return new File(verapdfFolder, "config");
     }
 
     private ValidationSettings loadValidationSettings(String logiusUrl, ObjectMapper mapper) throws Exception {